@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import cascading.tuple.Fields;
+
+/**
+ * Reads and writes the value of a single column with the typed accessors of JDBC, instead of
+ * <code>getObject</code> and <code>setObject</code>, which make the driver inspect the value or the
+ * column for every row.
+ * <p/>
+ * The codecs of a {@link TupleRecord} are chosen once, either from the {@link ResultSetMetaData} of the
+ * input or from the declared types of the sink {@link Fields}.
+ */
+public enum ColumnCodec
+  {
+    LONG( Long.class, Types.BIGINT )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        long value = resultSet.getLong( column );
+        return resultSet.wasNull() ? null : value;
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setLong( column, (Long) value );
+        }
+      },
+    INT( Integer.class, Types.INTEGER )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        int value = resultSet.getInt( column );
+        return resultSet.wasNull() ? null : value;
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setInt( column, (Integer) value );
+        }
+      },
+    DOUBLE( Double.class, Types.DOUBLE )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        double value = resultSet.getDouble( column );
+        return resultSet.wasNull() ? null : value;
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setDouble( column, (Double) value );
+        }
+      },
+    FLOAT( Float.class, Types.REAL )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        float value = resultSet.getFloat( column );
+        return resultSet.wasNull() ? null : value;
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setFloat( column, (Float) value );
+        }
+      },
+    BOOLEAN( Boolean.class, Types.BOOLEAN )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        boolean value = resultSet.getBoolean( column );
+        return resultSet.wasNull() ? null : value;
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setBoolean( column, (Boolean) value );
+        }
+      },
+    STRING( String.class, Types.VARCHAR )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        return resultSet.getString( column );
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setString( column, (String) value );
+        }
+      },
+    BIG_DECIMAL( BigDecimal.class, Types.DECIMAL )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        return resultSet.getBigDecimal( column );
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setBigDecimal( column, (BigDecimal) value );
+        }
+      },
+    TIMESTAMP( Timestamp.class, Types.TIMESTAMP )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        return resultSet.getTimestamp( column );
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setTimestamp( column, (Timestamp) value );
+        }
+      },
+    DATE( Date.class, Types.DATE )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        return resultSet.getDate( column );
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setDate( column, (Date) value );
+        }
+      },
+    TIME( Time.class, Types.TIME )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        return resultSet.getTime( column );
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setTime( column, (Time) value );
+        }
+      },
+    OBJECT( Object.class, Types.JAVA_OBJECT )
+      {
+      Object read( ResultSet resultSet, int column ) throws SQLException
+        {
+        return resultSet.getObject( column );
+        }
+
+      void set( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setObject( column, value );
+        }
+
+      @Override
+      public void write( PreparedStatement statement, int column, Object value ) throws SQLException
+        {
+        statement.setObject( column, value );
+        }
+      };
+
+  private final Class<?> javaType;
+  private final int sqlType;
+
+  ColumnCodec( Class<?> javaType, int sqlType )
+    {
+    this.javaType = javaType;
+    this.sqlType = sqlType;
+    }
+
+  /**
+   * Reads the value of the given column from the current row, SQL NULL is returned as null.
+   *
+   * @param resultSet the result set positioned on a row
+   * @param column the index of the column, starting at 1
+   */
+  abstract Object read( ResultSet resultSet, int column ) throws SQLException;
+
+  abstract void set( PreparedStatement statement, int column, Object value ) throws SQLException;
+
+  /**
+   * Sets the given parameter to the value. Values not of the type of the codec, which may be returned by
+   * {@link JDBCScheme#cleanIncomingTuple(cascading.tuple.Tuple)}, are left to the driver.
+   *
+   * @param statement the statement to set the parameter on
+   * @param column the index of the parameter, starting at 1
+   * @param value the value, may be null
+   */
+  public void write( PreparedStatement statement, int column, Object value ) throws SQLException
+    {
+    if( value == null )
+      statement.setNull( column, sqlType );
+    else if( value.getClass() == javaType )
+      set( statement, column, value );
+    else
+      statement.setObject( column, value );
+    }
+
+  /**
+   * Returns the codec reading the given column with the same result as <code>getObject</code> would. Columns
+   * whose object type differs between drivers, like DATE and TIMESTAMP, are read with <code>getObject</code>.
+   */
+  public static ColumnCodec forColumn( ResultSetMetaData metaData, int column ) throws SQLException
+    {
+    switch( metaData.getColumnType( column ) )
+      {
+      case Types.BIGINT:
+        // unsigned BIGINT does not fit into a long
+        return metaData.isSigned( column ) ? LONG : OBJECT;
+      case Types.INTEGER:
+        // unsigned INTEGER is returned as a Long
+        return metaData.isSigned( column ) ? INT : LONG;
+      case Types.DOUBLE:
+      case Types.FLOAT:
+        return DOUBLE;
+      case Types.REAL:
+        return FLOAT;
+      case Types.BOOLEAN:
+        return BOOLEAN;
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+      case Types.LONGNVARCHAR:
+        return STRING;
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return BIG_DECIMAL;
+      case Types.TIME:
+        return TIME;
+      default:
+        // DATE is returned as a Timestamp by Oracle, TIMESTAMP as an oracle.sql.TIMESTAMP by Oracle and as a
+        // LocalDateTime by Connector/J 8, SMALLINT and TINYINT as Short and Byte by some drivers
+        return OBJECT;
+      }
+    }
+
+  /** Returns the codecs for all columns of the given result set. */
+  public static ColumnCodec[] forColumns( ResultSetMetaData metaData ) throws SQLException
+    {
+    ColumnCodec[] codecs = new ColumnCodec[ metaData.getColumnCount() ];
+
+    for( int i = 0; i < codecs.length; i++ )
+      codecs[ i ] = forColumn( metaData, i + 1 );
+
+    return codecs;
+    }
+
+  /** Returns the codec writing values of the given declared type, or {@link #OBJECT} for any other type. */
+  public static ColumnCodec forType( Type type )
+    {
+    for( ColumnCodec codec : values() )
+      {
+      if( codec.javaType == type || codec.javaType == boxed( type ) )
+        return codec;
+      }
+
+    return OBJECT;
+    }
+
+  /**
+   * Returns the codecs writing the selected fields with their declared types, or null if the fields are not
+   * typed.
+   */
+  public static ColumnCodec[] forFields( Fields fields, Fields selector )
+    {
+    if( !fields.hasTypes() )
+      return null;
+
+    ColumnCodec[] codecs = new ColumnCodec[ selector.size() ];
+
+    for( int i = 0; i < codecs.length; i++ )
+      codecs[ i ] = forType( fields.getType( fields.getPos( selector.get( i ) ) ) );
+
+    return codecs;
+    }
+
+  private static Type boxed( Type type )
+    {
+    if( type == long.class )
+      return Long.class;
+    if( type == int.class )
+      return Integer.class;
+    if( type == double.class )
+      return Double.class;
+    if( type == float.class )
+      return Float.class;
+    if( type == boolean.class )
+      return Boolean.class;
+
+    return type;
+    }
+  }
@@ -19,12 +19,14 @@
  */
 package cascading.jdbc;
 
+import java.sql.Connection;
 import java.util.Properties;
 
 import org.apache.hadoop.mapred.InputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cascading.jdbc.db.ConnectionPool;
 import cascading.jdbc.db.DBInputFormat;
 import cascading.jdbc.db.DBOutputFormat;
 import cascading.scheme.Scheme;
@@ -56,6 +58,10 @@ public class JDBCFactory
   public static final String PROTOCOL_COLUMN_DEFS = "tabledesc.columndefs";
   public static final String PROTOCOL_PRIMARY_KEYS = "tabledesc.primarykeys";
   public static final String PROTOCOL_SINK_MODE = "sinkmode";
+  public static final String PROTOCOL_MODIFIED_TIME_QUERY = "modifiedtimequery";
+  public static final String PROTOCOL_MODIFIED_BY = "modifiedby";
+  public static final String PROTOCOL_STAGING_TABLE = "stagingtable";
+  public static final String PROTOCOL_POOL_MAX_SIZE = "poolmaxsize";
 
   public static final String FORMAT_SEPARATOR = "separator";
   public static final String FORMAT_COLUMNS = "columnnames";
@@ -64,6 +70,23 @@ public class JDBCFactory
   public static final String FORMAT_LIMIT = "limit";
   public static final String FORMAT_UPDATE_BY = "updateBy";
   public static final String FORMAT_TABLE_ALIAS = "tableAlias";
+  public static final String FORMAT_PROJECTION = "projection";
+  public static final String FORMAT_SPLIT_BY = "splitBy";
+  public static final String FORMAT_SPLIT_BY_HASH = "splitByHash";
+  public static final String FORMAT_SPLIT_SAMPLE_SIZE = "splitSampleSize";
+  public static final String FORMAT_SPLIT_PREDICATES = "splitPredicates";
+  public static final String PREDICATE_SEPARATOR = ";";
+  public static final String FORMAT_ESTIMATE_COUNT = "estimateCount";
+  public static final String FORMAT_PREFETCH_ROWS = "prefetchRows";
+  public static final String FORMAT_FETCH_SIZE = "fetchSize";
+  public static final String FORMAT_SNAPSHOT = "snapshot";
+  public static final String FORMAT_ISOLATION_LEVEL = "isolationLevel";
+  public static final String FORMAT_INCREMENTAL_BY = "incrementalBy";
+  public static final String FORMAT_ASYNC_FLUSH = "asyncFlush";
+  public static final String FORMAT_INSERT_ROWS = "insertRows";
+  public static final String FORMAT_MIN_BATCH_SIZE = "minBatchSize";
+  public static final String FORMAT_MAX_BATCH_SIZE = "maxBatchSize";
+  public static final String FORMAT_UPSERT = "upsert";
 
   public static final String FORMAT_SELECT_QUERY = "selectQuery";
   public static final String FORMAT_COUNT_QUERY = "countQuery";
@@ -102,6 +125,10 @@ public class JDBCFactory
 
     JDBCScheme jdbcScheme = (JDBCScheme) scheme;
 
+    String projection = properties.getProperty( FORMAT_PROJECTION );
+    if( projection != null && !projection.isEmpty() )
+      jdbcScheme.setProjection( new Fields( projection.split( properties.getProperty( FORMAT_SEPARATOR, DEFAULT_SEPARATOR ) ) ) );
+
     /*
      * it is possible, that the schema information given via properties is
      * incomplete and therefore, we derive it from the given fields. We can only
@@ -124,8 +151,43 @@ public class JDBCFactory
     if( sinkModeProperty != null && !sinkModeProperty.isEmpty() )
       userMode = SinkMode.valueOf( sinkModeProperty );
 
-    return new JDBCTap( identifier, jdbcUser, jdbcPassword, driver, tableDesc, jdbcScheme, userMode );
+    JDBCTap tap = new JDBCTap( identifier, jdbcUser, jdbcPassword, driver, tableDesc, jdbcScheme, userMode );
+
+    // users can determine the modification time by a query or a column, otherwise the dialect decides.
+    String modifiedTimeQuery = properties.getProperty( PROTOCOL_MODIFIED_TIME_QUERY );
+    String modifiedBy = properties.getProperty( PROTOCOL_MODIFIED_BY );
+    if( modifiedTimeQuery == null || modifiedTimeQuery.isEmpty() )
+      {
+      if( modifiedBy != null && !modifiedBy.isEmpty() )
+        modifiedTimeQuery = String.format( "SELECT MAX(%s) FROM %s", modifiedBy, tableDesc.getTableName() );
+      else
+        modifiedTimeQuery = getModifiedTimeQuery( tableDesc.getTableName() );
+      }
+
+    tap.setModifiedTimeQuery( modifiedTimeQuery );
+
+    String stagingTable = properties.getProperty( PROTOCOL_STAGING_TABLE );
+    if( stagingTable != null && !stagingTable.isEmpty() )
+      tap.setStagingTableName( stagingTable );
 
+    String poolMaxSize = properties.getProperty( PROTOCOL_POOL_MAX_SIZE );
+    if( poolMaxSize != null && !poolMaxSize.isEmpty() )
+      tap.setConnectionPool( Integer.parseInt( poolMaxSize ), ConnectionPool.DEFAULT_IDLE_TIMEOUT, null );
+
+    return tap;
+    }
+
+  /**
+   * Returns the query determining the modification time or version of the given table, see
+   * {@link JDBCTap#setModifiedTimeQuery(String)}. Subclasses can override this method to use the statistics of the
+   * database, the default returns null, which considers the table as always modified.
+   *
+   * @param tableName The name of the table.
+   * @return a query or null.
+   */
+  protected String getModifiedTimeQuery( String tableName )
+    {
+    return null;
     }
 
   /**
@@ -156,12 +218,10 @@ public class JDBCFactory
 
     Boolean tableAlias = getTableAlias(properties);
 
+    // without a count query the select query is read in one split or by the split predicates
     if( selectQuery != null )
       {
-      if( countQuery == null )
-        throw new IllegalArgumentException( "no count query for select query given" );
-
-      return createScheme( fields, selectQuery, countQuery, limit, columnNames, tableAlias );
+      return setSchemeOptions( createScheme( fields, selectQuery, countQuery, limit, columnNames, tableAlias ), properties );
       }
 
     String conditions = properties.getProperty( FORMAT_CONDITIONS );
@@ -180,8 +240,98 @@ public class JDBCFactory
     if( orderByProperty != null && !orderByProperty.isEmpty() )
       orderBy = orderByProperty.split( separator );
 
-    return createUpdatableScheme( fields, limit, columnNames, tableAlias, conditions, updateBy, updateByFields, orderBy );
+    return setSchemeOptions( createUpdatableScheme( fields, limit, columnNames, tableAlias, conditions, updateBy, updateByFields, orderBy ),
+      properties );
+
+    }
+
+  private Scheme setSchemeOptions( Scheme scheme, Properties properties )
+    {
+    JDBCScheme jdbcScheme = (JDBCScheme) scheme;
+
+    String splitBy = properties.getProperty( FORMAT_SPLIT_BY );
+    if( splitBy != null && !splitBy.isEmpty() )
+      jdbcScheme.setSplitBy( splitBy );
+
+    String splitSampleSize = properties.getProperty( FORMAT_SPLIT_SAMPLE_SIZE );
+    if( splitSampleSize != null && !splitSampleSize.isEmpty() )
+      jdbcScheme.setSplitSampleSize( Integer.parseInt( splitSampleSize ) );
+
+    String splitPredicates = properties.getProperty( FORMAT_SPLIT_PREDICATES );
+    if( splitPredicates != null && !splitPredicates.isEmpty() )
+      jdbcScheme.setSplitPredicates( splitPredicates.split( PREDICATE_SEPARATOR ) );
 
+    String splitByHash = properties.getProperty( FORMAT_SPLIT_BY_HASH );
+    if( splitByHash != null && !splitByHash.isEmpty() )
+      jdbcScheme.setSplitByHash( splitByHash.split( properties.getProperty( FORMAT_SEPARATOR, DEFAULT_SEPARATOR ) ) );
+
+    jdbcScheme.setEstimateCount( Boolean.parseBoolean( properties.getProperty( FORMAT_ESTIMATE_COUNT ) ) );
+
+    String prefetchRows = properties.getProperty( FORMAT_PREFETCH_ROWS );
+    if( prefetchRows != null && !prefetchRows.isEmpty() )
+      jdbcScheme.setPrefetchRows( Integer.parseInt( prefetchRows ) );
+
+    String fetchSize = properties.getProperty( FORMAT_FETCH_SIZE );
+    if( fetchSize != null && !fetchSize.isEmpty() )
+      jdbcScheme.setFetchSize( Integer.parseInt( fetchSize ) );
+
+    jdbcScheme.setSnapshot( Boolean.parseBoolean( properties.getProperty( FORMAT_SNAPSHOT ) ) );
+
+    String isolationLevel = properties.getProperty( FORMAT_ISOLATION_LEVEL );
+    if( isolationLevel != null && !isolationLevel.isEmpty() )
+      jdbcScheme.setIsolationLevel( parseIsolationLevel( isolationLevel ) );
+
+    String incrementalBy = properties.getProperty( FORMAT_INCREMENTAL_BY );
+    if( incrementalBy != null && !incrementalBy.isEmpty() )
+      jdbcScheme.setIncrementalBy( incrementalBy );
+
+    jdbcScheme.setAsyncFlush( Boolean.parseBoolean( properties.getProperty( FORMAT_ASYNC_FLUSH ) ) );
+
+    String insertRows = properties.getProperty( FORMAT_INSERT_ROWS );
+    if( insertRows != null && !insertRows.isEmpty() )
+      jdbcScheme.setInsertRows( Integer.parseInt( insertRows ) );
+
+    String minBatchSize = properties.getProperty( FORMAT_MIN_BATCH_SIZE );
+    String maxBatchSize = properties.getProperty( FORMAT_MAX_BATCH_SIZE );
+    if( maxBatchSize != null && !maxBatchSize.isEmpty() )
+      {
+      int max = Integer.parseInt( maxBatchSize );
+      jdbcScheme.setAdaptiveBatchSize( minBatchSize != null && !minBatchSize.isEmpty() ? Integer.parseInt( minBatchSize ) : Math.min( 100, max ), max );
+      }
+
+    if( Boolean.parseBoolean( properties.getProperty( FORMAT_UPSERT ) ) )
+      jdbcScheme.setUpsert( true );
+
+    return scheme;
+    }
+
+  /**
+   * Parses an isolation level given either by the name of its {@link Connection} constant without the
+   * TRANSACTION_ prefix, like READ_COMMITTED, or by its value.
+   */
+  static int parseIsolationLevel( String isolationLevel )
+    {
+    String name = isolationLevel.trim().toUpperCase();
+
+    if( name.equals( "NONE" ) )
+      return Connection.TRANSACTION_NONE;
+    if( name.equals( "READ_UNCOMMITTED" ) )
+      return Connection.TRANSACTION_READ_UNCOMMITTED;
+    if( name.equals( "READ_COMMITTED" ) )
+      return Connection.TRANSACTION_READ_COMMITTED;
+    if( name.equals( "REPEATABLE_READ" ) )
+      return Connection.TRANSACTION_REPEATABLE_READ;
+    if( name.equals( "SERIALIZABLE" ) )
+      return Connection.TRANSACTION_SERIALIZABLE;
+
+    try
+      {
+      return Integer.parseInt( name );
+      }
+    catch( NumberFormatException exception )
+      {
+      throw new IllegalArgumentException( "unknown isolation level: " + isolationLevel );
+      }
     }
 
   protected Scheme createUpdatableScheme( Fields fields, long limit, String[] columnNames, Boolean tableAlias, String conditions,
@@ -0,0 +1,623 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.jdbc.db.ConnectionPool;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.operation.OperationException;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Class JDBCLookup is a {@link Function} joining every argument tuple with the rows of a table that match its
+ * key, without reading the whole table. The keys of the incoming tuples are collected and looked up in
+ * batches with a single {@code SELECT ... WHERE key IN (?,?,...)} statement each, the rows found are kept in a
+ * bounded LRU cache with an optional time to live.
+ * <p/>
+ * Since tuples are emitted once their batch has been looked up, the function emits the argument tuple followed
+ * by the value columns and has to be used with {@link Fields#RESULTS} as output selector, for example
+ * <pre>
+ * Fields order = new Fields( "order_id", "customer_id" );
+ * JDBCLookup lookup = new JDBCLookup( customers, order, new Fields( "customer_id" ), new Fields( "name", "country" ) );
+ * pipe = new Each( pipe, order, lookup, Fields.RESULTS );
+ * </pre>
+ * Tuples without matching rows are dropped, unless the lookup is outer. A key matching several rows emits one
+ * tuple per row. The number of cache hits, misses, lookup statements and the time spent in them are counted in
+ * {@link Counters}.
+ */
+public class JDBCLookup extends BaseOperation<JDBCLookup.LookupContext> implements Function<JDBCLookup.LookupContext>
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( JDBCLookup.class );
+
+  /** Counters of the lookups */
+  public enum Counters
+    {
+      HITS, MISSES, LOOKUPS, LOOKUP_MILLIS
+    }
+
+  /** tuples buffered behind keys not yet looked up, in multiples of the batch size */
+  private static final int BUFFER_FACTOR = 10;
+
+  private final String connectionUrl;
+  private final String username;
+  private final String password;
+  private final String driverClassName;
+  private final int poolMaxSize;
+  private final long poolIdleTimeout;
+  private final String poolValidationQuery;
+  private final String tableName;
+  private final Fields keyFields;
+  private final String[] keyColumns;
+  private final String[] valueColumns;
+
+  private int batchSize = 100;
+  private int cacheSize = 10000;
+  private long cacheTTL = 0;
+  private boolean outer = false;
+
+  /** The rows of a looked up key and when they were read */
+  private static class CacheEntry
+    {
+    final List<Tuple> rows;
+    final long readTime;
+
+    CacheEntry( List<Tuple> rows, long readTime )
+      {
+      this.rows = rows;
+      this.readTime = readTime;
+      }
+    }
+
+  /** An argument tuple waiting for the rows of its key */
+  private static class Pending
+    {
+    final Tuple arguments;
+    final Tuple key;
+    final List<Tuple> rows;
+
+    Pending( Tuple arguments, Tuple key, List<Tuple> rows )
+      {
+      this.arguments = arguments;
+      this.key = key;
+      this.rows = rows;
+      }
+    }
+
+  static class LookupContext
+    {
+    final Map<Tuple, CacheEntry> cache;
+    final List<Pending> pending = new ArrayList<Pending>();
+    /** the keys to look up by their normalized form */
+    final Map<Tuple, Tuple> missing = new LinkedHashMap<Tuple, Tuple>();
+    /** the connection of all lookups of the task, opened by the first one */
+    Connection connection;
+
+    LookupContext( final int cacheSize )
+      {
+      this.cache = new LinkedHashMap<Tuple, CacheEntry>( 16, 0.75f, true )
+        {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Tuple, CacheEntry> eldest )
+          {
+          return size() > cacheSize;
+          }
+        };
+      }
+    }
+
+  /**
+   * Constructor JDBCLookup creates a new lookup against the table of the given tap, where the key and value
+   * fields are named like their columns.
+   *
+   * @param tap the tap giving the connection and the table to look up
+   * @param argumentFields the fields of the argument tuples, which are emitted ahead of the values
+   * @param keyFields the argument fields holding the key
+   * @param valueFields the columns emitted for every matching row
+   */
+  public JDBCLookup( JDBCTap tap, Fields argumentFields, Fields keyFields, Fields valueFields )
+    {
+    this( tap, argumentFields, keyFields, toColumns( keyFields ), valueFields, toColumns( valueFields ) );
+    }
+
+  /**
+   * Constructor JDBCLookup creates a new lookup against the table of the given tap.
+   *
+   * @param tap the tap giving the connection and the table to look up
+   * @param argumentFields the fields of the argument tuples, which are emitted ahead of the values
+   * @param keyFields the argument fields holding the key
+   * @param keyColumns the columns matched against the key fields
+   * @param valueFields the fields declared for the value columns
+   * @param valueColumns the columns emitted for every matching row
+   */
+  public JDBCLookup( JDBCTap tap, Fields argumentFields, Fields keyFields, String[] keyColumns, Fields valueFields, String[] valueColumns )
+    {
+    super( argumentFields.size(), argumentFields.append( valueFields ) );
+
+    if( keyFields.size() == 0 || keyFields.size() != keyColumns.length )
+      throw new IllegalArgumentException( "key fields and key columns must be of the same, non zero size" );
+
+    if( valueFields.size() != valueColumns.length )
+      throw new IllegalArgumentException( "value fields and value columns must be of the same size" );
+
+    this.connectionUrl = tap.connectionUrl;
+    this.username = tap.username;
+    this.password = tap.password;
+    this.driverClassName = tap.driverClassName;
+    this.poolMaxSize = tap.poolMaxSize;
+    this.poolIdleTimeout = tap.poolIdleTimeout;
+    this.poolValidationQuery = tap.poolValidationQuery;
+    this.tableName = tap.getTableName();
+    this.keyFields = keyFields;
+    this.keyColumns = keyColumns;
+    this.valueColumns = valueColumns;
+    }
+
+  private static String[] toColumns( Fields fields )
+    {
+    String[] columns = new String[ fields.size() ];
+
+    for( int i = 0; i < columns.length; i++ )
+      columns[ i ] = fields.get( i ).toString();
+
+    return columns;
+    }
+
+  /**
+   * Method getBatchSize returns the number of distinct keys looked up by one statement.
+   *
+   * @return the batchSize (type int) of this JDBCLookup object.
+   */
+  public int getBatchSize()
+    {
+    return batchSize;
+    }
+
+  /**
+   * Method setBatchSize sets the number of distinct keys looked up by one statement.
+   *
+   * @param batchSize the number of keys per lookup.
+   */
+  public void setBatchSize( int batchSize )
+    {
+    if( batchSize < 1 )
+      throw new IllegalArgumentException( "batch size must be at least 1, got: " + batchSize );
+
+    this.batchSize = batchSize;
+    }
+
+  /**
+   * Method getCacheSize returns the number of keys kept in the cache.
+   *
+   * @return the cacheSize (type int) of this JDBCLookup object.
+   */
+  public int getCacheSize()
+    {
+    return cacheSize;
+    }
+
+  /**
+   * Method setCacheSize sets the number of keys kept in the cache, the least recently used keys are evicted
+   * first. Keys without rows are cached too. 0 disables the cache.
+   *
+   * @param cacheSize the maximum number of cached keys.
+   */
+  public void setCacheSize( int cacheSize )
+    {
+    this.cacheSize = cacheSize;
+    }
+
+  /**
+   * Method getCacheTTL returns the milliseconds a cached key stays valid.
+   *
+   * @return the cacheTTL (type long) of this JDBCLookup object.
+   */
+  public long getCacheTTL()
+    {
+    return cacheTTL;
+    }
+
+  /**
+   * Method setCacheTTL sets the milliseconds a cached key stays valid before it is looked up again. 0 keeps
+   * cached keys until they are evicted.
+   *
+   * @param cacheTTL the time to live of a cached key.
+   */
+  public void setCacheTTL( long cacheTTL )
+    {
+    this.cacheTTL = cacheTTL;
+    }
+
+  /**
+   * Method isOuter returns true if tuples without matching rows are emitted.
+   *
+   * @return the outer (type boolean) of this JDBCLookup object.
+   */
+  public boolean isOuter()
+    {
+    return outer;
+    }
+
+  /**
+   * Method setOuter emits tuples without matching rows with null values instead of dropping them.
+   *
+   * @param outer true for an outer join.
+   */
+  public void setOuter( boolean outer )
+    {
+    this.outer = outer;
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<LookupContext> operationCall )
+    {
+    try
+      {
+      Class.forName( driverClassName );
+      }
+    catch( ClassNotFoundException exception )
+      {
+      throw new OperationException( "unable to load driver class: " + driverClassName, exception );
+      }
+
+    operationCall.setContext( new LookupContext( cacheSize ) );
+    }
+
+  @Override
+  public void operate( FlowProcess flowProcess, FunctionCall<LookupContext> functionCall )
+    {
+    LookupContext context = functionCall.getContext();
+    TupleEntry arguments = functionCall.getArguments();
+
+    Tuple key = arguments.selectTuple( keyFields );
+    Tuple normalized = normalize( key );
+    List<Tuple> rows = getCached( context, normalized );
+
+    if( rows != null )
+      {
+      flowProcess.increment( Counters.HITS, 1 );
+
+      if( context.pending.isEmpty() )
+        {
+        emit( functionCall.getOutputCollector(), arguments.getTuple(), rows );
+        return;
+        }
+      }
+    else
+      {
+      flowProcess.increment( Counters.MISSES, 1 );
+
+      if( !context.missing.containsKey( normalized ) )
+        context.missing.put( normalized, key );
+      }
+
+    context.pending.add( new Pending( arguments.getTupleCopy(), normalized, rows ) );
+
+    if( context.missing.size() >= batchSize || context.pending.size() >= batchSize * BUFFER_FACTOR )
+      lookup( flowProcess, functionCall );
+    }
+
+  @Override
+  public void flush( FlowProcess flowProcess, OperationCall<LookupContext> operationCall )
+    {
+    LookupContext context = operationCall.getContext();
+
+    if( context != null && !context.pending.isEmpty() )
+      lookup( flowProcess, (FunctionCall<LookupContext>) operationCall );
+    }
+
+  @Override
+  public void cleanup( FlowProcess flowProcess, OperationCall<LookupContext> operationCall )
+    {
+    LookupContext context = operationCall.getContext();
+
+    if( context != null )
+      closeConnection( context );
+
+    operationCall.setContext( null );
+    }
+
+  private void closeConnection( LookupContext context )
+    {
+    if( context.connection == null )
+      return;
+
+    try
+      {
+      context.connection.close();
+      }
+    catch( SQLException exception )
+      {
+      LOG.debug( "unable to close lookup connection", exception );
+      }
+
+    context.connection = null;
+    }
+
+  private List<Tuple> getCached( LookupContext context, Tuple key )
+    {
+    CacheEntry entry = context.cache.get( key );
+
+    if( entry == null )
+      return null;
+
+    if( cacheTTL > 0 && System.currentTimeMillis() - entry.readTime > cacheTTL )
+      {
+      context.cache.remove( key );
+      return null;
+      }
+
+    return entry.rows;
+    }
+
+  /** Looks up the missing keys and emits all pending tuples. */
+  private void lookup( FlowProcess flowProcess, FunctionCall<LookupContext> functionCall )
+    {
+    LookupContext context = functionCall.getContext();
+    Map<Tuple, List<Tuple>> found = Collections.emptyMap();
+
+    if( !context.missing.isEmpty() )
+      {
+      long start = System.currentTimeMillis();
+
+      found = lookup( context, context.missing.values() );
+
+      flowProcess.increment( Counters.LOOKUPS, 1 );
+      flowProcess.increment( Counters.LOOKUP_MILLIS, System.currentTimeMillis() - start );
+
+      long readTime = System.currentTimeMillis();
+
+      for( Tuple key : context.missing.keySet() )
+        {
+        List<Tuple> rows = found.get( key );
+
+        if( rows == null )
+          {
+          rows = Collections.emptyList();
+          found.put( key, rows );
+          }
+
+        if( cacheSize > 0 )
+          context.cache.put( key, new CacheEntry( rows, readTime ) );
+        }
+      }
+
+    TupleEntryCollector collector = functionCall.getOutputCollector();
+
+    for( Pending pending : context.pending )
+      emit( collector, pending.arguments, pending.rows != null ? pending.rows : found.get( pending.key ) );
+
+    context.pending.clear();
+    context.missing.clear();
+    }
+
+  private void emit( TupleEntryCollector collector, Tuple arguments, List<Tuple> rows )
+    {
+    if( rows.isEmpty() && outer )
+      collector.add( arguments.append( Tuple.size( valueColumns.length ) ) );
+
+    for( Tuple row : rows )
+      collector.add( arguments.append( row ) );
+    }
+
+  /**
+   * Reads the rows of the given keys with a single statement, on the connection of the given context.
+   *
+   * @return the value tuples of the rows by their normalized key
+   */
+  Map<Tuple, List<Tuple>> lookup( LookupContext context, Iterable<Tuple> keys )
+    {
+    List<Tuple> keyList = new ArrayList<Tuple>();
+
+    for( Tuple key : keys )
+      keyList.add( key );
+
+    String query = constructLookupQuery( keyList.size() );
+    Map<Tuple, List<Tuple>> found = new HashMap<Tuple, List<Tuple>>();
+
+    try
+      {
+      if( context.connection == null )
+        context.connection = ConnectionPool.getConnection( connectionUrl, username, password, poolMaxSize, poolIdleTimeout, poolValidationQuery );
+
+      PreparedStatement statement = context.connection.prepareStatement( query );
+      int parameter = 1;
+
+      for( Tuple key : keyList )
+        {
+        for( Object value : key )
+          statement.setObject( parameter++, value );
+        }
+
+      ResultSet results = statement.executeQuery();
+
+      while( results.next() )
+        {
+        Tuple key = new Tuple();
+
+        for( int i = 0; i < keyColumns.length; i++ )
+          key.add( results.getObject( i + 1 ) );
+
+        Tuple row = new Tuple();
+
+        for( int i = 0; i < valueColumns.length; i++ )
+          row.add( results.getObject( keyColumns.length + i + 1 ) );
+
+        Tuple normalized = normalize( key );
+        List<Tuple> rows = found.get( normalized );
+
+        if( rows == null )
+          {
+          rows = new ArrayList<Tuple>( 1 );
+          found.put( normalized, rows );
+          }
+
+        rows.add( row );
+        }
+
+      results.close();
+      statement.close();
+      }
+    catch( SQLException exception )
+      {
+      // the connection may be broken, the next lookup opens a new one
+      closeConnection( context );
+
+      throw new OperationException( "unable to execute lookup query: " + query, exception );
+      }
+
+    LOG.debug( "looked up {} keys, found {}", keyList.size(), found.size() );
+
+    return found;
+    }
+
+  /** Returns the query selecting the key and value columns of the given number of keys. */
+  String constructLookupQuery( int keys )
+    {
+    StringBuilder query = new StringBuilder( "SELECT " );
+
+    for( String column : keyColumns )
+      query.append( column ).append( ", " );
+
+    for( String column : valueColumns )
+      query.append( column ).append( ", " );
+
+    query.setLength( query.length() - 2 );
+    query.append( " FROM " ).append( tableName ).append( " WHERE " );
+
+    if( keyColumns.length == 1 )
+      {
+      query.append( keyColumns[ 0 ] ).append( " IN (" );
+
+      for( int i = 0; i < keys; i++ )
+        query.append( i == 0 ? "?" : ",?" );
+
+      return query.append( ")" ).toString();
+      }
+
+    for( int i = 0; i < keys; i++ )
+      {
+      query.append( i == 0 ? "(" : " OR (" );
+
+      for( int j = 0; j < keyColumns.length; j++ )
+        query.append( j == 0 ? "" : " AND " ).append( keyColumns[ j ] ).append( " = ?" );
+
+      query.append( ")" );
+      }
+
+    return query.toString();
+    }
+
+  /**
+   * Returns the key with numbers and characters in a canonical form, so that the keys of the stream match the
+   * keys read from the table, regardless of the Java types the driver maps the columns to.
+   */
+  static Tuple normalize( Tuple key )
+    {
+    Tuple normalized = new Tuple();
+
+    for( Object value : key )
+      normalized.add( normalize( value ) );
+
+    return normalized;
+    }
+
+  private static Object normalize( Object value )
+    {
+    if( value instanceof Character )
+      return value.toString();
+
+    if( !( value instanceof Number ) )
+      return value;
+
+    BigDecimal decimal;
+
+    if( value instanceof BigDecimal )
+      decimal = (BigDecimal) value;
+    else if( value instanceof BigInteger )
+      decimal = new BigDecimal( (BigInteger) value );
+    else if( value instanceof Double || value instanceof Float )
+      {
+      double doubleValue = ( (Number) value ).doubleValue();
+
+      if( Double.isNaN( doubleValue ) || Double.isInfinite( doubleValue ) )
+        return value;
+
+      decimal = BigDecimal.valueOf( doubleValue );
+      }
+    else
+      decimal = BigDecimal.valueOf( ( (Number) value ).longValue() );
+
+    // stripTrailingZeros keeps the scale of zero before Java 8
+    return decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( !( object instanceof JDBCLookup ) )
+      return false;
+    if( !super.equals( object ) )
+      return false;
+
+    JDBCLookup that = (JDBCLookup) object;
+
+    return batchSize == that.batchSize && cacheSize == that.cacheSize && cacheTTL == that.cacheTTL && outer == that.outer
+      && connectionUrl.equals( that.connectionUrl ) && tableName.equals( that.tableName ) && keyFields.equals( that.keyFields )
+      && Arrays.equals( keyColumns, that.keyColumns ) && Arrays.equals( valueColumns, that.valueColumns );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = super.hashCode();
+    result = 31 * result + connectionUrl.hashCode();
+    result = 31 * result + tableName.hashCode();
+    result = 31 * result + keyFields.hashCode();
+    result = 31 * result + Arrays.hashCode( keyColumns );
+    result = 31 * result + Arrays.hashCode( valueColumns );
+    return result;
+    }
+  }
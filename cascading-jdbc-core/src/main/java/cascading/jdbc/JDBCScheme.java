@@ -66,15 +66,45 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
   private Fields updateValueFields;
   private Fields updateByFields;
   private Fields columnFields;
+  private Fields projection;
   private Tuple updateIfTuple;
   private String selectQuery;
   private String countQuery;
   private long limit = -1;
   protected Boolean tableAlias = true;
   private Fields internalSinkFields;
+  private String splitBy;
+  private String[] splitByHash;
+  private int splitSampleSize = 0;
+  private String[] splitPredicates;
+  private boolean estimateCount = false;
+  private int prefetchRows = 0;
+  private int fetchSize = 0;
+  private boolean snapshot = false;
+  private int isolationLevel = -1;
+  private String incrementalBy;
+  private boolean asyncFlush = false;
+  private int insertRows = 1;
+  private int minBatchSize = 0;
+  private int maxBatchSize = 0;
+  private boolean upsert = false;
 
   private static final Logger LOG = LoggerFactory.getLogger( JDBCScheme.class );
 
+  /** Slots of the source context */
+  private static final int SOURCE_KEY = 0;
+  private static final int SOURCE_VALUE = 1;
+  private static final int SOURCE_TUPLE = 2;
+  private static final int SOURCE_COERCIONS = 3;
+
+  /** Slots of the sink context */
+  private static final int SINK_RECORD = 0;
+  private static final int SINK_TYPES = 1;
+  private static final int SINK_TUPLE = 2;
+  private static final int SINK_VALUE_POSITIONS = 3;
+  private static final int SINK_BY_POSITIONS = 4;
+  private static final int SINK_VALUES = 5;
+
   /**
    * Constructor JDBCScheme creates a new JDBCScheme instance.
    *
@@ -489,7 +519,8 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
    * @param columnFields of type Fields
    * @param columns of type String[]
    * @param selectQuery of type String
-   * @param countQuery of type String
+   * @param countQuery of type String, may be null to stream the query in one split or in the splits of
+   *          {@link #setSplitPredicates(String...)} without counting its rows
    * @param limit of type long
    * @param tableAlias of type Boolean
    */
@@ -504,7 +535,7 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
 
     this.columns = columns;
     this.selectQuery = selectQuery.trim().replaceAll( ";$", "" );
-    this.countQuery = countQuery.trim().replaceAll( ";$", "" );
+    this.countQuery = countQuery != null ? countQuery.trim().replaceAll( ";$", "" ) : null;
     this.limit = limit;
     this.tableAlias = tableAlias;
 
@@ -603,20 +634,435 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
     return orderBy;
     }
 
+  /**
+   * Method getProjection returns the fields the source selects the columns of.
+   *
+   * @return the projection (type Fields) of this JDBCScheme object, null if all columns are selected.
+   */
+  public Fields getProjection()
+    {
+    return projection;
+    }
+
+  /**
+   * Method setProjection lets the source select only the columns bound to the
+   * given fields instead of all columns, so that wide tables are not read in
+   * full if the assembly consumes only a few of their columns. The source fields
+   * become the given fields, in their order and with the types of the column
+   * fields. The sink fields are not changed.
+   * <p/>
+   * The projection is also derived from the source fields presented by the
+   * planner, if they are a subset of the column fields.
+   *
+   * @param projection the fields to select, null selects all columns.
+   */
+  public void setProjection( Fields projection )
+    {
+    if( projection != null && ( columnFields == null || !columnFields.contains( projection ) ) )
+      throw new IllegalArgumentException( "columnFields must contain the projection" );
+
+    this.projection = projection;
+
+    setSourceFields( getProjectedFields() );
+    }
+
+  /**
+   * Method getSplitBy returns the column the source is split by.
+   *
+   * @return the splitBy (type String) of this JDBCScheme object.
+   */
+  public String getSplitBy()
+    {
+    return splitBy;
+    }
+
+  /**
+   * Method setSplitBy sets a numeric or temporal column to split the source by.
+   * <p/>
+   * Instead of paging through the table with LIMIT and OFFSET, every concurrent
+   * read selects a range of this column. The column should be indexed.
+   *
+   * @param splitBy the column to split the source by.
+   */
+  public void setSplitBy( String splitBy )
+    {
+    this.splitBy = splitBy;
+    }
+
+  /**
+   * Method getSplitSampleSize returns the number of values sampled to place the split boundaries.
+   *
+   * @return the splitSampleSize (type int) of this JDBCScheme object.
+   */
+  public int getSplitSampleSize()
+    {
+    return splitSampleSize;
+    }
+
+  /**
+   * Method setSplitSampleSize sets the number of values of the split by column
+   * sampled to place the boundaries of the key ranges.
+   * <p/>
+   * The boundaries are the quantiles of the sample instead of even steps
+   * between the minimum and the maximum, so that every concurrent read selects
+   * about the same number of rows even if the keys are clustered. The sample is
+   * taken with TABLESAMPLE on PostgreSQL, SAMPLE on Oracle and Teradata, and
+   * ORDER BY RANDOM() LIMIT elsewhere.
+   *
+   * @param splitSampleSize the number of values to sample, 0 splits evenly.
+   */
+  public void setSplitSampleSize( int splitSampleSize )
+    {
+    this.splitSampleSize = splitSampleSize;
+    }
+
+  /**
+   * Method getSplitPredicates returns the predicates selecting the rows of the splits of the source.
+   *
+   * @return the splitPredicates (type String[]) of this JDBCScheme object.
+   */
+  public String[] getSplitPredicates()
+    {
+    return splitPredicates;
+    }
+
+  /**
+   * Method setSplitPredicates sets the predicates selecting the rows of the
+   * splits of the source, one concurrent read per predicate.
+   * <p/>
+   * The predicates are added to the conditions of a table or applied to the
+   * result of the select query and have to select disjoint rows, like
+   * <code>region = 'EU'</code> and <code>region &lt;&gt; 'EU'</code>. No count
+   * query is needed.
+   *
+   * @param splitPredicates the predicates of the splits.
+   */
+  public void setSplitPredicates( String... splitPredicates )
+    {
+    this.splitPredicates = splitPredicates;
+    }
+
+  /**
+   * Method getSplitByHash returns the columns whose hash the source is split by.
+   *
+   * @return the splitByHash (type String[]) of this JDBCScheme object.
+   */
+  public String[] getSplitByHash()
+    {
+    return splitByHash;
+    }
+
+  /**
+   * Method setSplitByHash sets the columns whose hash the source is split by.
+   * <p/>
+   * Every concurrent read selects the rows whose hash of these columns modulo
+   * the number of reads is its index, which needs neither a numeric key nor a
+   * count query. Requires a dialect specific input format like the one of
+   * PostgreSQL, MySQL, Oracle or Teradata.
+   *
+   * @param splitByHash the columns to hash.
+   */
+  public void setSplitByHash( String... splitByHash )
+    {
+    this.splitByHash = splitByHash;
+    }
+
+  /**
+   * Method isEstimateCount returns true if the source is split by an estimated row count.
+   *
+   * @return the estimateCount (type boolean) of this JDBCScheme object.
+   */
+  public boolean isEstimateCount()
+    {
+    return estimateCount;
+    }
+
+  /**
+   * Method setEstimateCount sizes the splits of the source from catalog statistics of
+   * the database instead of counting all rows. If no statistics are available, the
+   * rows are counted.
+   *
+   * @param estimateCount true to estimate the row count.
+   */
+  public void setEstimateCount( boolean estimateCount )
+    {
+    this.estimateCount = estimateCount;
+    }
+
+  /**
+   * Method getPrefetchRows returns the number of rows read ahead by the source.
+   *
+   * @return the prefetchRows (type int) of this JDBCScheme object.
+   */
+  public int getPrefetchRows()
+    {
+    return prefetchRows;
+    }
+
+  /**
+   * Method setPrefetchRows sets the number of rows the source reads ahead on a
+   * background thread, so that waiting on the database overlaps with processing
+   * the rows already read. 0 reads every row on demand.
+   *
+   * @param prefetchRows the number of rows to read ahead.
+   */
+  public void setPrefetchRows( int prefetchRows )
+    {
+    this.prefetchRows = prefetchRows;
+    }
+
+  /**
+   * Method getFetchSize returns the fetch size hint of the source.
+   *
+   * @return the fetchSize (type int) of this JDBCScheme object.
+   */
+  public int getFetchSize()
+    {
+    return fetchSize;
+    }
+
+  /**
+   * Method setFetchSize sets the number of rows the driver should fetch from the
+   * database per round trip. 0 keeps the default of the driver.
+   *
+   * @param fetchSize the fetch size hint.
+   */
+  public void setFetchSize( int fetchSize )
+    {
+    this.fetchSize = fetchSize;
+    }
+
+  /**
+   * Method isSnapshot returns true if all splits of the source read one snapshot of the database.
+   *
+   * @return the snapshot (type boolean) of this JDBCScheme object.
+   */
+  public boolean isSnapshot()
+    {
+    return snapshot;
+    }
+
+  /**
+   * Method setSnapshot lets all splits of the source read the same snapshot of the
+   * database, exported when the splits are computed. This gives a consistent parallel
+   * read without serializable transactions, if the input format supports it. A snapshot
+   * held open by the database, like on PostgreSQL, is released once the flow completed
+   * if a {@link WatermarkListener} is registered with it, or by {@link JDBCTap#releaseSnapshots()}.
+   *
+   * @param snapshot true to read all splits from one snapshot.
+   */
+  public void setSnapshot( boolean snapshot )
+    {
+    this.snapshot = snapshot;
+    }
+
+  /**
+   * Method getIsolationLevel returns the transaction isolation level of the source.
+   *
+   * @return the isolationLevel (type int) of this JDBCScheme object, -1 if the default is used.
+   */
+  public int getIsolationLevel()
+    {
+    return isolationLevel;
+    }
+
+  /**
+   * Method setIsolationLevel sets the transaction isolation level the source reads with,
+   * one of the {@link java.sql.Connection} constants. By default snapshot reads use the
+   * level of the input format and all other reads are serializable.
+   *
+   * @param isolationLevel the transaction isolation level.
+   */
+  public void setIsolationLevel( int isolationLevel )
+    {
+    this.isolationLevel = isolationLevel;
+    }
+
+  /**
+   * Method getIncrementalBy returns the column an incremental source is read by.
+   *
+   * @return the incrementalBy (type String) of this JDBCScheme object.
+   */
+  public String getIncrementalBy()
+    {
+    return incrementalBy;
+    }
+
+  /**
+   * Method setIncrementalBy reads the source incrementally by the given monotonically
+   * increasing column, like an id or a modification time. Every read selects the rows
+   * above the mark committed by the previous read, up to the maximum of the column at
+   * the time the flow is planned. The new mark is stored by the {@link JDBCTap} when
+   * its resource is committed. Only tables can be read incrementally.
+   *
+   * @param incrementalBy the watermark column.
+   */
+  public void setIncrementalBy( String incrementalBy )
+    {
+    if( incrementalBy != null && selectQuery != null )
+      throw new IllegalArgumentException( "a select query can't be read incrementally" );
+
+    this.incrementalBy = incrementalBy;
+    }
+
+  /**
+   * Method isAsyncFlush returns true if the sink executes its batches in the background.
+   *
+   * @return the asyncFlush (type boolean) of this JDBCScheme object.
+   */
+  public boolean isAsyncFlush()
+    {
+    return asyncFlush;
+    }
+
+  /**
+   * Method setAsyncFlush lets the sink execute and commit every full batch on a
+   * background thread using a second connection, while the next batch is filled.
+   * A failed batch fails the next write or the close of the sink.
+   *
+   * @param asyncFlush true to execute the batches in the background.
+   */
+  public void setAsyncFlush( boolean asyncFlush )
+    {
+    this.asyncFlush = asyncFlush;
+    }
+
+  /**
+   * Method getInsertRows returns the number of rows the sink inserts per statement.
+   *
+   * @return the insertRows (type int) of this JDBCScheme object.
+   */
+  public int getInsertRows()
+    {
+    return insertRows;
+    }
+
+  /**
+   * Method setInsertRows lets the sink insert the given number of rows with a single
+   * multi-row INSERT ... VALUES (...),(...) statement, for databases whose drivers
+   * send batched inserts row by row. The database has to support multi-row VALUES
+   * lists. 1 inserts every row with its own statement. The number of rows is reduced
+   * if the parameters of all rows would exceed the limit of the driver.
+   *
+   * @param insertRows the number of rows per insert statement.
+   */
+  public void setInsertRows( int insertRows )
+    {
+    this.insertRows = insertRows;
+    }
+
+  /**
+   * Method isUpsert returns true if the sink upserts every tuple with a single statement.
+   *
+   * @return the upsert (type boolean) of this JDBCScheme object.
+   */
+  public boolean isUpsert()
+    {
+    return upsert;
+    }
+
+  /**
+   * Method setUpsert lets the sink write every tuple with a single statement inserting
+   * the row, or updating the row with the same values of the updateBy columns, instead of
+   * an INSERT for the tuples matching the updateIfTuple and an UPDATE for all others. The
+   * statement is an INSERT ... ON CONFLICT DO UPDATE on PostgreSQL, an INSERT ... ON
+   * DUPLICATE KEY UPDATE on MySQL and a MERGE otherwise. The updateBy columns have to be
+   * a unique key of the table.
+   *
+   * @param upsert true to upsert the tuples.
+   */
+  public void setUpsert( boolean upsert )
+    {
+    if( upsert && updateBy == null )
+      throw new IllegalArgumentException( "upserts require updateBy columns" );
+
+    this.upsert = upsert;
+    }
+
+  /**
+   * Method getMinBatchSize returns the smallest number of rows per adaptive batch, 0 if the batch size is fixed.
+   *
+   * @return the minBatchSize (type int) of this JDBCScheme object.
+   */
+  public int getMinBatchSize()
+    {
+    return minBatchSize;
+    }
+
+  /**
+   * Method getMaxBatchSize returns the largest number of rows per adaptive batch, 0 if the batch size is fixed.
+   *
+   * @return the maxBatchSize (type int) of this JDBCScheme object.
+   */
+  public int getMaxBatchSize()
+    {
+    return maxBatchSize;
+    }
+
+  /**
+   * Method setAdaptiveBatchSize lets the sink adapt the number of rows per batch to the time
+   * every batch takes, starting at the batch size of the {@link JDBCTap}. The batch grows by
+   * the minimum size while the batches execute within
+   * {@link cascading.jdbc.db.DBConfiguration#OUTPUT_BATCH_TARGET_MILLIS} without losing
+   * throughput, and is halved otherwise. The batches are counted in the
+   * {@link DBOutputFormat.Counters}, every writer logs the batch size it settled at.
+   *
+   * @param minBatchSize the smallest number of rows per batch.
+   * @param maxBatchSize the largest number of rows per batch.
+   */
+  public void setAdaptiveBatchSize( int minBatchSize, int maxBatchSize )
+    {
+    if( minBatchSize < 1 || maxBatchSize < minBatchSize )
+      throw new IllegalArgumentException( "invalid batch size bounds, min: " + minBatchSize + " max: " + maxBatchSize );
+
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    }
+
   @Override
   public void sourceConfInit( FlowProcess<JobConf> process, Tap<JobConf, RecordReader, OutputCollector> tap, JobConf conf )
     {
     int concurrentReads = ( (JDBCTap) tap ).concurrentReads;
 
     if( selectQuery != null )
+      {
       DBInputFormat.setInput( conf, TupleRecord.class, selectQuery, countQuery, limit, concurrentReads, tableAlias );
+
+      if( projection != null )
+        DBInputFormat.setProjection( conf, getProjectedColumns() );
+      }
     else
       {
       String tableName = ( (JDBCTap) tap ).getTableName();
       String joinedOrderBy = orderBy != null ? Util.join( orderBy, ", " ) : null;
-      DBInputFormat.setInput( conf, TupleRecord.class, tableName, conditions, joinedOrderBy, limit, concurrentReads, tableAlias, columns );
+      DBInputFormat.setInput( conf, TupleRecord.class, tableName, conditions, joinedOrderBy, limit, concurrentReads, tableAlias,
+        getProjectedColumns() );
       }
 
+    if( splitBy != null )
+      DBInputFormat.setSplitBy( conf, splitBy );
+
+    if( splitSampleSize > 0 )
+      DBInputFormat.setSplitSample( conf, splitSampleSize );
+
+    if( splitPredicates != null )
+      DBInputFormat.setSplitPredicates( conf, splitPredicates );
+
+    if( splitByHash != null )
+      DBInputFormat.setSplitByHash( conf, splitByHash );
+
+    if( estimateCount )
+      DBInputFormat.setCountEstimate( conf, true, null );
+
+    if( prefetchRows > 0 || fetchSize > 0 )
+      DBInputFormat.setPrefetch( conf, prefetchRows, fetchSize );
+
+    if( snapshot )
+      DBInputFormat.setSnapshot( conf, true );
+
+    if( isolationLevel != -1 )
+      DBInputFormat.setIsolationLevel( conf, isolationLevel );
+
     if( inputFormatClass != null )
       conf.setInputFormat( inputFormatClass );
     }
@@ -627,10 +1073,26 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
     if( selectQuery != null )
       throw new TapException( "cannot sink to this Scheme" );
 
-    String tableName = ( (JDBCTap) tap ).getTableName();
+    // a staged load inserts into the staging table, which is moved into the table on commit
+    if( ( (JDBCTap) tap ).isStaged() && updateBy != null )
+      throw new TapException( "a staged load only inserts rows, updateBy is not supported" );
+
+    String tableName = ( (JDBCTap) tap ).getSinkTableName();
     int batchSize = ( (JDBCTap) tap ).getBatchSize();
     DBOutputFormat.setOutput( conf, DBOutputFormat.class, tableName, columns, updateBy, batchSize );
 
+    if( asyncFlush )
+      DBOutputFormat.setAsyncFlush( conf, true );
+
+    if( insertRows > 1 )
+      DBOutputFormat.setInsertRows( conf, insertRows );
+
+    if( upsert )
+      DBOutputFormat.setUpsert( conf, true );
+
+    if( maxBatchSize > 0 )
+      DBOutputFormat.setAdaptiveBatchSize( conf, minBatchSize, maxBatchSize, -1 );
+
     if( outputFormatClass != null )
       conf.setOutputFormat( outputFormatClass );
     }
@@ -638,36 +1100,40 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
   @Override
   public void sourcePrepare( FlowProcess<JobConf> flowProcess, SourceCall<Object[], RecordReader> sourceCall )
     {
-    Object[] pair = new Object[]{ sourceCall.getInput().createKey(), sourceCall.getInput().createValue() };
+    Object[] context = new Object[ 4 ];
+    Fields fields = getProjectedFields();
 
-    sourceCall.setContext( pair );
+    context[ SOURCE_KEY ] = sourceCall.getInput().createKey();
+    context[ SOURCE_VALUE ] = sourceCall.getInput().createValue();
+    context[ SOURCE_TUPLE ] = Tuple.size( fields.size() );
+    context[ SOURCE_COERCIONS ] = getCoercions( fields );
+
+    sourceCall.setContext( context );
     }
 
   @Override
   public boolean source( FlowProcess<JobConf> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
     {
-    Object key = sourceCall.getContext()[ 0 ];
-    Object value = sourceCall.getContext()[ 1 ];
-    boolean result = sourceCall.getInput().next( key, value );
+    Object[] context = sourceCall.getContext();
+    boolean result = sourceCall.getInput().next( context[ SOURCE_KEY ], context[ SOURCE_VALUE ] );
 
     if( !result )
       return false;
 
-    Tuple rawTuple = ( (TupleRecord) value ).getTuple();
-    Type[] types = getColumnFields().getTypes();
-    int size = getColumnFields().size();
+    Tuple rawTuple = ( (TupleRecord) context[ SOURCE_VALUE ] ).getTuple();
+    Tuple tuple = (Tuple) context[ SOURCE_TUPLE ];
+    CoercibleType<?>[] coercions = (CoercibleType<?>[]) context[ SOURCE_COERCIONS ];
 
-    Tuple newTuple = Tuple.size( size );
-    for( int i = 0; i < size; i++ )
+    for( int i = 0; i < coercions.length; i++ )
       {
       Object rawValue = rawTuple.getObject( i );
-      if( rawValue != null && types != null && types[ i ] instanceof CoercibleType<?> )
-        newTuple.set( i, ( (CoercibleType<?>) types[ i ] ).canonical( rawValue ) );
+      if( rawValue != null && coercions[ i ] != null )
+        tuple.set( i, coercions[ i ].canonical( rawValue ) );
       else
-        newTuple.set( i, rawValue );
+        tuple.set( i, rawValue );
       }
-    newTuple = cleanOutgoingTuple( newTuple );
-    sourceCall.getIncomingEntry().setTuple( newTuple );
+
+    sourceCall.getIncomingEntry().setTuple( cleanOutgoingTuple( tuple ) );
 
     return true;
     }
@@ -678,43 +1144,167 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
     sourceCall.setContext( null );
     }
 
+  @Override
+  public void sinkPrepare( FlowProcess<JobConf> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    Fields fields = getSinkFields();
+    if( internalSinkFields == null && fields.hasTypes() )
+      deriveInternalSinkFields( fields );
+    if( internalSinkFields != null )
+      fields = internalSinkFields;
+
+    Object[] context = new Object[ 6 ];
+    TupleRecord record = new TupleRecord();
+
+    // the codecs for the written values are derived once from the types the tuples are coerced to
+    if( updateBy != null )
+      {
+      record.setWriteCodecs( ColumnCodec.forFields( fields, updateValueFields ) );
+      context[ SINK_VALUES ] = Tuple.size( updateValueFields.size() );
+      context[ SINK_VALUE_POSITIONS ] = getPositions( fields, updateValueFields );
+      context[ SINK_BY_POSITIONS ] = getPositions( fields, updateByFields );
+      }
+    else
+      {
+      record.setWriteCodecs( ColumnCodec.forFields( fields, fields ) );
+      }
+
+    context[ SINK_RECORD ] = record;
+    context[ SINK_TYPES ] = fields.getTypes();
+
+    if( fields.hasTypes() )
+      context[ SINK_TUPLE ] = Tuple.size( fields.size() );
+
+    sinkCall.setContext( context );
+    }
+
   @Override
   public void sink( FlowProcess<JobConf> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
     {
     // it's ok to use NULL here so the collector does not write anything
+    Object[] context = sinkCall.getContext();
     TupleEntry tupleEntry = sinkCall.getOutgoingEntry();
     OutputCollector outputCollector = sinkCall.getOutput();
-
-    Fields fields = getSinkFields();
-    if ( internalSinkFields == null && fields.hasTypes() )
-      deriveInternalSinkFields( fields );
-    if( internalSinkFields != null && !fields.equals( internalSinkFields ) )
-      fields = internalSinkFields;
+    TupleRecord record = (TupleRecord) context[ SINK_RECORD ];
+    Type[] types = (Type[]) context[ SINK_TYPES ];
 
     Tuple result;
-    if ( fields.hasTypes() )
-      result = tupleEntry.getCoercedTuple( fields.getTypes() );
+    if( types != null )
+      result = tupleEntry.getCoercedTuple( types, (Tuple) context[ SINK_TUPLE ] );
     else
       result = tupleEntry.getTuple();
 
     if( updateBy != null )
       {
-      Tuple allValues = result.get( fields, updateValueFields );
-      Tuple updateValues = result.get( fields, updateByFields );
-      allValues = cleanIncomingTuple( allValues );
+      int[] valuePositions = (int[]) context[ SINK_VALUE_POSITIONS ];
+      Tuple allValues = (Tuple) context[ SINK_VALUES ];
+
+      for( int i = 0; i < valuePositions.length; i++ )
+        allValues.set( i, result.getObject( valuePositions[ i ] ) );
 
-      TupleRecord key = new TupleRecord( allValues );
+      record.setTuple( cleanIncomingTuple( allValues ) );
 
-      if( updateValues.equals( updateIfTuple ) )
-        outputCollector.collect( key, null );
+      // the upsert statement is the insert statement of the output format
+      if( upsert || matchesUpdateIfTuple( result, (int[]) context[ SINK_BY_POSITIONS ] ) )
+        outputCollector.collect( record, null );
       else
-        outputCollector.collect( key, key );
+        outputCollector.collect( record, record );
 
       return;
       }
-    result = cleanIncomingTuple( result );
-    outputCollector.collect( new TupleRecord( result ), null );
 
+    record.setTuple( cleanIncomingTuple( result ) );
+
+    outputCollector.collect( record, null );
+    }
+
+  @Override
+  public void sinkCleanup( FlowProcess<JobConf> flowProcess, SinkCall<Object[], OutputCollector> sinkCall )
+    {
+    sinkCall.setContext( null );
+    }
+
+  private boolean matchesUpdateIfTuple( Tuple result, int[] byPositions )
+    {
+    for( int i = 0; i < byPositions.length; i++ )
+      {
+      Object value = result.getObject( byPositions[ i ] );
+      Object expected = updateIfTuple.getObject( i );
+
+      if( value == null ? expected != null : !value.equals( expected ) )
+        return false;
+      }
+
+    return true;
+    }
+
+  private static CoercibleType<?>[] getCoercions( Fields fields )
+    {
+    CoercibleType<?>[] coercions = new CoercibleType<?>[ fields.size() ];
+
+    for( int i = 0; i < coercions.length; i++ )
+      {
+      if( fields.getType( i ) instanceof CoercibleType<?> )
+        coercions[ i ] = (CoercibleType<?>) fields.getType( i );
+      }
+
+    return coercions;
+    }
+
+  /** Returns the column fields selected by the projection, with their types. */
+  private Fields getProjectedFields()
+    {
+    if( projection == null )
+      return columnFields;
+
+    int[] positions = getPositions( columnFields, projection );
+    Comparable<?>[] names = new Comparable[ positions.length ];
+    Type[] types = new Type[ positions.length ];
+
+    for( int i = 0; i < positions.length; i++ )
+      {
+      names[ i ] = columnFields.get( positions[ i ] );
+      types[ i ] = columnFields.getType( positions[ i ] );
+      }
+
+    return columnFields.hasTypes() ? new Fields( names, types ) : new Fields( names );
+    }
+
+  /** Returns the columns bound to the fields of the projection. */
+  private String[] getProjectedColumns()
+    {
+    if( projection == null )
+      return columns;
+
+    int[] positions = getPositions( columnFields, projection );
+    String[] projectedColumns = new String[ positions.length ];
+
+    for( int i = 0; i < positions.length; i++ )
+      projectedColumns[ i ] = columns[ positions[ i ] ];
+
+    return projectedColumns;
+    }
+
+  private static int[] getPositions( Fields fields, Fields selector )
+    {
+    int[] positions = new int[ selector.size() ];
+
+    for( int i = 0; i < positions.length; i++ )
+      positions[ i ] = fields.getPos( selector.get( i ) );
+
+    return positions;
+    }
+
+  @Override
+  public void presentSourceFields( FlowProcess<JobConf> flowProcess, Tap tap, Fields fields )
+    {
+    LOG.info( "receiving final source fields {}", fields );
+    super.presentSourceFields( flowProcess, tap, fields );
+
+    // only read the columns of the presented fields if they are narrower than the column fields
+    if( projection == null && columnFields != null && fields.isDefined() && fields.size() < columnFields.size()
+      && columnFields.contains( fields ) )
+      setProjection( fields );
     }
 
   @Override
@@ -814,6 +1404,8 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
       return false;
     if( !Arrays.equals( columns, that.columns ) )
       return false;
+    if( projection != null ? !projection.equals( that.projection ) : that.projection != null )
+      return false;
     if( conditions != null ? !conditions.equals( that.conditions ) : that.conditions != null )
       return false;
     if( countQuery != null ? !countQuery.equals( that.countQuery ) : that.countQuery != null )
@@ -834,6 +1426,36 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
       return false;
     if( updateValueFields != null ? !updateValueFields.equals( that.updateValueFields ) : that.updateValueFields != null )
       return false;
+    if( splitBy != null ? !splitBy.equals( that.splitBy ) : that.splitBy != null )
+      return false;
+    if( !Arrays.equals( splitByHash, that.splitByHash ) )
+      return false;
+    if( splitSampleSize != that.splitSampleSize )
+      return false;
+    if( !Arrays.equals( splitPredicates, that.splitPredicates ) )
+      return false;
+    if( estimateCount != that.estimateCount )
+      return false;
+    if( prefetchRows != that.prefetchRows )
+      return false;
+    if( fetchSize != that.fetchSize )
+      return false;
+    if( snapshot != that.snapshot )
+      return false;
+    if( isolationLevel != that.isolationLevel )
+      return false;
+    if( incrementalBy != null ? !incrementalBy.equals( that.incrementalBy ) : that.incrementalBy != null )
+      return false;
+    if( asyncFlush != that.asyncFlush )
+      return false;
+    if( insertRows != that.insertRows )
+      return false;
+    if( minBatchSize != that.minBatchSize )
+      return false;
+    if( maxBatchSize != that.maxBatchSize )
+      return false;
+    if( upsert != that.upsert )
+      return false;
 
     return true;
     }
@@ -851,10 +1473,26 @@ public class JDBCScheme extends Scheme<JobConf, RecordReader, OutputCollector, O
     result = 31 * result + ( updateValueFields != null ? updateValueFields.hashCode() : 0 );
     result = 31 * result + ( updateByFields != null ? updateByFields.hashCode() : 0 );
     result = 31 * result + ( columnFields != null ? columnFields.hashCode() : 0 );
+    result = 31 * result + ( projection != null ? projection.hashCode() : 0 );
     result = 31 * result + ( updateIfTuple != null ? updateIfTuple.hashCode() : 0 );
     result = 31 * result + ( selectQuery != null ? selectQuery.hashCode() : 0 );
     result = 31 * result + ( countQuery != null ? countQuery.hashCode() : 0 );
     result = 31 * result + (int) ( limit ^ ( limit >>> 32 ) );
+    result = 31 * result + ( splitBy != null ? splitBy.hashCode() : 0 );
+    result = 31 * result + ( splitByHash != null ? Arrays.hashCode( splitByHash ) : 0 );
+    result = 31 * result + splitSampleSize;
+    result = 31 * result + ( splitPredicates != null ? Arrays.hashCode( splitPredicates ) : 0 );
+    result = 31 * result + ( estimateCount ? 1 : 0 );
+    result = 31 * result + prefetchRows;
+    result = 31 * result + fetchSize;
+    result = 31 * result + ( snapshot ? 1 : 0 );
+    result = 31 * result + isolationLevel;
+    result = 31 * result + ( incrementalBy != null ? incrementalBy.hashCode() : 0 );
+    result = 31 * result + ( asyncFlush ? 1 : 0 );
+    result = 31 * result + insertRows;
+    result = 31 * result + minBatchSize;
+    result = 31 * result + maxBatchSize;
+    result = 31 * result + ( upsert ? 1 : 0 );
     return result;
     }
   }
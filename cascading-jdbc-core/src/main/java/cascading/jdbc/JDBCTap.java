@@ -14,13 +14,18 @@ package cascading.jdbc;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Driver;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -29,7 +34,9 @@ import java.util.Properties;
 import java.util.UUID;
 
 import cascading.flow.FlowProcess;
+import cascading.jdbc.db.ConnectionPool;
 import cascading.jdbc.db.DBConfiguration;
+import cascading.jdbc.db.DBInputFormat;
 import cascading.management.annotation.URISanitizer;
 import cascading.property.AppProps;
 import cascading.tap.SinkMode;
@@ -39,6 +46,7 @@ import cascading.tap.hadoop.io.HadoopTupleEntrySchemeIterator;
 import cascading.tuple.TupleEntryCollector;
 import cascading.tuple.TupleEntryIterator;
 import com.google.common.collect.Lists;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.JobConf;
@@ -68,6 +76,10 @@ import org.slf4j.LoggerFactory;
  * Use {@link #setBatchSize(int)} to set the number of INSERT/UPDATES should be
  * grouped together before being executed. The default vaue is 1,000.
  * <p/>
+ * Use {@link #setStagingTableName(String)} to load the rows into a staging table
+ * first, which is moved into the table when the flow completes, see
+ * {@link #commitResource(JobConf)}.
+ * <p/>
  * Use {@link #executeQuery(String, int)} or {@link #executeUpdate(String)} to
  * invoke SQL statements against the underlying Table.
  * <p/>
@@ -115,6 +127,9 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
   /** unique identifier */
   private final String id = UUID.randomUUID().toString();
 
+  /** the last version of every table seen by this JVM and the time it was first seen, as "time@version" */
+  private static final Properties VERSION_TIMES = new Properties();
+
   /** Field connectionUrl */
   String connectionUrl;
   /** Field username */
@@ -129,6 +144,28 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
   int batchSize = 1000;
   /** Field concurrentReads */
   int concurrentReads = 0;
+  /** Field watermarkTable */
+  String watermarkTable = DEFAULT_WATERMARK_TABLE;
+  /** Field modifiedTimeQuery */
+  String modifiedTimeQuery;
+  /** Field stagingTableName */
+  String stagingTableName;
+  /** Field runStagingTableName, the staging table of the current load */
+  String runStagingTableName;
+  /** Field poolMaxSize */
+  int poolMaxSize = ConnectionPool.DEFAULT_MAX_SIZE;
+  /** Field poolIdleTimeout */
+  long poolIdleTimeout = ConnectionPool.DEFAULT_IDLE_TIMEOUT;
+  /** Field poolValidationQuery */
+  String poolValidationQuery;
+
+  /** the previous and the current mark of an incremental read, the current one is committed */
+  private transient String[] watermarks;
+  /** the staging table of the current load was created by this tap */
+  private transient boolean stagingTableCreated;
+
+  /** Default table storing the marks of incremental reads */
+  public static final String DEFAULT_WATERMARK_TABLE = "cascading_watermarks";
 
   /**
    * Constructor JDBCTap creates a new JDBCTap instance.
@@ -163,12 +200,51 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     this( connectionUrl, null, null, driverClassName, tableDesc, scheme, sinkMode );
     }
 
+  /**
+   * Stores the mark of the rows read by an incremental source, so that the next read starts above it, and
+   * releases the snapshots exported for the reads of this tap. Cascading only commits sinks, register a
+   * {@link WatermarkListener} with the flow to commit incremental sources and release snapshots.
+   */
   @Override
   public boolean commitResource( JobConf conf ) throws IOException
     {
+    releaseSnapshots();
+
+    if( watermarks != null )
+      {
+      if( watermarks[ 1 ] != null )
+        writeWatermark( watermarks[ 1 ] );
+
+      watermarks = null;
+      }
+
+    if( isStaged() && isSink() )
+      commitStagingTable();
+
     return super.commitResource( conf );
     }
 
+  /** Drops the staging table of a failed staged load, the table keeps its previous rows. */
+  @Override
+  public boolean rollbackResource( JobConf conf ) throws IOException
+    {
+    releaseSnapshots();
+
+    if( isStaged() && isSink() )
+      dropStagingTable();
+
+    return super.rollbackResource( conf );
+    }
+
+  /**
+   * Ends the transactions holding the snapshots exported for the reads of this tap open, see
+   * {@link JDBCScheme#setSnapshot(boolean)}. Called once the flow reading this tap completed.
+   */
+  public void releaseSnapshots()
+    {
+    DBInputFormat.releaseSnapshots( id );
+    }
+
   /**
    * Constructor JDBCTap creates a new JDBCTap instance.
    * <p/>
@@ -297,6 +373,65 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     return batchSize;
     }
 
+  /**
+   * Method getStagingTableName returns the name prefixing the staging tables of this JDBCTap object, null
+   * if the rows are written into the table directly.
+   *
+   * @return the stagingTableName (type String) of this JDBCTap object.
+   */
+  public String getStagingTableName()
+    {
+    return stagingTableName;
+    }
+
+  /**
+   * Method setStagingTableName lets the sink load its rows into a staging table instead of
+   * the table. The staging table is created without a primary key when the flow is planned,
+   * and its rows are moved into the table in a single transaction when the flow completes,
+   * replacing the rows of the table with {@link SinkMode#REPLACE} and appending to them
+   * otherwise. So readers never see a partially loaded table, and the indexes of the table
+   * are maintained once for all rows. With {@link SinkMode#REPLACE} an existing table is
+   * not dropped, only its rows are replaced.
+   * <p/>
+   * Every load gets a staging table of its own, named by the given name, an underscore and 8
+   * random hex digits, so overlapping loads of the same table don't drop each other's rows.
+   * The staging table is dropped when the flow completes or fails, the one of a flow that
+   * was killed is left behind.
+   *
+   * @param stagingTableName the prefix of the staging table names, null to write into the table directly.
+   */
+  public void setStagingTableName( String stagingTableName )
+    {
+    this.stagingTableName = stagingTableName;
+    }
+
+  /**
+   * Method isStaged returns true if the sink loads its rows into a staging table.
+   *
+   * @return boolean
+   */
+  public boolean isStaged()
+    {
+    return stagingTableName != null;
+    }
+
+  /**
+   * Method getSinkTableName returns the name of the table the rows are written to, which is
+   * the staging table of the current load if the load is staged.
+   *
+   * @return the sinkTableName (type String) of this JDBCTap object.
+   */
+  public String getSinkTableName()
+    {
+    if( !isStaged() )
+      return getTableName();
+
+    if( runStagingTableName == null )
+      runStagingTableName = stagingTableName + "_" + UUID.randomUUID().toString().substring( 0, 8 );
+
+    return runStagingTableName;
+    }
+
   /**
    * Method getTableDesc returns the {@link TableDesc} of this {@link JDBCTap}.
    *
@@ -336,6 +471,82 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     this.concurrentReads = concurrentReads;
     }
 
+  /**
+   * Method getWatermarkTable returns the table storing the marks of incremental reads.
+   *
+   * @return the watermarkTable (type String) of this JDBCTap object.
+   */
+  public String getWatermarkTable()
+    {
+    return watermarkTable;
+    }
+
+  /**
+   * Method setWatermarkTable sets the table storing the marks of incremental reads, it is
+   * created with a name and a mark column on the first commit if it doesn't exist.
+   *
+   * @param watermarkTable the table storing the marks.
+   */
+  public void setWatermarkTable( String watermarkTable )
+    {
+    this.watermarkTable = watermarkTable;
+    }
+
+  /**
+   * Method getModifiedTimeQuery returns the query used to determine the modification time of the table.
+   *
+   * @return the modifiedTimeQuery (type String) of this JDBCTap object.
+   */
+  public String getModifiedTimeQuery()
+    {
+    return modifiedTimeQuery;
+    }
+
+  /**
+   * Method setModifiedTimeQuery sets the query used by {@link #getModifiedTime(JobConf)}. The query returns a single
+   * value, either a timestamp like <code>SELECT MAX(updated_at) FROM table</code>, or any other value, like a change
+   * counter or a SCN, which is treated as version of the table. The time a version was first seen is kept in memory,
+   * so a version not seen before by this JVM counts as a modification. Versions therefore only help within one JVM,
+   * unless the times are kept in the file given by {@link DBConfiguration#VERSION_TIMES_PATH_PROPERTY}, which every
+   * scheduled run of a flow should share. Without a query, or if it returns no value or fails, the table is always
+   * considered as modified. The query runs on every planning of a flow reading the table,
+   * so it should be cheap, like a lookup of the statistics of the table.
+   *
+   * @param modifiedTimeQuery the query returning the modification time or version of the table.
+   */
+  public void setModifiedTimeQuery( String modifiedTimeQuery )
+    {
+    this.modifiedTimeQuery = modifiedTimeQuery;
+    }
+
+  /**
+   * Method getPoolMaxSize returns the maximum number of open connections of the connection pool, 0 if the
+   * connections of this tap are not pooled.
+   *
+   * @return the poolMaxSize (type int) of this JDBCTap object.
+   */
+  public int getPoolMaxSize()
+    {
+    return poolMaxSize;
+    }
+
+  /**
+   * Method setConnectionPool lets this tap, and the readers and writers of its flow, borrow their connections
+   * from a {@link ConnectionPool} per JVM instead of opening a connection of their own every time. The max size
+   * must cover the connections held at once, as a borrow from an exhausted pool fails. The settings are passed
+   * on to the job, see {@link DBConfiguration#configurePool}.
+   *
+   * @param maxSize the maximum number of open connections per JVM, 0 disables pooling
+   * @param idleTimeout the milliseconds after which an idle connection is closed
+   * @param validationQuery the query validating an idle connection before it is reused, null to ask the driver
+   */
+  public void setConnectionPool( int maxSize, long idleTimeout, String validationQuery )
+    {
+    this.poolMaxSize = maxSize;
+    this.poolIdleTimeout = idleTimeout;
+    this.poolValidationQuery = validationQuery;
+    }
+
   /**
    * Method getPath returns the path of this JDBCTap object.
    *
@@ -403,7 +614,186 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     else
       DBConfiguration.configureDB( conf, driverClassName, connectionUrl, username, password );
 
+    if( poolMaxSize > 0 )
+      DBConfiguration.configurePool( conf, poolMaxSize, poolIdleTimeout, poolValidationQuery );
+
     super.sourceConfInit( process, conf );
+
+    // snapshots exported for the splits are held until this tap releases them
+    DBInputFormat.setSnapshotOwner( conf, id );
+
+    String incrementalBy = getIncrementalBy();
+
+    if( incrementalBy != null )
+      {
+      // the bounds of a planned read must not move until they are committed
+      if( watermarks == null )
+        watermarks = readWatermarks( incrementalBy );
+
+      LOG.info( "reading {} by {} above {} up to {}", getTableName(), incrementalBy, watermarks[ 0 ], watermarks[ 1 ] );
+
+      DBInputFormat.setWatermark( conf, incrementalBy, watermarks[ 0 ], watermarks[ 1 ] );
+      }
+    }
+
+  private String getIncrementalBy()
+    {
+    return getScheme() instanceof JDBCScheme ? ( (JDBCScheme) getScheme() ).getIncrementalBy() : null;
+    }
+
+  /** Returns the stored mark and the current maximum of the column above it, which is null if there are no new rows. */
+  private String[] readWatermarks( String column )
+    {
+    if( !isSink() )
+      throw new TapException( "incremental reads require a table" );
+
+    try
+      {
+      String low = getWatermark();
+      String query = "SELECT MAX(" + column + ") FROM " + getTableName() + ( low == null ? "" : " WHERE " + column + " > " + low );
+      List<Object[]> results = executeQuery( query, 1 );
+      Object high = results.isEmpty() ? null : results.get( 0 )[ 0 ];
+
+      return new String[]{low, high == null ? null : toLiteral( high )};
+      }
+    catch( SQLException exception )
+      {
+      throw new TapException( "unable to read watermark of: " + getTableName(), exception );
+      }
+    catch( IOException exception )
+      {
+      throw new TapException( "unable to read watermark of: " + getTableName(), exception );
+      }
+    }
+
+  /** Returns the value as SQL literal, using the JDBC escapes for temporal values. */
+  static String toLiteral( Object value )
+    {
+    if( value instanceof BigDecimal )
+      return ( (BigDecimal) value ).toPlainString();
+
+    if( value instanceof Number )
+      return value.toString();
+
+    if( value instanceof java.sql.Date )
+      return "{d '" + value + "'}";
+
+    if( value instanceof Time )
+      return "{t '" + value + "'}";
+
+    if( value instanceof Timestamp )
+      return "{ts '" + value + "'}";
+
+    if( value instanceof java.util.Date )
+      return "{ts '" + new Timestamp( ( (java.util.Date) value ).getTime() ) + "'}";
+
+    return "'" + value.toString().replace( "'", "''" ) + "'";
+    }
+
+  /** Returns the name of the mark of this table in the watermark table. */
+  private String getWatermarkName()
+    {
+    return getTableName() + "." + getIncrementalBy();
+    }
+
+  /**
+   * Method getWatermark returns the SQL literal of the mark committed by the last incremental read.
+   *
+   * @return the mark, or null if this table was never read incrementally
+   */
+  public String getWatermark() throws IOException
+    {
+    return readMark( getWatermarkName() );
+    }
+
+  private String readMark( String name ) throws IOException
+    {
+    Connection connection = createConnection();
+
+    try
+      {
+      if( !tableExists( connection, watermarkTable ) )
+        return null;
+
+      PreparedStatement statement = connection.prepareStatement( "SELECT mark FROM " + watermarkTable + " WHERE name = ?" );
+      statement.setString( 1, name );
+
+      ResultSet results = statement.executeQuery();
+      String mark = results.next() ? results.getString( 1 ) : null;
+
+      results.close();
+      statement.close();
+
+      return mark;
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to read watermark from: " + watermarkTable, exception );
+      }
+    finally
+      {
+      closeQuietly( connection );
+      }
+    }
+
+  private void writeWatermark( String mark ) throws IOException
+    {
+    writeMark( getWatermarkName(), mark );
+    }
+
+  private void writeMark( String name, String mark ) throws IOException
+    {
+    Connection connection = createConnection();
+
+    try
+      {
+      if( !tableExists( connection, watermarkTable ) )
+        {
+        Statement statement = connection.createStatement();
+        statement.executeUpdate( "CREATE TABLE " + watermarkTable + " ( name VARCHAR(255) NOT NULL PRIMARY KEY, mark VARCHAR(255) NOT NULL )" );
+        statement.close();
+        connection.commit();
+        }
+
+      PreparedStatement update = connection.prepareStatement( "UPDATE " + watermarkTable + " SET mark = ? WHERE name = ?" );
+      update.setString( 1, mark );
+      update.setString( 2, name );
+
+      if( update.executeUpdate() == 0 )
+        {
+        PreparedStatement insert = connection.prepareStatement( "INSERT INTO " + watermarkTable + " ( name, mark ) VALUES ( ?, ? )" );
+        insert.setString( 1, name );
+        insert.setString( 2, mark );
+        insert.executeUpdate();
+        insert.close();
+        }
+
+      update.close();
+      connection.commit();
+
+      LOG.info( "committed mark of {}: {}", name, mark );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to write watermark to: " + watermarkTable, exception );
+      }
+    finally
+      {
+      closeQuietly( connection );
+      }
+    }
+
+  private void closeQuietly( Connection connection )
+    {
+    try
+      {
+      connection.rollback();
+      connection.close();
+      }
+    catch( SQLException exception )
+      {
+      LOG.warn( "unable to close connection", exception );
+      }
     }
 
   @Override
@@ -415,11 +805,21 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     // do not delete if initialized from within a task
     try
       {
-      if( isReplace() && conf.get( "mapred.task.partition" ) == null && !deleteResource( conf ) )
+      boolean client = conf.get( "mapred.task.partition" ) == null;
+
+      // the table of a staged load keeps its rows until the staging table is committed
+      if( isReplace() && client && !isStaged() && !deleteResource( conf ) )
         throw new TapException( "unable to drop table: " + tableDesc.getTableName() );
 
       if( !createResource( conf ) )
         throw new TapException( "unable to create table: " + tableDesc.getTableName() );
+
+      if( isStaged() && client && !stagingTableCreated )
+        createStagingTable();
+
+      // tasks write into the staging table the client created
+      if( isStaged() && !client && conf.get( DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY ) != null )
+        runStagingTableName = conf.get( DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY );
       }
     catch ( IOException e )
       {
@@ -431,9 +831,107 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     else
       DBConfiguration.configureDB( conf, driverClassName, connectionUrl, username, password );
 
+    if( poolMaxSize > 0 )
+      DBConfiguration.configurePool( conf, poolMaxSize, poolIdleTimeout, poolValidationQuery );
+
     super.sinkConfInit( process, conf );
     }
 
+  /** Creates the empty staging table of the current load, refusing to reuse an existing table. */
+  private void createStagingTable() throws IOException
+    {
+    String sinkTableName = getSinkTableName();
+    Connection connection = createConnection();
+
+    try
+      {
+      if( tableExists( connection, sinkTableName ) )
+        throw new IOException( "staging table already exists: " + sinkTableName );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to determine if staging table exists: " + sinkTableName, exception );
+      }
+    finally
+      {
+      closeQuietly( connection );
+      }
+
+    String statement = tableDesc.getCreateStagingTableStatement( sinkTableName );
+
+    try
+      {
+      LOG.info( "creating staging table: {}", sinkTableName );
+      executeUpdate( statement );
+      stagingTableCreated = true;
+      }
+    catch( TapException exception )
+      {
+      throw new IOException( "unable to create staging table: " + statement, exception );
+      }
+    }
+
+  /** Drops the staging table of the current load, the next load gets a new one. */
+  private void dropStagingTable() throws IOException
+    {
+    String sinkTableName = getSinkTableName();
+
+    runStagingTableName = null;
+    stagingTableCreated = false;
+
+    Connection connection = createConnection();
+
+    try
+      {
+      if( !tableExists( connection, sinkTableName ) )
+        return;
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to determine if staging table exists: " + sinkTableName, exception );
+      }
+    finally
+      {
+      closeQuietly( connection );
+      }
+
+    LOG.info( "dropping staging table: {}", sinkTableName );
+    executeUpdate( tableDesc.getStagingTableDropStatement( sinkTableName ) );
+    }
+
+  /** Moves the rows of the staging table into the table in one transaction, then drops the staging table. */
+  private void commitStagingTable() throws IOException
+    {
+    String sinkTableName = getSinkTableName();
+    Connection connection = createConnection();
+
+    try
+      {
+      Statement statement = connection.createStatement();
+
+      for( String swap : tableDesc.getStagingTableSwapStatements( sinkTableName, isReplace() ) )
+        {
+        LOG.info( "executing update: {}", swap );
+        statement.executeUpdate( swap );
+        }
+
+      statement.close();
+      connection.commit();
+
+      LOG.info( "committed staging table {} into: {}", sinkTableName, getTableName() );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to commit staging table " + sinkTableName + " into: " + getTableName(), exception );
+      }
+    finally
+      {
+      closeQuietly( connection );
+      }
+
+    dropStagingTable();
+    }
+
   private Connection createConnection()
     {
     try
@@ -442,12 +940,8 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
 
       Class.forName( driverClassName );
 
-      Connection connection = null;
-
-      if( username == null )
-        connection = DriverManager.getConnection( connectionUrl );
-      else
-        connection = DriverManager.getConnection( connectionUrl, username, password );
+      // planning opens several connections per tap, borrow them from the pool of this JVM if there is one
+      Connection connection = ConnectionPool.getConnection( connectionUrl, username, password, poolMaxSize, poolIdleTimeout, poolValidationQuery );
       connection.setAutoCommit( false );
 
       return connection;
@@ -656,21 +1150,11 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
       return true;
 
     Connection connection = null;
-    ResultSet tables = null;
     LOG.info( "testing if table exists with DatabaseMetaData" );
     try
       {
       connection = createConnection();
-      DatabaseMetaData dbm = connection.getMetaData();
-      tables = dbm.getTables( null, null, tableDesc.getTableName(), null );
-      if ( tables.next() )
-        return true;
-      tables.close();
-      // try again with upper case for oracle compatibility:
-      // see http://stackoverflow.com/questions/2942788/check-if-table-exists
-      tables = dbm.getTables( null, null, tableDesc.getTableName().toUpperCase(), null );
-      if ( tables.next() )
-        return true;
+      return tableExists( connection, tableDesc.getTableName() );
       }
     catch( SQLException exception )
       {
@@ -682,7 +1166,6 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
         {
         try
           {
-          tables.close();
           connection.rollback();
           connection.close();
           }
@@ -692,13 +1175,144 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
           }
         }
       }
+    }
+
+  private static boolean tableExists( Connection connection, String tableName ) throws SQLException
+    {
+    DatabaseMetaData dbm = connection.getMetaData();
+
+    // try again with upper case for oracle compatibility:
+    // see http://stackoverflow.com/questions/2942788/check-if-table-exists
+    for( String name : new String[]{tableName, tableName.toUpperCase()} )
+      {
+      ResultSet tables = dbm.getTables( null, null, name, null );
+      boolean exists = tables.next();
+      tables.close();
+
+      if( exists )
+        return true;
+      }
+
     return false;
     }
 
   @Override
   public long getModifiedTime( JobConf conf ) throws IOException
     {
-    return System.currentTimeMillis();
+    if( modifiedTimeQuery == null )
+      return System.currentTimeMillis();
+
+    try
+      {
+      List<Object[]> results = executeQuery( modifiedTimeQuery, 1 );
+      Object value = results.isEmpty() ? null : results.get( 0 )[ 0 ];
+
+      if( value == null )
+        {
+        LOG.debug( "no modification time of {}, considering it as modified", getTableName() );
+        return System.currentTimeMillis();
+        }
+
+      if( value instanceof java.util.Date )
+        return ( (java.util.Date) value ).getTime();
+
+      return getVersionTime( conf, value instanceof BigDecimal ? ( (BigDecimal) value ).toPlainString() : value.toString() );
+      }
+    catch( SQLException exception )
+      {
+      LOG.warn( "unable to determine modification time of {}, considering it as modified", getTableName(), exception );
+      return System.currentTimeMillis();
+      }
+    catch( TapException exception )
+      {
+      LOG.warn( "unable to determine modification time of {}, considering it as modified", getTableName(), exception );
+      return System.currentTimeMillis();
+      }
+    }
+
+  /**
+   * Returns the time the given version of the table was first seen, by this JVM or, if configured, by any run sharing
+   * the file of {@link DBConfiguration#VERSION_TIMES_PATH_PROPERTY}. Nothing is written to the database, planning a
+   * flow needs no more than read access to its sources.
+   */
+  private long getVersionTime( JobConf conf, String version )
+    {
+    String name = connectionUrl + "#" + getTableName();
+    String path = conf.get( DBConfiguration.VERSION_TIMES_PATH_PROPERTY );
+    long now = System.currentTimeMillis();
+
+    synchronized( VERSION_TIMES )
+      {
+      try
+        {
+        Properties marks = path == null ? VERSION_TIMES : readVersionTimes( conf, new Path( path ) );
+        String mark = marks.getProperty( name );
+
+        if( mark != null )
+          {
+          int index = mark.indexOf( '@' );
+
+          if( version.equals( mark.substring( index + 1 ) ) )
+            return Long.parseLong( mark.substring( 0, index ) );
+          }
+
+        marks.setProperty( name, now + "@" + version );
+
+        if( path != null )
+          writeVersionTimes( conf, new Path( path ), marks );
+        }
+      catch( IOException exception )
+        {
+        LOG.warn( "unable to keep the version of {} in {}, considering it as modified", getTableName(), path, exception );
+        }
+
+      return now;
+      }
+    }
+
+  private static Properties readVersionTimes( JobConf conf, Path path ) throws IOException
+    {
+    Properties marks = new Properties();
+    FileSystem fileSystem = path.getFileSystem( conf );
+
+    if( !fileSystem.exists( path ) )
+      return marks;
+
+    InputStream input = fileSystem.open( path );
+
+    try
+      {
+      marks.load( input );
+      }
+    finally
+      {
+      input.close();
+      }
+
+    return marks;
+    }
+
+  /** Replaces the file by a complete copy, concurrent runs may lose a version, which only counts as modification */
+  private static void writeVersionTimes( JobConf conf, Path path, Properties marks ) throws IOException
+    {
+    FileSystem fileSystem = path.getFileSystem( conf );
+    Path temporary = path.suffix( "." + UUID.randomUUID() );
+    OutputStream output = fileSystem.create( temporary, true );
+
+    try
+      {
+      marks.store( output, "the last version of every table and the time it was first seen, as time@version" );
+      }
+    finally
+      {
+      output.close();
+      }
+
+    // rename does not replace an existing file on every file system
+    fileSystem.delete( path, false );
+
+    if( !fileSystem.rename( temporary, path ) )
+      throw new IOException( "unable to replace: " + path );
     }
 
   @Override
@@ -730,6 +1344,8 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
       return false;
     if( username != null ? !username.equals( jdbcTap.username ) : jdbcTap.username != null )
       return false;
+    if( stagingTableName != null ? !stagingTableName.equals( jdbcTap.stagingTableName ) : jdbcTap.stagingTableName != null )
+      return false;
 
     return true;
     }
@@ -744,6 +1360,7 @@ public class JDBCTap extends Tap<JobConf, RecordReader, OutputCollector>
     result = 31 * result + ( driverClassName != null ? driverClassName.hashCode() : 0 );
     result = 31 * result + ( tableDesc != null ? tableDesc.hashCode() : 0 );
     result = 31 * result + batchSize;
+    result = 31 * result + ( stagingTableName != null ? stagingTableName.hashCode() : 0 );
     return result;
     }
   }
@@ -53,7 +53,7 @@ public class JDBCTapCollector extends TupleEntrySchemeCollector implements Outpu
   /** Field tap */
   private final Tap<JobConf, RecordReader, OutputCollector> tap;
   /** Field reporter */
-  private final Reporter reporter = Reporter.NULL;
+  private final Reporter reporter;
 
   /**
    * Constructor TapCollector creates a new TapCollector instance.
@@ -70,6 +70,12 @@ public class JDBCTapCollector extends TupleEntrySchemeCollector implements Outpu
     this.tap = tap;
     this.conf = new JobConf( flowProcess.getConfigCopy() );
 
+    // the counters of the writer are reported to the task
+    if( flowProcess instanceof HadoopFlowProcess )
+      this.reporter = ( (HadoopFlowProcess) flowProcess ).getReporter();
+    else
+      this.reporter = Reporter.NULL;
+
     this.setOutput( this );
     }
 
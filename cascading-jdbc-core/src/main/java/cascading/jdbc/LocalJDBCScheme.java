@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+
+/**
+ * Class LocalJDBCScheme is the {@link Scheme} of a {@link LocalJDBCTap} on the Cascading local platform.
+ * <p/>
+ * It is backed by a {@link JDBCScheme}, which holds the columns, conditions, update keys and all other
+ * options of the table, and turns the records into tuples and back exactly like on the Hadoop platform. Vendor
+ * specific schemes can be used as well, as long as the input and output formats do not depend on a running
+ * MapReduce task.
+ */
+public class LocalJDBCScheme extends Scheme<Properties, RecordReader, OutputCollector, Object[], Object[]>
+  {
+  /** the scheme of the Hadoop platform reading and writing the records */
+  private final JDBCScheme scheme;
+
+  /**
+   * Constructor LocalJDBCScheme creates a new LocalJDBCScheme instance backed by the given scheme.
+   *
+   * @param scheme of type JDBCScheme
+   */
+  public LocalJDBCScheme( JDBCScheme scheme )
+    {
+    super( scheme.getSourceFields(), scheme.getSinkFields() );
+    this.scheme = scheme;
+    }
+
+  /**
+   * Constructor LocalJDBCScheme creates a new LocalJDBCScheme instance.
+   *
+   * @param columnFields of type Fields
+   * @param columns of type String[]
+   */
+  public LocalJDBCScheme( Fields columnFields, String[] columns )
+    {
+    this( new JDBCScheme( columnFields, columns ) );
+    }
+
+  /**
+   * Constructor LocalJDBCScheme creates a new LocalJDBCScheme instance.
+   *
+   * @param columnFields of type Fields
+   * @param columns of type String[]
+   * @param orderBy of type String[]
+   * @param updateByFields of type Fields
+   * @param updateBy of type String[]
+   */
+  public LocalJDBCScheme( Fields columnFields, String[] columns, String[] orderBy, Fields updateByFields, String[] updateBy )
+    {
+    this( new JDBCScheme( columnFields, columns, orderBy, updateByFields, updateBy ) );
+    }
+
+  /**
+   * Constructor LocalJDBCScheme creates a new LocalJDBCScheme instance reading the result of the given query.
+   *
+   * @param columnFields of type Fields
+   * @param columns of type String[]
+   * @param selectQuery of type String
+   * @param countQuery of type String, may be null
+   */
+  public LocalJDBCScheme( Fields columnFields, String[] columns, String selectQuery, String countQuery )
+    {
+    this( new JDBCScheme( columnFields, columns, selectQuery, countQuery ) );
+    }
+
+  /**
+   * Method getJDBCScheme returns the scheme of the Hadoop platform backing this LocalJDBCScheme object.
+   *
+   * @return the scheme (type JDBCScheme) of this LocalJDBCScheme object.
+   */
+  public JDBCScheme getJDBCScheme()
+    {
+    return scheme;
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<Properties> flowProcess, Tap<Properties, RecordReader, OutputCollector> tap,
+      Properties conf )
+    {
+    // the input format is configured when the tap is opened for reading
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<Properties> flowProcess, Tap<Properties, RecordReader, OutputCollector> tap,
+      Properties conf )
+    {
+    // the output format is configured when the tap is opened for writing
+    }
+
+  @Override
+  public void presentSourceFields( FlowProcess<Properties> flowProcess, Tap tap, Fields fields )
+    {
+    scheme.presentSourceFields( null, ( (LocalJDBCTap) tap ).getJDBCTap(), fields );
+    setSourceFields( scheme.getSourceFields() );
+    }
+
+  @Override
+  public void presentSinkFields( FlowProcess<Properties> flowProcess, Tap tap, Fields fields )
+    {
+    scheme.presentSinkFields( null, ( (LocalJDBCTap) tap ).getJDBCTap(), fields );
+    setSinkFields( scheme.getSinkFields() );
+    }
+
+  // the scheme of the Hadoop platform does not use the flow process to convert records and tuples
+
+  @Override
+  public void sourcePrepare( FlowProcess<Properties> flowProcess, SourceCall<Object[], RecordReader> sourceCall )
+    throws IOException
+    {
+    scheme.sourcePrepare( null, sourceCall );
+    }
+
+  @Override
+  public boolean source( FlowProcess<Properties> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    return scheme.source( null, sourceCall );
+    }
+
+  @Override
+  public void sourceCleanup( FlowProcess<Properties> flowProcess, SourceCall<Object[], RecordReader> sourceCall )
+    throws IOException
+    {
+    scheme.sourceCleanup( null, sourceCall );
+    }
+
+  @Override
+  public void sinkPrepare( FlowProcess<Properties> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    scheme.sinkPrepare( null, sinkCall );
+    }
+
+  @Override
+  public void sink( FlowProcess<Properties> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    scheme.sink( null, sinkCall );
+    }
+
+  @Override
+  public void sinkCleanup( FlowProcess<Properties> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    scheme.sinkCleanup( null, sinkCall );
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( !( object instanceof LocalJDBCScheme ) )
+      return false;
+
+    return scheme.equals( ( (LocalJDBCScheme) object ).scheme );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    return scheme.hashCode();
+    }
+  }
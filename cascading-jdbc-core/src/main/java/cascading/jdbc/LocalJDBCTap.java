@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tap.TapException;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import cascading.tuple.TupleEntrySchemeIterator;
+
+/**
+ * Class LocalJDBCTap is the {@link Tap} of a table for the Cascading local platform, so that small tables can be
+ * read and written by a {@code LocalFlowConnector} without the overhead of MapReduce jobs.
+ * <p/>
+ * The tap reads and writes in process through the same {@link cascading.jdbc.db.DBInputFormat} and
+ * {@link cascading.jdbc.db.DBOutputFormat} as the {@link JDBCTap} of the Hadoop platform, which it is backed by.
+ * The select statements, type coercions and batches of prepared statements are therefore the same on both
+ * platforms. The splits of a source are read one after the other, by default a source is read in a single split.
+ *
+ * @see LocalJDBCScheme
+ */
+public class LocalJDBCTap extends Tap<Properties, RecordReader, OutputCollector>
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( LocalJDBCTap.class );
+
+  /** the tap of the Hadoop platform managing the table */
+  private final JDBCTap tap;
+
+  /**
+   * Constructor LocalJDBCTap creates a new LocalJDBCTap instance.
+   *
+   * @param connectionUrl of type String
+   * @param username of type String
+   * @param password of type String
+   * @param driverClassName of type String
+   * @param tableDesc of type TableDesc
+   * @param scheme of type LocalJDBCScheme
+   * @param sinkMode of type SinkMode
+   */
+  public LocalJDBCTap( String connectionUrl, String username, String password, String driverClassName, TableDesc tableDesc,
+      LocalJDBCScheme scheme, SinkMode sinkMode )
+    {
+    super( scheme, sinkMode );
+    this.tap = new JDBCTap( connectionUrl, username, password, driverClassName, tableDesc, scheme.getJDBCScheme(), sinkMode );
+    }
+
+  /**
+   * Constructor LocalJDBCTap creates a new LocalJDBCTap instance, using {@link SinkMode#UPDATE}.
+   *
+   * @param connectionUrl of type String
+   * @param username of type String
+   * @param password of type String
+   * @param driverClassName of type String
+   * @param tableDesc of type TableDesc
+   * @param scheme of type LocalJDBCScheme
+   */
+  public LocalJDBCTap( String connectionUrl, String username, String password, String driverClassName, TableDesc tableDesc,
+      LocalJDBCScheme scheme )
+    {
+    this( connectionUrl, username, password, driverClassName, tableDesc, scheme, SinkMode.UPDATE );
+    }
+
+  /**
+   * Constructor LocalJDBCTap creates a new LocalJDBCTap instance that may only used as a data source.
+   *
+   * @param connectionUrl of type String
+   * @param username of type String
+   * @param password of type String
+   * @param driverClassName of type String
+   * @param scheme of type LocalJDBCScheme
+   */
+  public LocalJDBCTap( String connectionUrl, String username, String password, String driverClassName, LocalJDBCScheme scheme )
+    {
+    super( scheme );
+    this.tap = new JDBCTap( connectionUrl, username, password, driverClassName, scheme.getJDBCScheme() );
+    }
+
+  /**
+   * Method getJDBCTap returns the tap of the Hadoop platform backing this LocalJDBCTap object.
+   *
+   * @return the tap (type JDBCTap) of this LocalJDBCTap object.
+   */
+  public JDBCTap getJDBCTap()
+    {
+    return tap;
+    }
+
+  /**
+   * Method getTableName returns the tableName of this LocalJDBCTap object.
+   *
+   * @return the tableName (type String) of this LocalJDBCTap object.
+   */
+  public String getTableName()
+    {
+    return tap.getTableName();
+    }
+
+  /**
+   * Method getTableDesc returns the tableDesc of this LocalJDBCTap object.
+   *
+   * @return the tableDesc (type TableDesc) of this LocalJDBCTap object.
+   */
+  public TableDesc getTableDesc()
+    {
+    return tap.getTableDesc();
+    }
+
+  /**
+   * Method setBatchSize sets the number of INSERT/UPDATE statements executed together.
+   *
+   * @param batchSize the batchSize of this LocalJDBCTap object.
+   */
+  public void setBatchSize( int batchSize )
+    {
+    tap.setBatchSize( batchSize );
+    }
+
+  /**
+   * Method getBatchSize returns the number of INSERT/UPDATE statements executed together.
+   *
+   * @return the batchSize (type int) of this LocalJDBCTap object.
+   */
+  public int getBatchSize()
+    {
+    return tap.getBatchSize();
+    }
+
+  /**
+   * Method setStagingTableName lets the sink load its rows into a staging table, see
+   * {@link JDBCTap#setStagingTableName(String)}.
+   *
+   * @param stagingTableName the prefix of the staging table names, null to write into the table directly.
+   */
+  public void setStagingTableName( String stagingTableName )
+    {
+    tap.setStagingTableName( stagingTableName );
+    }
+
+  /**
+   * Method getStagingTableName returns the name prefixing the staging tables of this LocalJDBCTap object.
+   *
+   * @return the stagingTableName (type String) of this LocalJDBCTap object.
+   */
+  public String getStagingTableName()
+    {
+    return tap.getStagingTableName();
+    }
+
+  /**
+   * Method executeUpdate sends an ad-hoc update statement to the database, see {@link JDBCTap#executeUpdate(String)}.
+   *
+   * @param updateString of type String
+   * @return int
+   */
+  public int executeUpdate( String updateString )
+    {
+    return tap.executeUpdate( updateString );
+    }
+
+  /**
+   * Method executeQuery sends an ad-hoc query to the database, see {@link JDBCTap#executeQuery(String, int)}.
+   *
+   * @param queryString of type String
+   * @param returnResults of type int
+   * @return List
+   */
+  public List<Object[]> executeQuery( String queryString, int returnResults ) throws SQLException
+    {
+    return tap.executeQuery( queryString, returnResults );
+    }
+
+  @Override
+  public String getIdentifier()
+    {
+    return tap.getIdentifier();
+    }
+
+  @Override
+  public boolean isSink()
+    {
+    return tap.isSink();
+    }
+
+  @Override
+  public TupleEntryIterator openForRead( FlowProcess<Properties> flowProcess, RecordReader input ) throws IOException
+    {
+    if( input == null )
+      input = openReader( createJobConf( flowProcess.getConfigCopy() ) );
+
+    return new TupleEntrySchemeIterator<Properties, RecordReader>( flowProcess, getScheme(), input, getIdentifier() );
+    }
+
+  @SuppressWarnings("unchecked")
+  private RecordReader openReader( JobConf conf ) throws IOException
+    {
+    tap.sourceConfInit( null, conf );
+
+    InputFormat inputFormat = conf.getInputFormat();
+    InputSplit[] splits = inputFormat.getSplits( conf, 1 );
+
+    LOG.info( "reading {} in {} splits", getTableName(), splits.length );
+
+    return new SplitsRecordReader( inputFormat, splits, conf, tap );
+    }
+
+  @Override
+  public TupleEntryCollector openForWrite( FlowProcess<Properties> flowProcess, OutputCollector output ) throws IOException
+    {
+    if( !isSink() )
+      throw new TapException( "this tap may not be used as a sink, no TableDesc defined" );
+
+    LocalJDBCTapCollector jdbcCollector = new LocalJDBCTapCollector( flowProcess, this );
+
+    jdbcCollector.prepare();
+
+    return jdbcCollector;
+    }
+
+  @Override
+  public boolean createResource( Properties conf ) throws IOException
+    {
+    return tap.createResource( createJobConf( conf ) );
+    }
+
+  @Override
+  public boolean deleteResource( Properties conf ) throws IOException
+    {
+    return tap.deleteResource( createJobConf( conf ) );
+    }
+
+  @Override
+  public boolean commitResource( Properties conf ) throws IOException
+    {
+    return tap.commitResource( createJobConf( conf ) );
+    }
+
+  @Override
+  public boolean rollbackResource( Properties conf ) throws IOException
+    {
+    return tap.rollbackResource( createJobConf( conf ) );
+    }
+
+  @Override
+  public boolean resourceExists( Properties conf ) throws IOException
+    {
+    return tap.resourceExists( createJobConf( conf ) );
+    }
+
+  @Override
+  public long getModifiedTime( Properties conf ) throws IOException
+    {
+    return tap.getModifiedTime( createJobConf( conf ) );
+    }
+
+  /** Returns a JobConf holding the given properties, to configure the input and output formats with. */
+  static JobConf createJobConf( Properties properties )
+    {
+    JobConf conf = new JobConf();
+
+    if( properties == null )
+      return conf;
+
+    for( String key : properties.stringPropertyNames() )
+      conf.set( key, properties.getProperty( key ) );
+
+    return conf;
+    }
+
+  @Override
+  public String toString()
+    {
+    return "LocalJDBCTap{" + "tap=" + tap + '}';
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( !( object instanceof LocalJDBCTap ) )
+      return false;
+    if( !super.equals( object ) )
+      return false;
+
+    return tap.equals( ( (LocalJDBCTap) object ).tap );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    return 31 * super.hashCode() + tap.hashCode();
+    }
+
+  /**
+   * Reads the splits of an input format one after the other, closing the reader of a split once it is
+   * exhausted. It is Closeable, so that the iterator of the tap closes the open reader. Once all splits are
+   * read, the snapshots exported for them are released.
+   */
+  static class SplitsRecordReader implements RecordReader, Closeable
+    {
+    private final InputFormat inputFormat;
+    private final InputSplit[] splits;
+    private final JobConf conf;
+    private final JDBCTap tap;
+    private RecordReader reader;
+    private int current = 0;
+    private boolean closed = false;
+
+    SplitsRecordReader( InputFormat inputFormat, InputSplit[] splits, JobConf conf ) throws IOException
+      {
+      this( inputFormat, splits, conf, null );
+      }
+
+    SplitsRecordReader( InputFormat inputFormat, InputSplit[] splits, JobConf conf, JDBCTap tap ) throws IOException
+      {
+      this.inputFormat = inputFormat;
+      this.splits = splits;
+      this.conf = conf;
+      this.tap = tap;
+
+      try
+        {
+        this.reader = inputFormat.getRecordReader( splits[ current ], conf, Reporter.NULL );
+        }
+      catch( IOException exception )
+        {
+        releaseSnapshots();
+        throw exception;
+        }
+      }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean next( Object key, Object value ) throws IOException
+      {
+      while( !closed )
+        {
+        if( reader.next( key, value ) )
+          return true;
+
+        reader.close();
+
+        if( ++current == splits.length )
+          {
+          closed = true;
+          releaseSnapshots();
+          break;
+          }
+
+        reader = inputFormat.getRecordReader( splits[ current ], conf, Reporter.NULL );
+        }
+
+      return false;
+      }
+
+    private void releaseSnapshots()
+      {
+      if( tap != null )
+        tap.releaseSnapshots();
+      }
+
+    @Override
+    public Object createKey()
+      {
+      return reader.createKey();
+      }
+
+    @Override
+    public Object createValue()
+      {
+      return reader.createValue();
+      }
+
+    @Override
+    public long getPos() throws IOException
+      {
+      return reader.getPos();
+      }
+
+    @Override
+    public float getProgress() throws IOException
+      {
+      if( closed )
+        return 1.0f;
+
+      return ( current + reader.getProgress() ) / splits.length;
+      }
+
+    @Override
+    public void close() throws IOException
+      {
+      if( closed )
+        return;
+
+      closed = true;
+
+      try
+        {
+        reader.close();
+        }
+      finally
+        {
+        releaseSnapshots();
+        }
+      }
+    }
+  }
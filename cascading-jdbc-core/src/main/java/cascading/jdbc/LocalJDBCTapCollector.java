@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.CascadingException;
+import cascading.flow.FlowProcess;
+import cascading.tap.TapException;
+import cascading.tuple.TupleEntrySchemeCollector;
+
+/**
+ * Class LocalJDBCTapCollector is a kind of {@link TupleEntrySchemeCollector} that writes tuples to the table of
+ * a {@link LocalJDBCTap} in process, through the record writer of the output format of its {@link JDBCTap}.
+ */
+public class LocalJDBCTapCollector extends TupleEntrySchemeCollector<Properties, OutputCollector> implements OutputCollector
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( LocalJDBCTapCollector.class );
+
+  /** Field flowProcess */
+  private final FlowProcess<Properties> localFlowProcess;
+  /** Field tap */
+  private final LocalJDBCTap tap;
+  /** Field writer */
+  private RecordWriter writer;
+
+  /**
+   * Constructor LocalJDBCTapCollector creates a new LocalJDBCTapCollector instance.
+   *
+   * @param flowProcess of type FlowProcess
+   * @param tap of type LocalJDBCTap
+   */
+  public LocalJDBCTapCollector( FlowProcess<Properties> flowProcess, LocalJDBCTap tap )
+    {
+    super( flowProcess, tap.getScheme() );
+    this.localFlowProcess = flowProcess;
+    this.tap = tap;
+
+    this.setOutput( this );
+    }
+
+  @Override
+  public void prepare()
+    {
+    try
+      {
+      initialize();
+      }
+    catch( IOException e )
+      {
+      throw new CascadingException( e );
+      }
+    super.prepare();
+    }
+
+  private void initialize() throws IOException
+    {
+    JobConf conf = LocalJDBCTap.createJobConf( localFlowProcess.getConfigCopy() );
+
+    tap.getJDBCTap().sinkConfInit( null, conf );
+
+    OutputFormat outputFormat = conf.getOutputFormat();
+
+    LOG.info( "Output format class is: " + outputFormat.getClass().toString() );
+
+    writer = outputFormat.getRecordWriter( null, conf, tap.getIdentifier(), Reporter.NULL );
+
+    sinkCall.setOutput( this );
+    }
+
+  @Override
+  public void close()
+    {
+    try
+      {
+      LOG.info( "closing tap collector for: {}", tap );
+      writer.close( Reporter.NULL );
+      }
+    catch( IOException exception )
+      {
+      LOG.error( "exception closing: {}", exception.getMessage(), exception );
+      throw new TapException( "exception closing LocalJDBCTapCollector", exception );
+      }
+    finally
+      {
+      super.close();
+      }
+    }
+
+  /**
+   * Method collect writes the given values to the table of the {@link LocalJDBCTap} this instance encapsulates.
+   *
+   * @param writableComparable of type WritableComparable
+   * @param writable           of type Writable
+   * @throws IOException when
+   */
+  @SuppressWarnings("unchecked")
+  public void collect( Object writableComparable, Object writable ) throws IOException
+    {
+    writer.write( writableComparable, writable );
+    }
+  }
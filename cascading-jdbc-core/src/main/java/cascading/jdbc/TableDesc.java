@@ -181,6 +181,80 @@ public class TableDesc implements Serializable
     return "DROP TABLE %s";
     }
 
+  /**
+   * Method getCreateStagingTableStatement returns the statement creating the
+   * staging table of a staged load. The staging table has the columns of this
+   * table, but no primary key, so that the rows are loaded without index
+   * maintenance. Without column definitions, the columns are copied from the
+   * existing table.
+   *
+   * @param stagingTableName the name of the staging table.
+   * @return the createStagingTableStatement (type String) of this TableDesc object.
+   */
+  public String getCreateStagingTableStatement( String stagingTableName )
+    {
+    if( !hasRequiredTableInformation() )
+      return String.format( getCreateTableAsFormat(), stagingTableName, tableName );
+
+    List<String> createTableStatement = addDefinitionsTo( new ArrayList<String>() );
+
+    return String.format( getCreateStagingTableFormat(), stagingTableName, Util.join( createTableStatement, ", " ) );
+    }
+
+  /** Format of the staging table, like CREATE UNLOGGED TABLE for databases supporting tables without a redo log. */
+  protected String getCreateStagingTableFormat()
+    {
+    return getCreateTableFormat();
+    }
+
+  /** Format of a table copying the columns of an existing table, without its rows. */
+  protected String getCreateTableAsFormat()
+    {
+    return "CREATE TABLE %s AS SELECT * FROM %s WHERE 1 = 0";
+    }
+
+  /**
+   * Method getStagingTableDropStatement returns the statement dropping the
+   * staging table of a staged load.
+   *
+   * @param stagingTableName the name of the staging table.
+   * @return the stagingTableDropStatement (type String) of this TableDesc object.
+   */
+  public String getStagingTableDropStatement( String stagingTableName )
+    {
+    return String.format( getDropTableFormat(), stagingTableName );
+    }
+
+  /**
+   * Method getStagingTableSwapStatements returns the statements moving the rows
+   * of the staging table into this table. They are executed in one transaction,
+   * so that readers see either the previous or all new rows.
+   *
+   * @param stagingTableName the name of the staging table.
+   * @param replace true to replace the rows of this table, false to append to them.
+   * @return the stagingTableSwapStatements (type List<String>) of this TableDesc object.
+   */
+  public List<String> getStagingTableSwapStatements( String stagingTableName, boolean replace )
+    {
+    List<String> statements = new ArrayList<String>();
+
+    // not TRUNCATE, which commits on most databases
+    if( replace )
+      statements.add( String.format( "DELETE FROM %s", tableName ) );
+
+    if( columnNames != null && columnNames.length != 0 )
+      {
+      String columns = Util.join( columnNames, ", " );
+      statements.add( String.format( "INSERT INTO %s ( %s ) SELECT %s FROM %s", tableName, columns, columns, stagingTableName ) );
+      }
+    else
+      {
+      statements.add( String.format( "INSERT INTO %s SELECT * FROM %s", tableName, stagingTableName ) );
+      }
+
+    return statements;
+    }
+
   /**
    * Method getTableExistsQuery returns the tableExistsQuery of this TableDesc
    * object.
@@ -12,16 +12,20 @@
 
 package cascading.jdbc;
 
-import cascading.jdbc.db.DBWritable;
+import cascading.jdbc.db.ExchangeableDBWritable;
+import cascading.jdbc.db.MultiRowDBWritable;
 import cascading.tuple.Tuple;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-public class TupleRecord implements DBWritable
+public class TupleRecord implements ExchangeableDBWritable<TupleRecord>, MultiRowDBWritable
   {
   private Tuple tuple;
+  private ColumnCodec[] writeCodecs;
+  private ColumnCodec[] readCodecs;
+  private ResultSet codecResultSet;
 
   public TupleRecord()
     {
@@ -42,18 +46,63 @@ public class TupleRecord implements DBWritable
     return tuple;
     }
 
+  /**
+   * Sets the codecs writing the values of the tuple, one per position. If not set, all values are written
+   * with <code>setObject</code>.
+   */
+  public void setWriteCodecs( ColumnCodec[] writeCodecs )
+    {
+    this.writeCodecs = writeCodecs;
+    }
+
+  public void exchange( TupleRecord other )
+    {
+    Tuple exchanged = tuple;
+    tuple = other.tuple;
+    other.tuple = exchanged;
+    }
+
   public void write( PreparedStatement statement ) throws SQLException
     {
+    write( statement, 0 );
+    }
+
+  public void write( PreparedStatement statement, int offset ) throws SQLException
+    {
+    if( writeCodecs == null )
+      {
+      for( int i = 0; i < tuple.size(); i++ )
+        statement.setObject( offset + i + 1, tuple.getObject( i ) );
+
+      return;
+      }
+
     for( int i = 0; i < tuple.size(); i++ )
-      statement.setObject( i + 1, tuple.getObject( i ) );
+      writeCodecs[ i ].write( statement, offset + i + 1, tuple.getObject( i ) );
+    }
+
+  public TupleRecord copy()
+    {
+    TupleRecord copy = new TupleRecord( new Tuple( tuple ) );
+    copy.writeCodecs = writeCodecs;
+
+    return copy;
     }
 
   public void readFields( ResultSet resultSet ) throws SQLException
     {
-    tuple = new Tuple();
+    // the codecs are chosen once per result set, not per row
+    if( resultSet != codecResultSet )
+      {
+      readCodecs = ColumnCodec.forColumns( resultSet.getMetaData() );
+      codecResultSet = resultSet;
+      }
+
+    if( tuple == null || tuple.size() != readCodecs.length )
+      tuple = Tuple.size( readCodecs.length );
 
-    for( int i = 0; i < resultSet.getMetaData().getColumnCount(); i++ )
-      tuple.add( resultSet.getObject( i + 1 ) );
+    for( int i = 0; i < readCodecs.length; i++ )
+      tuple.set( i, readCodecs[ i ].read( resultSet, i + 1 ) );
     }
 
   }
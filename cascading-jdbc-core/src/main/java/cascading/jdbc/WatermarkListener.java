@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowListener;
+import cascading.tap.Tap;
+import cascading.tap.TapException;
+
+/**
+ * Class WatermarkListener commits the marks of the incrementally read {@link JDBCTap} and {@link LocalJDBCTap}
+ * sources of a flow once the flow completed successfully, so that the next run of the flow only reads the rows added since. A failed
+ * or stopped flow leaves the marks untouched and reads the same rows again.
+ * <p/>
+ * Whether the flow succeeded or not, the snapshots exported for the sources are released, see
+ * {@link JDBCScheme#setSnapshot(boolean)}. Without the listener they stay open until the JVM exits.
+ * <pre>
+ * flow.addListener( new WatermarkListener() );
+ * </pre>
+ *
+ * @see JDBCScheme#setIncrementalBy(String)
+ */
+public class WatermarkListener implements FlowListener
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( WatermarkListener.class );
+
+  @Override
+  public void onStarting( Flow flow )
+    {
+    }
+
+  @Override
+  public void onStopping( Flow flow )
+    {
+    }
+
+  @Override
+  public void onCompleted( Flow flow )
+    {
+    for( Object tap : flow.getSourcesCollection() )
+      {
+      JDBCTap jdbcTap = getJDBCTap( tap );
+
+      if( jdbcTap != null )
+        jdbcTap.releaseSnapshots();
+      }
+
+    if( !flow.getFlowStats().isSuccessful() )
+      {
+      LOG.info( "flow {} did not succeed, not committing watermarks", flow.getName() );
+      return;
+      }
+
+    JobConf conf = getJobConf( flow );
+
+    for( Object tap : flow.getSourcesCollection() )
+      {
+      JDBCTap jdbcTap = getJDBCTap( tap );
+
+      if( jdbcTap == null )
+        continue;
+
+      try
+        {
+        jdbcTap.commitResource( conf );
+        }
+      catch( IOException exception )
+        {
+        throw new TapException( "unable to commit watermark of: " + ( (Tap) tap ).getIdentifier(), exception );
+        }
+      }
+    }
+
+  @Override
+  public boolean onThrowable( Flow flow, Throwable throwable )
+    {
+    return false;
+    }
+
+  /** Returns the JDBCTap managing the table of the given source, a LocalJDBCTap is backed by one. */
+  private static JDBCTap getJDBCTap( Object tap )
+    {
+    if( tap instanceof JDBCTap )
+      return (JDBCTap) tap;
+
+    if( tap instanceof LocalJDBCTap )
+      return ( (LocalJDBCTap) tap ).getJDBCTap();
+
+    return null;
+    }
+
+  /** Returns the configuration of the flow as JobConf, local flows are configured by Properties. */
+  private static JobConf getJobConf( Flow flow )
+    {
+    Object config = flow.getConfig();
+
+    if( config instanceof JobConf )
+      return (JobConf) config;
+
+    return LocalJDBCTap.createJobConf( config instanceof Properties ? (Properties) config : null );
+    }
+  }
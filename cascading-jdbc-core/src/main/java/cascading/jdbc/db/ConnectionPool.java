@@ -0,0 +1,626 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class ConnectionPool keeps the connections to one database for one user open between uses, so that the
+ * taps planning a flow and the tasks run by a reused JVM don't pay for a new connection every time.
+ * <p/>
+ * Pooling is off unless a maximum size is configured, see {@link DBConfiguration#configurePool}. There is one
+ * pool per JDBC URL and user in a JVM, it grows to the largest maximum size it was asked for. A borrow from a
+ * pool whose connections are all borrowed fails right away instead of waiting for one to be returned.
+ * <p/>
+ * Closing a borrowed connection rolls back any open transaction, restores its auto commit and isolation level
+ * and returns it to the pool. A connection whose session state may have been changed, by a stored procedure
+ * call, a SET or ALTER SESSION statement, a temporary table or a changed catalog, schema or read only flag, is
+ * closed instead of returned. Changes made through the unwrapped driver connection are not seen. Idle
+ * connections are validated before they are handed out again and closed once they have been idle for longer
+ * than the idle timeout.
+ */
+public class ConnectionPool
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( ConnectionPool.class );
+
+  /** pooling is off by default */
+  public static final int DEFAULT_MAX_SIZE = 0;
+  public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+  /** statements which may change the state of the session beyond the transaction */
+  private static final Pattern SESSION_STATEMENT = Pattern.compile(
+    "^\\s*(\\{|SET\\s|ALTER\\s+SESSION|CREATE\\s+(GLOBAL\\s+|LOCAL\\s+)?TEMP|DECLARE\\s|USE\\s|CALL\\s|EXEC|BEGIN\\b)",
+    Pattern.CASE_INSENSITIVE );
+  /** connection methods which change the state of the session */
+  private static final Pattern SESSION_METHOD = Pattern.compile( "prepareCall|setReadOnly|setCatalog|setSchema|setHoldability|setTypeMap|setClientInfo" );
+  /** statement methods taking the sql to run */
+  private static final Pattern EXECUTE_METHOD = Pattern.compile( "execute\\w*|addBatch" );
+
+  /** seconds to wait for an idle connection to validate */
+  private static final int VALIDATION_TIMEOUT = 5;
+
+  private static final Map<String, ConnectionPool> POOLS = new HashMap<String, ConnectionPool>();
+  private static ScheduledExecutorService evictor;
+
+  /** A physical connection and the state it is restored to when it is returned */
+  private static class PooledConnection
+    {
+    final Connection connection;
+    final boolean autoCommit;
+    final int isolationLevel;
+    long lastUsed;
+
+    PooledConnection( Connection connection ) throws SQLException
+      {
+      this.connection = connection;
+      this.autoCommit = connection.getAutoCommit();
+      this.isolationLevel = connection.getTransactionIsolation();
+      }
+    }
+
+  /** Returns the physical connection to the pool instead of closing it */
+  private class Borrowed implements InvocationHandler
+    {
+    private final PooledConnection pooled;
+    private boolean closed;
+    /** the session state may have been changed, the connection is closed when returned */
+    private boolean tainted;
+
+    Borrowed( PooledConnection pooled )
+      {
+      this.pooled = pooled;
+      }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+      {
+      String name = method.getName();
+
+      if( name.equals( "close" ) )
+        {
+        if( !closed )
+          {
+          closed = true;
+          release( pooled, tainted );
+          }
+
+        return null;
+        }
+
+      if( name.equals( "isClosed" ) )
+        return closed || pooled.connection.isClosed();
+
+      if( name.equals( "equals" ) )
+        return proxy == args[ 0 ];
+
+      if( name.equals( "hashCode" ) )
+        return System.identityHashCode( proxy );
+
+      if( name.equals( "toString" ) )
+        return "pooled " + pooled.connection;
+
+      if( closed )
+        throw new SQLException( "connection is closed" );
+
+      if( SESSION_METHOD.matcher( name ).matches() || name.equals( "prepareStatement" ) && changesSession( args[ 0 ] ) )
+        tainted = true;
+
+      Object result = forward( pooled.connection, method, args );
+
+      if( name.equals( "createStatement" ) )
+        return Proxy.newProxyInstance( Statement.class.getClassLoader(), new Class<?>[]{Statement.class}, new Executing( (Connection) proxy, (Statement) result ) );
+
+      return result;
+      }
+
+    /** Taints the connection when a statement of it runs sql changing the session */
+    private class Executing implements InvocationHandler
+      {
+      private final Connection connection;
+      private final Statement statement;
+
+      Executing( Connection connection, Statement statement )
+        {
+        this.connection = connection;
+        this.statement = statement;
+        }
+
+      @Override
+      public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+        {
+        String name = method.getName();
+
+        if( name.equals( "getConnection" ) )
+          return connection;
+
+        if( EXECUTE_METHOD.matcher( name ).matches() && args != null && changesSession( args[ 0 ] ) )
+          tainted = true;
+
+        return forward( statement, method, args );
+        }
+      }
+    }
+
+  private static Object forward( Object target, Method method, Object[] args ) throws Throwable
+    {
+    try
+      {
+      return method.invoke( target, args );
+      }
+    catch( InvocationTargetException exception )
+      {
+      throw exception.getCause();
+      }
+    }
+
+  /** Returns true if the given sql may change the state of the session beyond the current transaction. */
+  static boolean changesSession( Object sql )
+    {
+    return sql instanceof String && SESSION_STATEMENT.matcher( (String) sql ).find();
+    }
+
+  private final String key;
+  private final String url;
+  private final String username;
+  private final String password;
+  private int maxSize;
+  private final long idleTimeout;
+  private final String validationQuery;
+
+  /** most recently returned first */
+  private final Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+  private int active;
+  private boolean closed;
+  private ScheduledFuture<?> eviction;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Returns a connection to the given database, borrowed from its pool if the max size enables pooling and
+   * opened with the {@link DriverManager} otherwise.
+   *
+   * @param url the JDBC URL
+   * @param username the user, may be null
+   * @param password the password, may be null
+   * @param maxSize the maximum number of open connections of the pool, 0 opens a connection of its own
+   * @param idleTimeout the milliseconds after which an idle connection is closed
+   * @param validationQuery the query validating an idle connection before it is reused, null to ask the driver
+   */
+  public static Connection getConnection( String url, String username, String password, int maxSize, long idleTimeout, String validationQuery )
+    throws SQLException
+    {
+    if( maxSize < 1 )
+      return connect( url, username, password );
+
+    return getPool( url, username, password, maxSize, idleTimeout, validationQuery ).getConnection();
+    }
+
+  private static Connection connect( String url, String username, String password ) throws SQLException
+    {
+    if( username == null )
+      return DriverManager.getConnection( url );
+
+    return DriverManager.getConnection( url, username, password );
+    }
+
+  /**
+   * Returns the pool of the given database and user, creating it with the given settings if there is none. An
+   * existing pool is grown to the given max size, its other settings are kept.
+   *
+   * @param url the JDBC URL
+   * @param username the user, may be null
+   * @param password the password, may be null
+   * @param maxSize the maximum number of open connections, idle or borrowed
+   * @param idleTimeout the milliseconds after which an idle connection is closed
+   * @param validationQuery the query validating an idle connection before it is reused, null to ask the driver
+   */
+  public static ConnectionPool getPool( String url, String username, String password, int maxSize, long idleTimeout, String validationQuery )
+    {
+    if( maxSize < 1 )
+      throw new IllegalArgumentException( "max size must be at least 1, got: " + maxSize );
+
+    String key = username == null ? url : username + "@" + url;
+
+    synchronized( POOLS )
+      {
+      ConnectionPool pool = POOLS.get( key );
+
+      // a changed password is a different set of credentials
+      if( pool != null && ( password == null ? pool.password == null : password.equals( pool.password ) ) )
+        {
+        pool.grow( maxSize );
+        return pool;
+        }
+
+      if( pool != null )
+        pool.close();
+
+      pool = new ConnectionPool( key, url, username, password, maxSize, idleTimeout, validationQuery );
+      pool.scheduleEviction( getEvictor() );
+
+      POOLS.put( key, pool );
+
+      LOG.info( "created connection pool for {} with max size: {}, idle timeout: {}ms", key, maxSize, idleTimeout );
+
+      return pool;
+      }
+    }
+
+  /** Returns the pools currently open in this JVM. */
+  public static List<ConnectionPool> getPools()
+    {
+    synchronized( POOLS )
+      {
+      return new ArrayList<ConnectionPool>( POOLS.values() );
+      }
+    }
+
+  /** Closes all pools of this JVM. */
+  public static void closeAll()
+    {
+    for( ConnectionPool pool : getPools() )
+      pool.close();
+    }
+
+  private static ScheduledExecutorService getEvictor()
+    {
+    if( evictor == null )
+      {
+      evictor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+        @Override
+        public Thread newThread( Runnable runnable )
+          {
+          Thread thread = new Thread( runnable, "jdbc-pool-evictor" );
+          thread.setDaemon( true );
+          return thread;
+          }
+        } );
+      }
+
+    return evictor;
+    }
+
+  ConnectionPool( String key, String url, String username, String password, int maxSize, long idleTimeout, String validationQuery )
+    {
+    this.key = key;
+    this.url = url;
+    this.username = username;
+    this.password = password;
+    this.maxSize = maxSize;
+    this.idleTimeout = idleTimeout;
+    this.validationQuery = validationQuery;
+    }
+
+  private synchronized void grow( int maxSize )
+    {
+    if( maxSize <= this.maxSize )
+      return;
+
+    LOG.info( "growing connection pool for {} from max size: {} to: {}", key, this.maxSize, maxSize );
+
+    this.maxSize = maxSize;
+    }
+
+  private void scheduleEviction( ScheduledExecutorService executor )
+    {
+    long period = Math.max( 1000, idleTimeout / 2 );
+
+    eviction = executor.scheduleWithFixedDelay( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        evictIdle( System.currentTimeMillis() );
+        }
+      }, period, period, TimeUnit.MILLISECONDS );
+    }
+
+  /**
+   * Borrows a connection, reusing an idle one if there is a valid one. Closing the returned connection gives
+   * it back to the pool.
+   *
+   * @throws SQLException if no connection could be opened or all connections are borrowed
+   */
+  public Connection getConnection() throws SQLException
+    {
+    while( true )
+      {
+      PooledConnection pooled;
+
+      synchronized( this )
+        {
+        if( closed )
+          throw new SQLException( "connection pool is closed: " + key );
+
+        // waiting could deadlock a caller holding the connections it waits for
+        if( idle.isEmpty() && active >= maxSize )
+          throw new SQLException( "connection pool exhausted for " + key + ", all " + maxSize
+            + " connections are borrowed, raise " + DBConfiguration.POOL_MAX_SIZE_PROPERTY );
+
+        pooled = idle.pollFirst();
+        active++;
+        }
+
+      if( pooled == null )
+        break;
+
+      if( validate( pooled.connection ) )
+        {
+        hits.incrementAndGet();
+        return borrow( pooled );
+        }
+
+      LOG.info( "discarding invalid connection to {}", key );
+      evictions.incrementAndGet();
+      discard( pooled.connection );
+
+      synchronized( this )
+        {
+        active--;
+        }
+      }
+
+    misses.incrementAndGet();
+
+    try
+      {
+      return borrow( new PooledConnection( open() ) );
+      }
+    catch( SQLException exception )
+      {
+      synchronized( this )
+        {
+        active--;
+        }
+
+      throw exception;
+      }
+    }
+
+  /** Opens a new physical connection, subclasses may override this. */
+  protected Connection open() throws SQLException
+    {
+    return connect( url, username, password );
+    }
+
+  private Connection borrow( PooledConnection pooled )
+    {
+    return (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new Borrowed( pooled ) );
+    }
+
+  private boolean validate( Connection connection )
+    {
+    try
+      {
+      if( validationQuery == null )
+        return connection.isValid( VALIDATION_TIMEOUT );
+
+      Statement statement = connection.createStatement();
+
+      try
+        {
+        statement.execute( validationQuery );
+        }
+      finally
+        {
+        statement.close();
+        }
+
+      if( !connection.getAutoCommit() )
+        connection.rollback();
+
+      return true;
+      }
+    catch( SQLException exception )
+      {
+      LOG.debug( "validation failed", exception );
+      return false;
+      }
+    catch( AbstractMethodError error )
+      {
+      // driver predating JDBC 4
+      return true;
+      }
+    }
+
+  private void release( PooledConnection pooled, boolean tainted )
+    {
+    if( tainted )
+      LOG.debug( "discarding connection to {} whose session state may have changed", key );
+
+    boolean reusable = !tainted && reset( pooled );
+
+    synchronized( this )
+      {
+      active--;
+
+      if( reusable && !closed )
+        {
+        pooled.lastUsed = System.currentTimeMillis();
+        idle.addFirst( pooled );
+        return;
+        }
+      }
+
+    discard( pooled.connection );
+    }
+
+  /** Ends any open transaction and restores the state the connection was opened with. */
+  private boolean reset( PooledConnection pooled )
+    {
+    Connection connection = pooled.connection;
+
+    try
+      {
+      if( connection.isClosed() )
+        return false;
+
+      if( !connection.getAutoCommit() )
+        connection.rollback();
+
+      if( connection.getAutoCommit() != pooled.autoCommit )
+        connection.setAutoCommit( pooled.autoCommit );
+
+      if( connection.getTransactionIsolation() != pooled.isolationLevel )
+        connection.setTransactionIsolation( pooled.isolationLevel );
+
+      return true;
+      }
+    catch( SQLException exception )
+      {
+      LOG.info( "discarding connection to {} that could not be reset: {}", key, exception.getMessage() );
+      return false;
+      }
+    }
+
+  private void discard( Connection connection )
+    {
+    try
+      {
+      connection.close();
+      }
+    catch( SQLException exception )
+      {
+      LOG.debug( "unable to close connection", exception );
+      }
+    }
+
+  /** Closes the connections that were idle for longer than the idle timeout. */
+  void evictIdle( long now )
+    {
+    List<PooledConnection> expired = new ArrayList<PooledConnection>();
+
+    synchronized( this )
+      {
+      Iterator<PooledConnection> iterator = idle.descendingIterator();
+
+      while( iterator.hasNext() )
+        {
+        PooledConnection pooled = iterator.next();
+
+        if( now - pooled.lastUsed < idleTimeout )
+          break;
+
+        iterator.remove();
+        expired.add( pooled );
+        }
+      }
+
+    for( PooledConnection pooled : expired )
+      discard( pooled.connection );
+
+    if( !expired.isEmpty() )
+      {
+      evictions.addAndGet( expired.size() );
+      LOG.info( "evicted {} idle connections, {}", expired.size(), this );
+      }
+    }
+
+  /** Closes the idle connections and removes the pool, borrowed connections are closed when returned. */
+  public void close()
+    {
+    List<PooledConnection> remaining;
+
+    synchronized( POOLS )
+      {
+      if( POOLS.get( key ) == this )
+        POOLS.remove( key );
+      }
+
+    synchronized( this )
+      {
+      closed = true;
+      remaining = new ArrayList<PooledConnection>( idle );
+      idle.clear();
+      }
+
+    if( eviction != null )
+      eviction.cancel( false );
+
+    for( PooledConnection pooled : remaining )
+      discard( pooled.connection );
+    }
+
+  /** @return the number of connections handed out by reusing an idle connection */
+  public long getHits()
+    {
+    return hits.get();
+    }
+
+  /** @return the number of connections handed out by opening a new connection */
+  public long getMisses()
+    {
+    return misses.get();
+    }
+
+  /** @return the number of idle connections closed because they expired or failed validation */
+  public long getEvictions()
+    {
+    return evictions.get();
+    }
+
+  /** @return the number of borrowed connections */
+  public synchronized int getActiveCount()
+    {
+    return active;
+    }
+
+  /** @return the number of idle connections */
+  public synchronized int getIdleCount()
+    {
+    return idle.size();
+    }
+
+  @Override
+  public String toString()
+    {
+    return "ConnectionPool{" + key + ", active=" + getActiveCount() + ", idle=" + getIdleCount() + ", hits=" + getHits() + ", misses="
+      + getMisses() + ", evictions=" + getEvictions() + '}';
+    }
+  }
@@ -31,7 +31,6 @@ package cascading.jdbc.db;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import org.apache.hadoop.conf.Configuration;
@@ -77,6 +76,36 @@ public class DBConfiguration {
     /** Input query to get the count of records */
     public static final String INPUT_COUNT_QUERY = "mapred.jdbc.input.count.query";
 
+    /** Boolean to size the splits from catalog statistics instead of an exact count */
+    public static final String INPUT_COUNT_ESTIMATE = "mapred.jdbc.input.count.estimate";
+
+    /** Input query to get an estimated count of records, overrides the dialect default */
+    public static final String INPUT_ESTIMATE_QUERY = "mapred.jdbc.input.estimate.query";
+
+    /** Number of rows to read ahead on a background thread, 0 reads the rows on demand */
+    public static final String INPUT_PREFETCH_ROWS = "mapred.jdbc.input.prefetch.rows";
+
+    /** Fetch size hint given to the driver for the input statement, 0 uses the driver default */
+    public static final String INPUT_FETCH_SIZE = "mapred.jdbc.input.fetch.size";
+
+    /** Monotonically increasing column bounding an incremental read */
+    public static final String INPUT_WATERMARK_COLUMN = "mapred.jdbc.input.watermark.column";
+
+    /** SQL literal of the exclusive lower bound of an incremental read, the mark of the previous read */
+    public static final String INPUT_WATERMARK_LOW = "mapred.jdbc.input.watermark.low";
+
+    /** SQL literal of the inclusive upper bound of an incremental read */
+    public static final String INPUT_WATERMARK_HIGH = "mapred.jdbc.input.watermark.high";
+
+    /** Transaction isolation level of the input connections, one of the java.sql.Connection constants */
+    public static final String INPUT_ISOLATION_LEVEL = "mapred.jdbc.input.isolation.level";
+
+    /** Boolean to read all splits from one snapshot of the database exported while computing the splits */
+    public static final String INPUT_SNAPSHOT = "mapred.jdbc.input.snapshot";
+
+    /** Identifier of the reads an exported snapshot is held for, so that they can release it once they are done */
+    public static final String INPUT_SNAPSHOT_OWNER = "mapred.jdbc.input.snapshot.owner";
+
     /** Class name implementing DBWritable which will hold input tuples */
     public static final String INPUT_CLASS_PROPERTY = "mapred.jdbc.input.class";
 
@@ -96,9 +125,54 @@ public class DBConfiguration {
     /** The number of statements to batch before executing */
     public static final String BATCH_STATEMENTS_PROPERTY = "mapred.jdbc.batch.statements.num";
 
+    /** Boolean to execute the batches on a second connection in the background while the next batch is filled */
+    public static final String OUTPUT_ASYNC_FLUSH = "mapred.jdbc.output.async.flush";
+
+    /** The number of rows inserted by a single multi-row INSERT statement */
+    public static final String OUTPUT_INSERT_ROWS = "mapred.jdbc.output.insert.rows";
+
+    /** Boolean to insert or update every row with a single upsert statement */
+    public static final String OUTPUT_UPSERT = "mapred.jdbc.output.upsert";
+
+    /** Boolean to adapt the number of rows per batch to the time the batches take */
+    public static final String OUTPUT_BATCH_ADAPTIVE = "mapred.jdbc.output.batch.adaptive";
+
+    /** The smallest number of rows per adaptive batch */
+    public static final String OUTPUT_BATCH_MIN = "mapred.jdbc.output.batch.min";
+
+    /** The largest number of rows per adaptive batch */
+    public static final String OUTPUT_BATCH_MAX = "mapred.jdbc.output.batch.max";
+
+    /** Milliseconds an adaptive batch may take before it is shrunk */
+    public static final String OUTPUT_BATCH_TARGET_MILLIS = "mapred.jdbc.output.batch.target.millis";
+
+    /** Maximum number of open connections per JVM and database user, pooling is off unless it is set */
+    public static final String POOL_MAX_SIZE_PROPERTY = "mapred.jdbc.pool.max.size";
+
+    /** Milliseconds after which an idle pooled connection is closed */
+    public static final String POOL_IDLE_TIMEOUT_PROPERTY = "mapred.jdbc.pool.idle.timeout";
+
+    /** Query validating an idle pooled connection before it is reused, the driver is asked if unset */
+    public static final String POOL_VALIDATION_QUERY_PROPERTY = "mapred.jdbc.pool.validation.query";
+
     /** The number of splits allowed, becomes max concurrent reads. */
     public static final String CONCURRENT_READS_PROPERTY = "mapred.jdbc.concurrent.reads.num";
 
+    /** Numeric or temporal column used to cut the input into key ranges instead of LIMIT/OFFSET pages */
+    public static final String INPUT_SPLIT_BY_PROPERTY = "mapred.jdbc.input.split.by";
+
+    /** Number of values of the split by column sampled to place the split boundaries at quantiles, 0 splits evenly */
+    public static final String INPUT_SPLIT_SAMPLE_SIZE_PROPERTY = "mapred.jdbc.input.split.sample.size";
+
+    /** Number of user supplied predicates, each selecting the rows of one split, stored with their index as suffix */
+    public static final String INPUT_SPLIT_PREDICATES_PROPERTY = "mapred.jdbc.input.split.predicates";
+
+    /** Columns hashed to assign every row to one split, for tables without a dense numeric key */
+    public static final String INPUT_SPLIT_BY_HASH_PROPERTY = "mapred.jdbc.input.split.by.hash";
+
+    /** File keeping the time every version of a source was first seen, so that it outlives the JVM planning the flow */
+    public static final String VERSION_TIMES_PATH_PROPERTY = "mapred.jdbc.version.times.path";
+
     /**
      * Sets the DB access related fields in the Configuration.
      *
@@ -118,6 +192,23 @@ public class DBConfiguration {
         if (passwd != null) { job.set(PASSWORD_PROPERTY, passwd); }
     }
 
+    /**
+     * Sets the connection pool related fields in the Configuration.
+     *
+     * @param job             the job
+     * @param maxSize         maximum number of open connections per JVM, at least the number of
+     *                        connections a task holds at once, 0 disables pooling
+     * @param idleTimeout     milliseconds after which an idle connection is closed
+     * @param validationQuery query validating an idle connection before reuse, null to ask the driver
+     */
+    public static void configurePool(Configuration job, int maxSize, long idleTimeout,
+        String validationQuery) {
+        job.setInt(POOL_MAX_SIZE_PROPERTY, maxSize);
+        job.setLong(POOL_IDLE_TIMEOUT_PROPERTY, idleTimeout);
+
+        if (validationQuery != null) { job.set(POOL_VALIDATION_QUERY_PROPERTY, validationQuery); }
+    }
+
     /**
      * Sets the DB access related fields in the Configuration.
      *
@@ -136,26 +227,36 @@ public class DBConfiguration {
     }
 
     /**
-     * Returns a connection object to the DB
+     * Returns a connection object to the DB, borrowed from the pool of this JVM if pooling is enabled.
+     * Closing the connection returns it to the pool.
      *
      * @throws ClassNotFoundException
      * @throws SQLException
      */
     Connection getConnection() throws IOException {
+        return getConnection(true);
+    }
+
+    /**
+     * Returns a connection object to the DB.
+     *
+     * @param pooled false to open a connection of its own even if pooling is enabled, like for a
+     *               connection that is held open for longer than a task
+     */
+    Connection getConnection(boolean pooled) throws IOException {
         try {
             Class.forName(job.get(DBConfiguration.DRIVER_CLASS_PROPERTY));
         } catch (ClassNotFoundException exception) {
             throw new IOException("unable to load conection driver", exception);
         }
 
+        int maxSize = pooled ? job.getInt(DBConfiguration.POOL_MAX_SIZE_PROPERTY, ConnectionPool.DEFAULT_MAX_SIZE) : 0;
+
         try {
-            if (job.get(DBConfiguration.USERNAME_PROPERTY) == null) {
-                return DriverManager.getConnection(job.get(DBConfiguration.URL_PROPERTY));
-            } else {
-                return DriverManager.getConnection(job.get(DBConfiguration.URL_PROPERTY), job
-                    .get(DBConfiguration.USERNAME_PROPERTY), job
-                    .get(DBConfiguration.PASSWORD_PROPERTY));
-            }
+            return ConnectionPool.getConnection(job.get(DBConfiguration.URL_PROPERTY),
+                job.get(DBConfiguration.USERNAME_PROPERTY), job.get(DBConfiguration.PASSWORD_PROPERTY),
+                maxSize, job.getLong(DBConfiguration.POOL_IDLE_TIMEOUT_PROPERTY, ConnectionPool.DEFAULT_IDLE_TIMEOUT),
+                job.get(DBConfiguration.POOL_VALIDATION_QUERY_PROPERTY));
         } catch (SQLException exception) {
             throw new IOException("unable to create connection", exception);
         }
@@ -231,6 +332,93 @@ public class DBConfiguration {
         }
     }
 
+    boolean getInputCountEstimate() {
+        return job.getBoolean(DBConfiguration.INPUT_COUNT_ESTIMATE, false);
+    }
+
+    void setInputCountEstimate(boolean estimate) {
+        job.setBoolean(DBConfiguration.INPUT_COUNT_ESTIMATE, estimate);
+    }
+
+    String getInputEstimateQuery() {
+        return job.get(DBConfiguration.INPUT_ESTIMATE_QUERY);
+    }
+
+    void setInputEstimateQuery(String query) {
+        if (query != null && query.length() > 0) {
+            job.set(DBConfiguration.INPUT_ESTIMATE_QUERY, query);
+        }
+    }
+
+    int getInputPrefetchRows() {
+        return job.getInt(DBConfiguration.INPUT_PREFETCH_ROWS, 0);
+    }
+
+    void setInputPrefetchRows(int rows) {
+        job.setInt(DBConfiguration.INPUT_PREFETCH_ROWS, rows);
+    }
+
+    int getInputFetchSize() {
+        return job.getInt(DBConfiguration.INPUT_FETCH_SIZE, 0);
+    }
+
+    void setInputFetchSize(int fetchSize) {
+        job.setInt(DBConfiguration.INPUT_FETCH_SIZE, fetchSize);
+    }
+
+    String getInputWatermarkColumn() {
+        return job.get(DBConfiguration.INPUT_WATERMARK_COLUMN);
+    }
+
+    void setInputWatermarkColumn(String column) {
+        job.set(DBConfiguration.INPUT_WATERMARK_COLUMN, column);
+    }
+
+    String getInputWatermarkLow() {
+        return job.get(DBConfiguration.INPUT_WATERMARK_LOW);
+    }
+
+    void setInputWatermarkLow(String low) {
+        if (low != null) {
+            job.set(DBConfiguration.INPUT_WATERMARK_LOW, low);
+        }
+    }
+
+    String getInputWatermarkHigh() {
+        return job.get(DBConfiguration.INPUT_WATERMARK_HIGH);
+    }
+
+    void setInputWatermarkHigh(String high) {
+        if (high != null) {
+            job.set(DBConfiguration.INPUT_WATERMARK_HIGH, high);
+        }
+    }
+
+    /** Returns the configured isolation level, or -1 to use the default of the input format. */
+    int getInputIsolationLevel() {
+        return job.getInt(DBConfiguration.INPUT_ISOLATION_LEVEL, -1);
+    }
+
+    void setInputIsolationLevel(int isolationLevel) {
+        job.setInt(DBConfiguration.INPUT_ISOLATION_LEVEL, isolationLevel);
+    }
+
+    boolean getInputSnapshot() {
+        return job.getBoolean(DBConfiguration.INPUT_SNAPSHOT, false);
+    }
+
+    void setInputSnapshot(boolean snapshot) {
+        job.setBoolean(DBConfiguration.INPUT_SNAPSHOT, snapshot);
+    }
+
+    String getInputSnapshotOwner() {
+        return job.get(DBConfiguration.INPUT_SNAPSHOT_OWNER);
+    }
+
+    void setInputSnapshotOwner(String owner) {
+        job.set(DBConfiguration.INPUT_SNAPSHOT_OWNER, owner);
+    }
+
     Class<?> getInputClass() {
         return job
             .getClass(DBConfiguration.INPUT_CLASS_PROPERTY, DBInputFormat.NullDBWritable.class);
@@ -272,6 +460,62 @@ public class DBConfiguration {
         job.setInt(DBConfiguration.BATCH_STATEMENTS_PROPERTY, batchStatementsNum);
     }
 
+    boolean getOutputAsyncFlush() {
+        return job.getBoolean(DBConfiguration.OUTPUT_ASYNC_FLUSH, false);
+    }
+
+    void setOutputAsyncFlush(boolean asyncFlush) {
+        job.setBoolean(DBConfiguration.OUTPUT_ASYNC_FLUSH, asyncFlush);
+    }
+
+    int getOutputInsertRows() {
+        return job.getInt(DBConfiguration.OUTPUT_INSERT_ROWS, 1);
+    }
+
+    void setOutputInsertRows(int insertRows) {
+        job.setInt(DBConfiguration.OUTPUT_INSERT_ROWS, insertRows);
+    }
+
+    boolean getOutputUpsert() {
+        return job.getBoolean(DBConfiguration.OUTPUT_UPSERT, false);
+    }
+
+    void setOutputUpsert(boolean upsert) {
+        job.setBoolean(DBConfiguration.OUTPUT_UPSERT, upsert);
+    }
+
+    boolean getOutputBatchAdaptive() {
+        return job.getBoolean(DBConfiguration.OUTPUT_BATCH_ADAPTIVE, false);
+    }
+
+    void setOutputBatchAdaptive(boolean adaptive) {
+        job.setBoolean(DBConfiguration.OUTPUT_BATCH_ADAPTIVE, adaptive);
+    }
+
+    int getOutputBatchMin() {
+        return job.getInt(DBConfiguration.OUTPUT_BATCH_MIN, 100);
+    }
+
+    void setOutputBatchMin(int minBatchSize) {
+        job.setInt(DBConfiguration.OUTPUT_BATCH_MIN, minBatchSize);
+    }
+
+    int getOutputBatchMax() {
+        return job.getInt(DBConfiguration.OUTPUT_BATCH_MAX, 20000);
+    }
+
+    void setOutputBatchMax(int maxBatchSize) {
+        job.setInt(DBConfiguration.OUTPUT_BATCH_MAX, maxBatchSize);
+    }
+
+    long getOutputBatchTargetMillis() {
+        return job.getLong(DBConfiguration.OUTPUT_BATCH_TARGET_MILLIS, 2000);
+    }
+
+    void setOutputBatchTargetMillis(long targetMillis) {
+        job.setLong(DBConfiguration.OUTPUT_BATCH_TARGET_MILLIS, targetMillis);
+    }
+
     int getMaxConcurrentReadsNum() {
         return job.getInt(DBConfiguration.CONCURRENT_READS_PROPERTY, 0);
     }
@@ -284,4 +528,59 @@ public class DBConfiguration {
         job.setInt(DBConfiguration.CONCURRENT_READS_PROPERTY, maxConcurrentReads);
     }
 
+    String getInputSplitBy() {
+        return job.get(DBConfiguration.INPUT_SPLIT_BY_PROPERTY);
+    }
+
+    void setInputSplitBy(String splitBy) {
+        if (splitBy != null && splitBy.length() > 0) {
+            job.set(DBConfiguration.INPUT_SPLIT_BY_PROPERTY, splitBy);
+        }
+    }
+
+    int getInputSplitSampleSize() {
+        return job.getInt(DBConfiguration.INPUT_SPLIT_SAMPLE_SIZE_PROPERTY, 0);
+    }
+
+    void setInputSplitSampleSize(int sampleSize) {
+        job.setInt(DBConfiguration.INPUT_SPLIT_SAMPLE_SIZE_PROPERTY, sampleSize);
+    }
+
+    String[] getInputSplitPredicates() {
+        int count = job.getInt(DBConfiguration.INPUT_SPLIT_PREDICATES_PROPERTY, 0);
+
+        if (count == 0) {
+            return null;
+        }
+
+        String[] predicates = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            predicates[i] = job.get(DBConfiguration.INPUT_SPLIT_PREDICATES_PROPERTY + "." + i);
+        }
+
+        return predicates;
+    }
+
+    void setInputSplitPredicates(String... predicates) {
+        if (predicates != null && predicates.length > 0) {
+            // predicates may contain commas, so they are not stored as a list
+            job.setInt(DBConfiguration.INPUT_SPLIT_PREDICATES_PROPERTY, predicates.length);
+
+            for (int i = 0; i < predicates.length; i++) {
+                job.set(DBConfiguration.INPUT_SPLIT_PREDICATES_PROPERTY + "." + i, predicates[i]);
+            }
+        }
+    }
+
+    String[] getInputSplitByHash() {
+        return job.getStrings(DBConfiguration.INPUT_SPLIT_BY_HASH_PROPERTY);
+    }
+
+    void setInputSplitByHash(String... columns) {
+        if (columns != null && columns.length > 0) {
+            job.setStrings(DBConfiguration.INPUT_SPLIT_BY_HASH_PROPERTY, columns);
+        }
+    }
+
 }
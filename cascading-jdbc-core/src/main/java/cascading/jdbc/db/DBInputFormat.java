@@ -29,9 +29,11 @@
 
 package cascading.jdbc.db;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.*;
 import org.apache.hadoop.util.ReflectionUtils;
@@ -41,7 +43,16 @@ import org.slf4j.LoggerFactory;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A InputFormat that reads input data from an SQL table.
@@ -56,18 +67,35 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
   /** Field LOG */
   private static final Logger LOG = LoggerFactory.getLogger( DBInputFormat.class );
 
+  /** Counters of the rows read by the record readers */
+  public enum Counters
+    {
+      ROWS_READ
+    }
+
+  /** Number of rows after which the rows read are reported */
+  private static final int REPORT_INTERVAL = 10000;
+
   /**
    * A RecordReader that reads records from a SQL table. Emits LongWritables
    * containing the record number as key and DBWritables as value.
+   * <p/>
+   * Every reader owns its connection, so that several readers of one format
+   * can be consumed concurrently, like by a MultithreadedMapRunner.
    */
   protected class DBRecordReader implements RecordReader<LongWritable, T>
     {
+    protected final Connection connection;
     private ResultSet results;
     private Statement statement;
     private Class<T> inputClass;
     private JobConf job;
     protected DBInputSplit split;
     private long pos = 0;
+    private long reported = 0;
+    private boolean done;
+    private RowPrefetcher<T> prefetcher;
+    private Reporter reporter;
 
     /**
      * @param split The InputSplit to read data for
@@ -78,10 +106,25 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       this.inputClass = inputClass;
       this.split = split;
       this.job = job;
+      this.connection = openConnection();
 
-      if( connection == null )
-        openConnection();
-      statement = createStatement();
+      try
+        {
+        if( split.getSnapshot() != null )
+          attachSnapshot( split.getSnapshot() );
+
+        statement = createStatement();
+        }
+      catch( SQLException exception )
+        {
+        closeFailed();
+        throw exception;
+        }
+      catch( IOException exception )
+        {
+        closeFailed();
+        throw exception;
+        }
 
       String query = getSelectQuery();
       try
@@ -93,13 +136,83 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       catch ( SQLException exception )
         {
         LOG.error( "unable to execute select query: " + query, exception );
+        closeFailed();
         throw new IOException( "unable to execute select query: " + query, exception );
         }
+
+      int prefetchRows = dbConf.getInputPrefetchRows();
+
+      if( prefetchRows > 0 )
+        startPrefetching( prefetchRows );
+      }
+
+    /**
+     * Attaches the new transaction of the reader to the snapshot exported by {@link #exportSnapshot()}, so that
+     * all splits read the same state of the database.
+     */
+    private void attachSnapshot( String snapshot ) throws IOException
+      {
+      try
+        {
+        DBInputFormat.this.attachSnapshot( connection, snapshot );
+        }
+      catch( SQLException exception )
+        {
+        throw new IOException( "unable to attach to snapshot: " + snapshot + ", the exporting transaction may have ended", exception );
+        }
+      }
+
+    /** Detaches the connection from the snapshot of the split, if any, before the connection is closed. */
+    private void detachSnapshot() throws SQLException
+      {
+      if( split.getSnapshot() != null )
+        DBInputFormat.this.detachSnapshot( connection, split.getSnapshot() );
+      }
+
+    /** Closes the connection of a reader that failed to open, without hiding the original failure. */
+    private void closeFailed()
+      {
+      try
+        {
+        detachSnapshot();
+        }
+      catch( SQLException exception )
+        {
+        LOG.warn( "unable to detach from snapshot: " + split.getSnapshot(), exception );
+        }
+
+      closeQuietly( connection );
       }
 
     protected Statement createStatement() throws SQLException
       {
-      return connection.createStatement( ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+      Statement statement = connection.createStatement( ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+
+      if( dbConf.getInputFetchSize() > 0 )
+        statement.setFetchSize( dbConf.getInputFetchSize() );
+
+      return statement;
+      }
+
+    /**
+     * Reads up to the given number of rows ahead on a background thread. Only values implementing
+     * {@link ExchangeableDBWritable} can be handed over, for any other value the rows are read on demand.
+     */
+    private void startPrefetching( int prefetchRows )
+      {
+      if( !ExchangeableDBWritable.class.isAssignableFrom( inputClass ) )
+        {
+        LOG.warn( "{} does not implement {}, not prefetching rows", inputClass.getName(), ExchangeableDBWritable.class.getSimpleName() );
+        return;
+        }
+
+      List<T> rows = new ArrayList<T>( prefetchRows );
+
+      for( int i = 0; i < prefetchRows; i++ )
+        rows.add( createValue() );
+
+      prefetcher = new RowPrefetcher<T>( results, rows, createValue(), "jdbc-prefetch-" + split.getStart() );
+      prefetcher.start();
       }
 
     /**
@@ -130,8 +243,7 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
           query.append( " " ).append( tableName );
           }
 
-        if( conditions != null && conditions.length() > 0 )
-          query.append( " WHERE (" ).append( conditions ).append( ")" );
+        appendConditions( query, conditions, split.getPredicate() );
 
         String orderBy = dbConf.getInputOrderBy();
 
@@ -140,14 +252,14 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
 
         }
       else
-        query.append( dbConf.getInputQuery() );
+        query.append( getInputQuery() );
 
       try
         {
-        // Only add limit and offset if you have multiple chunks
-        if( split.getChunks() > 1 )
+        // Only add limit and offset if you have multiple chunks not already bounded by a key range
+        if( split.getPredicate() == null && split.getChunks() > 1 )
           {
-          query.append( " LIMIT " ).append( split.getLength() );
+          query.append( " LIMIT " ).append( split.isOpenEnded() ? Long.MAX_VALUE : split.getLength() );
           query.append( " OFFSET " ).append( split.getStart() );
           }
         }
@@ -159,22 +271,65 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       return query.toString();
       }
 
+    /**
+     * Returns the input query, wrapped in a sub query selecting the projected columns
+     * and the rows of the predicate of the split if either is given.
+     */
+    protected String getInputQuery()
+      {
+      if( split.getPredicate() == null && fieldNames == null )
+        return dbConf.getInputQuery();
+
+      StringBuilder query = new StringBuilder( "SELECT " );
+
+      if( fieldNames != null )
+        query.append( StringUtils.join( fieldNames, ", " ) );
+      else
+        query.append( "*" );
+
+      query.append( " FROM ( " ).append( dbConf.getInputQuery() ).append( " ) dbif_split" );
+
+      if( split.getPredicate() != null )
+        query.append( " WHERE " ).append( split.getPredicate() );
+
+      return query.toString();
+      }
+
+    /** Sets the reporter the rows read are reported to. */
+    void setReporter( Reporter reporter )
+      {
+      this.reporter = reporter;
+      }
+
+    private void reportRows()
+      {
+      if( reporter == null || pos == reported )
+        return;
+
+      reporter.incrCounter( Counters.ROWS_READ, pos - reported );
+      reporter.setStatus( "read " + pos + " rows" );
+      reported = pos;
+      }
+
     /** {@inheritDoc} */
     @Override
     public void close() throws IOException
       {
+      reportRows();
+
       try
         {
-        if( connection != null )
-          {
-          results.close();
-          statement.close();
-          connection.commit();
-          closeConnection();
-          }
+        if( prefetcher != null )
+          prefetcher.close();
+
+        results.close();
+        statement.close();
+        detachSnapshot();
+        closeConnection( connection );
         }
       catch ( SQLException exception )
         {
+        closeQuietly( connection );
         throw new IOException( "unable to commit and close", exception );
         }
       }
@@ -201,23 +356,37 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
     /** {@inheritDoc} */
     public float getProgress() throws IOException
       {
-      return pos / (float) split.getLength();
+      if( done )
+        return 1.0f;
+
+      // only the pages of a counted input know their number of rows, the rows read are reported as counter
+      if( split.getPredicate() == null && split.getChunks() > 1 )
+        return Math.min( 1.0f, pos / (float) split.getLength() );
+
+      return 0.0f;
       }
 
     /** {@inheritDoc} */
     public boolean next( LongWritable key, T value ) throws IOException
       {
+      if( prefetcher != null )
+        return nextPrefetched( key, value );
+
       try
         {
         if( !results.next() )
+          {
+          done = true;
           return false;
+          }
 
         // Set the key field value as the output key value
         key.set( pos + split.getStart() );
 
         value.readFields( results );
 
-        pos++;
+        if( ++pos - reported == REPORT_INTERVAL )
+          reportRows();
         }
       catch ( SQLException exception )
         {
@@ -226,6 +395,29 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
 
       return true;
       }
+
+    @SuppressWarnings("unchecked")
+    private boolean nextPrefetched( LongWritable key, T value ) throws IOException
+      {
+      T row = prefetcher.take();
+
+      if( row == null )
+        {
+        done = true;
+        return false;
+        }
+
+      key.set( pos + split.getStart() );
+
+      // hand the decoded fields to the caller and the fields of the previous row back to the prefetcher
+      ( (ExchangeableDBWritable<T>) value ).exchange( row );
+      prefetcher.release( row );
+
+      if( ++pos - reported == REPORT_INTERVAL )
+        reportRows();
+
+      return true;
+      }
     }
 
   /** A Class that does nothing, implementing DBWritable */
@@ -255,6 +447,9 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
     private long end = 0;
     private long start = 0;
     private long chunks = 0;
+    private String predicate;
+    private boolean openEnded;
+    private String snapshot;
 
     /** Default Constructor */
     public DBInputSplit()
@@ -275,6 +470,33 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       LOG.info( "creating DB input split with start: " + start + ", end: " + end + ", chunks: " + chunks );
       }
 
+    /**
+     * Convenience Constructor for splits bounded by a SQL predicate instead of LIMIT and OFFSET.
+     *
+     * @param start the lower bound of the split
+     * @param end the upper bound of the split
+     * @param predicate the condition selecting the rows of this split
+     */
+    public DBInputSplit( long start, long end, long chunks, String predicate )
+      {
+      this( start, end, chunks );
+      this.predicate = predicate;
+      LOG.info( "split predicate: " + predicate );
+      }
+
+    /**
+     * Convenience Constructor
+     *
+     * @param start the index of the first row to select
+     * @param end the estimated index of the last row to select
+     * @param openEnded if all rows past start are to be selected
+     */
+    public DBInputSplit( long start, long end, long chunks, boolean openEnded )
+      {
+      this( start, end, chunks );
+      this.openEnded = openEnded;
+      }
+
     /** {@inheritDoc} */
     public String[] getLocations() throws IOException
       {
@@ -306,12 +528,40 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       return chunks;
       }
 
+    /** @return The condition selecting the rows of this split, or null if it is paged by LIMIT and OFFSET */
+    public String getPredicate()
+      {
+      return predicate;
+      }
+
+    /**
+     * @return true if the split selects all rows past its start, since the end is only an estimate
+     */
+    public boolean isOpenEnded()
+      {
+      return openEnded;
+      }
+
+    /** @return The snapshot exported for all splits, or null if every split reads the current state */
+    public String getSnapshot()
+      {
+      return snapshot;
+      }
+
+    public void setSnapshot( String snapshot )
+      {
+      this.snapshot = snapshot;
+      }
+
     /** {@inheritDoc} */
     public void readFields( DataInput input ) throws IOException
       {
       start = input.readLong();
       end = input.readLong();
       chunks = input.readLong();
+      predicate = input.readBoolean() ? Text.readString( input ) : null;
+      openEnded = input.readBoolean();
+      snapshot = input.readBoolean() ? Text.readString( input ) : null;
       }
 
     /** {@inheritDoc} */
@@ -320,6 +570,16 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       output.writeLong( start );
       output.writeLong( end );
       output.writeLong( chunks );
+      output.writeBoolean( predicate != null );
+
+      if( predicate != null )
+        Text.writeString( output, predicate );
+
+      output.writeBoolean( openEnded );
+      output.writeBoolean( snapshot != null );
+
+      if( snapshot != null )
+        Text.writeString( output, snapshot );
       }
 
     @Override
@@ -329,14 +589,22 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       }
     }
 
+  /** connections holding the transactions of exported snapshots open, by snapshot */
+  private static final Map<String, Connection> SNAPSHOT_CONNECTIONS = new HashMap<String, Connection>();
+  /** the owners of the reads of the held snapshots, by snapshot */
+  private static final Map<String, String> SNAPSHOT_OWNERS = new HashMap<String, String>();
+  private static boolean snapshotHookAdded;
+
   protected DBConfiguration dbConf;
-  protected Connection connection;
 
   protected String tableName;
   protected String[] fieldNames;
   protected String conditions;
   protected long limit;
   protected int maxConcurrentReads;
+  protected String splitBy;
+  protected String[] splitByHash;
+  protected String[] splitPredicates;
 
   /** {@inheritDoc} */
   public void configure( JobConf job )
@@ -348,10 +616,31 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
     conditions = dbConf.getInputConditions();
     limit = dbConf.getInputLimit();
     maxConcurrentReads = dbConf.getMaxConcurrentReadsNum();
+    splitBy = dbConf.getInputSplitBy();
+    splitByHash = dbConf.getInputSplitByHash();
+    splitPredicates = dbConf.getInputSplitPredicates();
+
+    String watermarkColumn = dbConf.getInputWatermarkColumn();
+
+    if( watermarkColumn != null )
+      {
+      if( dbConf.getInputQuery() != null )
+        LOG.warn( "ignoring watermark on {}, an input query can't be restricted", watermarkColumn );
+
+      String watermark = getWatermarkCondition( watermarkColumn, dbConf.getInputWatermarkLow(), dbConf.getInputWatermarkHigh() );
+      conditions = conditions == null || conditions.length() == 0 ? watermark : "(" + conditions + ") AND (" + watermark + ")";
+      }
     }
 
-  private void openConnection()
+  /**
+   * Opens a new connection configured for reading, which is owned by the caller and has to be closed with
+   * {@link #closeConnection(Connection)}. The format does not hold on to any connection, so that it can be
+   * used by several threads.
+   */
+  protected Connection openConnection()
     {
+    Connection connection;
+
     try
       {
       connection = dbConf.getConnection();
@@ -362,6 +651,8 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       }
     setTransactionIsolationLevel( connection );
     setAutoCommit( connection );
+
+    return connection;
     }
 
   protected void setAutoCommit( Connection connection )
@@ -378,9 +669,14 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
 
   protected void setTransactionIsolationLevel( Connection connection )
     {
+    int isolationLevel = getTransactionIsolationLevel();
+
+    if( isolationLevel == Connection.TRANSACTION_NONE )
+      return;
+
     try
       {
-      connection.setTransactionIsolation( Connection.TRANSACTION_SERIALIZABLE );
+      connection.setTransactionIsolation( isolationLevel );
       }
     catch ( SQLException exception )
       {
@@ -388,6 +684,163 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       }
     }
 
+  /**
+   * Returns the configured isolation level of the input connections. Without one, reads from an exported
+   * snapshot use the level returned by {@link #getSnapshotIsolationLevel()}, all other reads are serializable.
+   * {@link Connection#TRANSACTION_NONE} keeps the default of the driver.
+   */
+  protected int getTransactionIsolationLevel()
+    {
+    int isolationLevel = dbConf.getInputIsolationLevel();
+
+    if( isolationLevel != -1 )
+      return isolationLevel;
+
+    return dbConf.getInputSnapshot() ? getSnapshotIsolationLevel() : Connection.TRANSACTION_SERIALIZABLE;
+    }
+
+  /**
+   * Returns the isolation level of readers attached to an exported snapshot, subclasses can override this if
+   * the database requires a different level.
+   */
+  protected int getSnapshotIsolationLevel()
+    {
+    return Connection.TRANSACTION_REPEATABLE_READ;
+    }
+
+  /**
+   * Exports a snapshot of the database all splits are read from, subclasses supporting snapshots override
+   * this. A snapshot that only stays valid while its exporting transaction is open should be registered with
+   * {@link #holdSnapshot(String, Connection)}, on a connection opened outside the connection pool.
+   *
+   * @return an identifier of the snapshot, or null if the database can't export snapshots
+   */
+  protected String exportSnapshot() throws SQLException, IOException
+    {
+    LOG.warn( "{} cannot export snapshots, every split reads the current state of the database", getClass().getSimpleName() );
+
+    return null;
+    }
+
+  /**
+   * Attaches the new transaction of a reader to the given snapshot before the first query is executed.
+   *
+   * @param connection the connection of the reader
+   * @param snapshot the identifier returned by {@link #exportSnapshot()}
+   */
+  protected void attachSnapshot( Connection connection, String snapshot ) throws SQLException
+    {
+    }
+
+  /**
+   * Detaches the connection of a reader from the given snapshot once the split is read, before the connection
+   * is closed and possibly returned to the connection pool. Subclasses attaching the whole session to the
+   * snapshot override this.
+   *
+   * @param connection the connection of the reader
+   * @param snapshot the identifier returned by {@link #exportSnapshot()}
+   */
+  protected void detachSnapshot( Connection connection, String snapshot ) throws SQLException
+    {
+    }
+
+  /**
+   * Keeps the transaction of the given connection, and with it the exported snapshot, open until the snapshot
+   * is released with {@link #releaseSnapshot(String)}, the reads of the owner set with
+   * {@link #setSnapshotOwner(JobConf, String)} release their snapshots, or the JVM exits.
+   */
+  protected void holdSnapshot( String snapshot, Connection connection )
+    {
+    synchronized( SNAPSHOT_CONNECTIONS )
+      {
+      if( !snapshotHookAdded )
+        {
+        Runtime.getRuntime().addShutdownHook( new Thread( "jdbc-release-snapshots" )
+          {
+          @Override
+          public void run()
+            {
+            releaseSnapshots();
+            }
+          } );
+
+        snapshotHookAdded = true;
+        }
+
+      SNAPSHOT_CONNECTIONS.put( snapshot, connection );
+
+      if( dbConf.getInputSnapshotOwner() != null )
+        SNAPSHOT_OWNERS.put( snapshot, dbConf.getInputSnapshotOwner() );
+      }
+    }
+
+  /**
+   * Ends the transaction holding the given exported snapshot open. Readers not yet attached to it will fail.
+   *
+   * @param snapshot the identifier of the snapshot
+   */
+  public static void releaseSnapshot( String snapshot )
+    {
+    Connection connection;
+
+    synchronized( SNAPSHOT_CONNECTIONS )
+      {
+      connection = SNAPSHOT_CONNECTIONS.remove( snapshot );
+      SNAPSHOT_OWNERS.remove( snapshot );
+      }
+
+    if( connection == null )
+      return;
+
+    LOG.info( "releasing snapshot: {}", snapshot );
+
+    try
+      {
+      connection.rollback();
+      connection.close();
+      }
+    catch( SQLException exception )
+      {
+      LOG.warn( "unable to release snapshot: " + snapshot, exception );
+      }
+    }
+
+  /** Ends the transactions of all snapshots exported by this JVM. */
+  public static void releaseSnapshots()
+    {
+    List<String> snapshots;
+
+    synchronized( SNAPSHOT_CONNECTIONS )
+      {
+      snapshots = new ArrayList<String>( SNAPSHOT_CONNECTIONS.keySet() );
+      }
+
+    for( String snapshot : snapshots )
+      releaseSnapshot( snapshot );
+    }
+
+  /**
+   * Ends the transactions of the snapshots held for the reads of the given owner.
+   *
+   * @param owner the owner set with {@link #setSnapshotOwner(JobConf, String)}
+   */
+  public static void releaseSnapshots( String owner )
+    {
+    List<String> snapshots = new ArrayList<String>();
+
+    synchronized( SNAPSHOT_CONNECTIONS )
+      {
+      for( Map.Entry<String, String> entry : SNAPSHOT_OWNERS.entrySet() )
+        {
+        if( entry.getValue().equals( owner ) )
+          snapshots.add( entry.getKey() );
+        }
+      }
+
+    for( String snapshot : snapshots )
+      releaseSnapshot( snapshot );
+    }
+
   /** {@inheritDoc} */
   public RecordReader<LongWritable, T> getRecordReader( InputSplit split, JobConf job, Reporter reporter ) throws IOException
     {
@@ -395,7 +848,12 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
     Class inputClass = dbConf.getInputClass();
     try
       {
-      return getRecordReaderInternal( (DBInputSplit) split, inputClass, job );
+      RecordReader<LongWritable, T> reader = getRecordReaderInternal( (DBInputSplit) split, inputClass, job );
+
+      if( reader instanceof DBInputFormat.DBRecordReader )
+        ( (DBRecordReader) reader ).setReporter( reporter );
+
+      return reader;
       }
     catch ( SQLException exception )
       {
@@ -420,33 +878,88 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
 
   /** {@inheritDoc} */
   public InputSplit[] getSplits( JobConf job, int chunks ) throws IOException
+    {
+    if( !dbConf.getInputSnapshot() )
+      return computeSplits( chunks );
+
+    String snapshot;
+
+    try
+      {
+      snapshot = exportSnapshot();
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to export snapshot", exception );
+      }
+
+    InputSplit[] splits = computeSplits( chunks );
+
+    if( snapshot != null )
+      {
+      LOG.info( "reading {} splits from snapshot: {}", splits.length, snapshot );
+
+      for( InputSplit split : splits )
+        ( (DBInputSplit) split ).setSnapshot( snapshot );
+      }
+
+    return splits;
+    }
+
+  /** Computes the splits of the input, which are all read from the same snapshot if one was exported. */
+  protected InputSplit[] computeSplits( int chunks ) throws IOException
     {
     // use the configured value if avail
     chunks = maxConcurrentReads == 0 ? chunks : maxConcurrentReads;
 
-    try
+    if( splitPredicates != null )
       {
-      if( connection == null )
-        openConnection();
+      if( limit == -1 )
+        return getPredicateSplits();
 
-      Statement statement = connection.createStatement();
+      LOG.warn( "ignoring split predicates, a limit of {} requires LIMIT/OFFSET paging", limit );
+      }
+    else if( splitBy != null )
+      {
+      if( limit == -1 )
+        return dbConf.getInputSplitSampleSize() > 0 ? getQuantileSplits( chunks ) : getKeysetSplits( chunks );
+
+      LOG.warn( "ignoring split by column {}, a limit of {} requires LIMIT/OFFSET paging", splitBy, limit );
+      }
+    else if( splitByHash != null )
+      {
+      if( limit == -1 )
+        return getHashSplits( chunks );
 
-      ResultSet results = statement.executeQuery( getCountQuery() );
+      LOG.warn( "ignoring split by hash of {}, a limit of {} requires LIMIT/OFFSET paging", Arrays.toString( splitByHash ), limit );
+      }
 
-      long count = 0;
+    // a single split streams the whole input, the count would only size it
+    if( limit == -1 && chunks <= 1 )
+      return new InputSplit[]{new DBInputSplit( 0, 0, 1 )};
 
-      while( results.next() )
-        count += results.getLong( 1 );
+    if( limit == -1 && dbConf.getInputQuery() != null && dbConf.getInputCountQuery() == null )
+      {
+      LOG.info( "no count query given, reading the input query in one split" );
+      return new InputSplit[]{new DBInputSplit( 0, 0, 1 )};
+      }
+
+    Connection connection = openConnection();
+
+    try
+      {
+      // statistics may be off in either direction, a limit needs the exact count
+      long count = dbConf.getInputCountEstimate() && limit == -1 ? estimateRowCount( connection ) : -1;
+      boolean estimated = count > 0;
+
+      if( !estimated )
+        count = countRows( connection );
 
       if( limit != -1 )
         count = Math.min( limit, count );
 
       long chunkSize = ( count / chunks );
 
-      results.close();
-      statement.close();
-      closeConnection();
-
       InputSplit[] splits = new InputSplit[chunks];
 
       // Split the rows into n-number of chunks and adjust the last chunk
@@ -456,7 +969,7 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
         DBInputSplit split;
 
         if( i + 1 == chunks )
-          split = new DBInputSplit( i * chunkSize, count, chunks );
+          split = new DBInputSplit( i * chunkSize, count, chunks, estimated );
         else
           split = new DBInputSplit( i * chunkSize, i * chunkSize + chunkSize, chunks );
 
@@ -468,13 +981,456 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
       {
       throw new IOException( e.getMessage() );
       }
+    finally
+      {
+      closeConnection( connection );
+      }
+    }
+
+  /** Creates one split per user supplied predicate, the predicates have to select disjoint rows. */
+  protected InputSplit[] getPredicateSplits()
+    {
+    InputSplit[] splits = new InputSplit[ splitPredicates.length ];
+
+    for( int i = 0; i < splitPredicates.length; i++ )
+      splits[ i ] = new DBInputSplit( i, i + 1, splitPredicates.length, splitPredicates[ i ] );
+
+    return splits;
     }
 
   /**
-   * Returns the query for getting the total number of rows, subclasses can
-   * override this for custom behaviour.
+   * Splits the input into key ranges of the split by column, so that every split is read with a range
+   * predicate instead of paging through the whole result with LIMIT and OFFSET.
    */
-  protected String getCountQuery()
+  protected InputSplit[] getKeysetSplits( int chunks ) throws IOException
+    {
+    String query = getBoundaryQuery();
+    Connection connection = openConnection();
+
+    try
+      {
+      Statement statement = connection.createStatement();
+
+      LOG.info( query );
+      ResultSet results = statement.executeQuery( query );
+
+      results.next();
+
+      boolean temporal = isTemporal( results.getMetaData().getColumnType( 1 ) );
+      Long min = getBoundary( results, 1, temporal, RoundingMode.FLOOR );
+      Long max = getBoundary( results, 2, temporal, RoundingMode.CEILING );
+
+      results.close();
+      statement.close();
+
+      // nothing but NULLs or no rows at all
+      if( min == null || max == null )
+        return new InputSplit[]{new DBInputSplit( 0, 0, 1, splitBy + " IS NULL" )};
+
+      return createKeysetSplits( min, max, temporal, chunks );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to execute boundary query: " + query, exception );
+      }
+    finally
+      {
+      closeConnection( connection );
+      }
+    }
+
+  /**
+   * Cuts the closed range [min, max] into at most the given number of half open key ranges. The
+   * first range also selects rows with a NULL split column, the last range is open ended.
+   */
+  protected DBInputSplit[] createKeysetSplits( long min, long max, boolean temporal, int chunks )
+    {
+    BigInteger lower = BigInteger.valueOf( min );
+    BigInteger range = BigInteger.valueOf( max ).subtract( lower ).add( BigInteger.ONE );
+
+    if( range.compareTo( BigInteger.valueOf( chunks ) ) < 0 )
+      chunks = range.intValue();
+
+    DBInputSplit[] splits = new DBInputSplit[ chunks ];
+
+    long start = min;
+
+    for( int i = 0; i < chunks; i++ )
+      {
+      StringBuilder predicate = new StringBuilder();
+
+      if( i == 0 )
+        predicate.append( splitBy ).append( " IS NULL OR " );
+
+      predicate.append( "( " ).append( splitBy ).append( " >= " ).append( formatBoundary( start, temporal ) );
+
+      long end;
+
+      // temporal boundaries are cut to milliseconds, an upper bound of max would lose the rows just above it
+      if( i + 1 == chunks )
+        {
+        end = max;
+        }
+      else
+        {
+        end = lower.add( range.multiply( BigInteger.valueOf( i + 1 ) ).divide( BigInteger.valueOf( chunks ) ) ).longValue();
+        predicate.append( " AND " ).append( splitBy ).append( " < " ).append( formatBoundary( end, temporal ) );
+        }
+
+      predicate.append( " )" );
+
+      splits[ i ] = new DBInputSplit( start, end, chunks, predicate.toString() );
+      start = end;
+      }
+
+    return splits;
+    }
+
+  /**
+   * Splits the input into key ranges holding about the same number of rows. The boundaries are the
+   * quantiles of a sample of the split by column, so clustered keys don't end up in one split.
+   */
+  protected InputSplit[] getQuantileSplits( int chunks ) throws IOException
+    {
+    // nothing to cut, a single split reads everything
+    if( chunks <= 1 )
+      return new InputSplit[]{new DBInputSplit( 0, 0, 1 )};
+
+    int sampleSize = dbConf.getInputSplitSampleSize();
+    List<Long> sample = new ArrayList<Long>( sampleSize );
+    boolean temporal;
+    String query = null;
+    Connection connection = openConnection();
+
+    try
+      {
+      long estimate = dbConf.getInputQuery() == null ? estimateRowCount( connection ) : -1;
+      query = getSampleQuery( sampleSize, estimate );
+
+      Statement statement = connection.createStatement();
+
+      LOG.info( query );
+      ResultSet results = statement.executeQuery( query );
+
+      temporal = isTemporal( results.getMetaData().getColumnType( 1 ) );
+
+      while( results.next() )
+        {
+        Long value = getBoundary( results, 1, temporal, RoundingMode.FLOOR );
+
+        if( value != null )
+          sample.add( value );
+        }
+
+      results.close();
+      statement.close();
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to execute sample query: " + query, exception );
+      }
+    finally
+      {
+      closeConnection( connection );
+      }
+
+    // too few rows to sample, the ranges between min and max are as good
+    if( sample.size() < chunks )
+      return getKeysetSplits( chunks );
+
+    LOG.info( "placing split boundaries of {} by a sample of {} values", splitBy, sample.size() );
+
+    return createQuantileSplits( getQuantiles( sample, chunks ), temporal );
+    }
+
+  /** Returns the distinct values at the quantiles of the sample, which cut it into the given number of parts. */
+  protected static long[] getQuantiles( List<Long> sample, int chunks )
+    {
+    Collections.sort( sample );
+
+    List<Long> quantiles = new ArrayList<Long>( chunks - 1 );
+
+    for( int i = 1; i < chunks; i++ )
+      {
+      Long quantile = sample.get( (int) ( (long) sample.size() * i / chunks ) );
+
+      if( quantiles.isEmpty() || quantiles.get( quantiles.size() - 1 ) < quantile )
+        quantiles.add( quantile );
+      }
+
+    long[] boundaries = new long[ quantiles.size() ];
+
+    for( int i = 0; i < boundaries.length; i++ )
+      boundaries[ i ] = quantiles.get( i );
+
+    return boundaries;
+    }
+
+  /**
+   * Cuts the input at the given ascending boundaries into half open key ranges. The first range also
+   * selects rows with a NULL split column, the first and the last range are open ended. Without boundaries
+   * the input is read in a single split.
+   */
+  protected DBInputSplit[] createQuantileSplits( long[] boundaries, boolean temporal )
+    {
+    if( boundaries.length == 0 )
+      return new DBInputSplit[]{new DBInputSplit( 0, 0, 1 )};
+
+    int chunks = boundaries.length + 1;
+    DBInputSplit[] splits = new DBInputSplit[ chunks ];
+
+    for( int i = 0; i < chunks; i++ )
+      {
+      StringBuilder predicate = new StringBuilder();
+
+      if( i == 0 )
+        predicate.append( splitBy ).append( " IS NULL OR " ).append( splitBy ).append( " < " ).append( formatBoundary( boundaries[ 0 ], temporal ) );
+      else if( i + 1 == chunks )
+        predicate.append( splitBy ).append( " >= " ).append( formatBoundary( boundaries[ i - 1 ], temporal ) );
+      else
+        predicate.append( "( " ).append( splitBy ).append( " >= " ).append( formatBoundary( boundaries[ i - 1 ], temporal ) )
+          .append( " AND " ).append( splitBy ).append( " < " ).append( formatBoundary( boundaries[ i ], temporal ) ).append( " )" );
+
+      splits[ i ] = new DBInputSplit( i, i + 1, chunks, predicate.toString() );
+      }
+
+    return splits;
+    }
+
+  /**
+   * Returns the query for sampling about the given number of values of the split by column. The default
+   * picks them by ORDER BY RANDOM() LIMIT, which sorts the whole input, subclasses override this with the
+   * sampling clause of their database. The estimated row count is less than one if unknown.
+   */
+  protected String getSampleQuery( int sampleSize, long estimatedRows )
+    {
+    StringBuilder query = new StringBuilder();
+
+    query.append( "SELECT " ).append( splitBy ).append( " FROM " );
+
+    if( dbConf.getInputQuery() == null )
+      query.append( tableName );
+    else
+      query.append( "( " ).append( dbConf.getInputQuery() ).append( " ) dbif_split" );
+
+    appendConditions( query, dbConf.getInputQuery() == null ? conditions : null, splitBy + " IS NOT NULL" );
+
+    query.append( " ORDER BY " ).append( getRandomFunction() ).append( " LIMIT " ).append( sampleSize );
+
+    return query.toString();
+    }
+
+  /** Returns the function returning a random number, used to sample without a sampling clause. */
+  protected String getRandomFunction()
+    {
+    return "RANDOM()";
+    }
+
+  /**
+   * Assigns every row to one of the splits by the hash of the split by hash columns modulo the number of
+   * splits. The splits are disjoint and of roughly equal size without a key range or a count query.
+   */
+  protected InputSplit[] getHashSplits( int chunks ) throws IOException
+    {
+    String hash = getHashExpression( splitByHash );
+
+    if( hash == null )
+      throw new IOException( getClass().getSimpleName() + " does not support splits by hash" );
+
+    chunks = Math.max( 1, chunks );
+
+    InputSplit[] splits = new InputSplit[ chunks ];
+
+    for( int i = 0; i < chunks; i++ )
+      splits[ i ] = new DBInputSplit( i, i + 1, chunks, getHashPredicate( hash, chunks, i ) );
+
+    return splits;
+    }
+
+  /**
+   * Returns an expression hashing the given columns to a non negative integer, or null if the database has
+   * no hash function. Rows with NULL columns must hash to a value as well, subclasses override this with the
+   * hash function of their dialect.
+   */
+  protected String getHashExpression( String[] columns )
+    {
+    return null;
+    }
+
+  /** Returns the predicate selecting the rows of the split with the given index by their hash. */
+  protected String getHashPredicate( String hash, int chunks, int index )
+    {
+    return "MOD(" + hash + ", " + chunks + ") = " + index;
+    }
+
+  /**
+   * Returns the query for getting the smallest and largest value of the split by column, subclasses can
+   * override this for custom behaviour.
+   */
+  protected String getBoundaryQuery()
+    {
+    StringBuilder query = new StringBuilder();
+
+    query.append( "SELECT MIN(" ).append( splitBy ).append( "), MAX(" ).append( splitBy ).append( ") FROM " );
+
+    if( dbConf.getInputQuery() == null )
+      {
+      query.append( tableName );
+
+      if( conditions != null && conditions.length() > 0 )
+        query.append( " WHERE " ).append( conditions );
+      }
+    else
+      query.append( "( " ).append( dbConf.getInputQuery() ).append( " ) dbif_split" );
+
+    return query.toString();
+    }
+
+  /**
+   * Renders a boundary of a key range as a SQL literal. Temporal boundaries are milliseconds since the
+   * epoch and are rendered with the JDBC timestamp escape.
+   */
+  protected String formatBoundary( long boundary, boolean temporal )
+    {
+    if( temporal )
+      return "{ts '" + new Timestamp( boundary ) + "'}";
+
+    return Long.toString( boundary );
+    }
+
+  private boolean isTemporal( int sqlType )
+    {
+    return sqlType == Types.DATE || sqlType == Types.TIME || sqlType == Types.TIMESTAMP;
+    }
+
+  private Long getBoundary( ResultSet results, int column, boolean temporal, RoundingMode roundingMode ) throws SQLException
+    {
+    if( temporal )
+      {
+      Timestamp timestamp = results.getTimestamp( column );
+      return timestamp == null ? null : timestamp.getTime();
+      }
+
+    BigDecimal value;
+
+    try
+      {
+      value = results.getBigDecimal( column );
+      }
+    catch( SQLException exception )
+      {
+      throw new SQLException( "split by column " + splitBy + " must be of a numeric or temporal type", exception );
+      }
+
+    return value == null ? null : value.setScale( 0, roundingMode ).longValue();
+    }
+
+  /**
+   * Appends the WHERE clause made of the configured conditions and the predicate of the current split,
+   * either may be null.
+   */
+  protected static void appendConditions( StringBuilder query, String conditions, String predicate )
+    {
+    boolean hasConditions = conditions != null && conditions.length() > 0;
+
+    if( hasConditions && predicate != null )
+      query.append( " WHERE (" ).append( conditions ).append( ") AND (" ).append( predicate ).append( ")" );
+    else if( hasConditions )
+      query.append( " WHERE (" ).append( conditions ).append( ")" );
+    else if( predicate != null )
+      query.append( " WHERE (" ).append( predicate ).append( ")" );
+    }
+
+  private long countRows( Connection connection ) throws SQLException
+    {
+    Statement statement = connection.createStatement();
+
+    ResultSet results = statement.executeQuery( getCountQuery() );
+
+    long count = 0;
+
+    while( results.next() )
+      count += results.getLong( 1 );
+
+    results.close();
+    statement.close();
+
+    return count;
+    }
+
+  /**
+   * Returns the estimated number of rows from the statistics of the database, or a value less than one
+   * if no estimate is available. The estimate only sizes the splits, the last split reads all remaining
+   * rows.
+   */
+  protected long estimateRowCount( Connection connection ) throws SQLException
+    {
+    String query = getEstimateQuery();
+
+    if( query == null )
+      {
+      LOG.info( "no row estimate available, counting rows" );
+      return -1;
+      }
+
+    Statement statement = connection.createStatement();
+
+    try
+      {
+      LOG.info( query );
+      ResultSet results = statement.executeQuery( query );
+
+      long estimate = readEstimate( results );
+
+      results.close();
+      LOG.info( "estimated row count: {}", estimate );
+
+      return estimate;
+      }
+    catch( SQLException exception )
+      {
+      LOG.warn( "unable to estimate row count, counting rows", exception );
+
+      // some databases refuse any further statement in a failed transaction
+      connection.rollback();
+
+      return -1;
+      }
+    finally
+      {
+      statement.close();
+      }
+    }
+
+  /**
+   * Returns the query for getting an estimated number of rows from catalog statistics, or null if there is
+   * none. Subclasses can override this with the statistics of their database.
+   */
+  protected String getEstimateQuery()
+    {
+    return dbConf.getInputEstimateQuery();
+    }
+
+  /**
+   * Reads the estimated number of rows from the result of the estimate query, subclasses can override this
+   * for queries not returning a plain number.
+   */
+  protected long readEstimate( ResultSet results ) throws SQLException
+    {
+    return results.next() ? results.getLong( 1 ) : -1;
+    }
+
+  /** Quotes the given value as a SQL string literal, e.g. to look up the table name in a catalog. */
+  protected static String toLiteral( String value )
+    {
+    return "'" + value.replace( "'", "''" ) + "'";
+    }
+
+  /**
+   * Returns the query for getting the total number of rows, subclasses can
+   * override this for custom behaviour.
+   */
+  protected String getCountQuery()
     {
 
     if( dbConf.getInputCountQuery() != null )
@@ -557,23 +1513,204 @@ public class DBInputFormat<T extends DBWritable> implements InputFormat<LongWrit
     }
 
   /**
-   * Closes the database connection.
+   * Sizes the splits from catalog statistics instead of an exact row count.
+   *
+   * @param job The job
+   * @param estimate true to estimate the row count
+   * @param estimateQuery optional query returning the estimated row count, replacing the default of the
+   *          input format
+   */
+  public static void setCountEstimate( JobConf job, boolean estimate, String estimateQuery )
+    {
+    DBConfiguration dbConf = new DBConfiguration( job );
+
+    dbConf.setInputCountEstimate( estimate );
+    dbConf.setInputEstimateQuery( estimateQuery );
+    }
+
+  /**
+   * Reads the rows ahead of the consumer on a background thread, overlapping the round trips to the database
+   * with the processing of the rows already read. The input class has to implement {@link ExchangeableDBWritable}.
+   *
+   * @param job The job
+   * @param prefetchRows the number of decoded rows to buffer, 0 disables prefetching
+   * @param fetchSize the fetch size hint given to the driver, 0 keeps the driver default
+   */
+  public static void setPrefetch( JobConf job, int prefetchRows, int fetchSize )
+    {
+    DBConfiguration dbConf = new DBConfiguration( job );
+
+    dbConf.setInputPrefetchRows( prefetchRows );
+    dbConf.setInputFetchSize( fetchSize );
+    }
+
+  /**
+   * Returns the condition restricting an incremental read to the rows above the previous mark and up to the
+   * current one, subclasses can override this for custom behaviour.
+   *
+   * @param column the watermark column
+   * @param low the SQL literal of the previous mark, or null on the first read
+   * @param high the SQL literal of the current mark, or null if there are no new rows
+   */
+  protected String getWatermarkCondition( String column, String low, String high )
+    {
+    if( high == null )
+      return "1 = 0";
+
+    if( low == null )
+      return column + " <= " + high;
+
+    return column + " > " + low + " AND " + column + " <= " + high;
+    }
+
+  /**
+   * Restricts the input to the rows of which the given monotonically increasing column is above the low mark
+   * and at most the high mark. The splits are planned on the same range, so history below the low mark is
+   * never counted nor read.
+   *
+   * @param job The job
+   * @param column the watermark column
+   * @param low the SQL literal of the exclusive lower bound, null to read from the start
+   * @param high the SQL literal of the inclusive upper bound, null if there are no new rows to read
+   */
+  public static void setWatermark( JobConf job, String column, String low, String high )
+    {
+    DBConfiguration dbConf = new DBConfiguration( job );
+
+    dbConf.setInputWatermarkColumn( column );
+    dbConf.setInputWatermarkLow( low );
+    dbConf.setInputWatermarkHigh( high );
+    }
+
+  /**
+   * Reads all splits from one snapshot of the database exported while the splits are computed, instead of
+   * every split reading the state at the time its query runs. Readers attach to the snapshot with the
+   * isolation level returned by {@link #getSnapshotIsolationLevel()} unless one is set with
+   * {@link #setIsolationLevel(JobConf, int)}. Input formats that can't export snapshots log a warning.
+   *
+   * @param job The job
+   * @param snapshot true to read all splits from one snapshot
+   */
+  public static void setSnapshot( JobConf job, boolean snapshot )
+    {
+    new DBConfiguration( job ).setInputSnapshot( snapshot );
+    }
+
+  /**
+   * Sets the owner of the reads of the job, whose exported snapshots are released together with
+   * {@link #releaseSnapshots(String)} once the reads are done.
+   *
+   * @param job The job
+   * @param owner an identifier of the reads, like the identifier of the tap
+   */
+  public static void setSnapshotOwner( JobConf job, String owner )
+    {
+    new DBConfiguration( job ).setInputSnapshotOwner( owner );
+    }
+
+  /**
+   * Sets the transaction isolation level of the input connections, replacing the default of
+   * {@link Connection#TRANSACTION_SERIALIZABLE}.
+   *
+   * @param job The job
+   * @param isolationLevel one of the {@link Connection} isolation level constants,
+   *          {@link Connection#TRANSACTION_NONE} keeps the default of the driver
+   */
+  public static void setIsolationLevel( JobConf job, int isolationLevel )
+    {
+    new DBConfiguration( job ).setInputIsolationLevel( isolationLevel );
+    }
+
+  /**
+   * Reads the input in key ranges of the given numeric or temporal column instead of LIMIT/OFFSET pages.
+   * The column should be indexed, every split is read with a range predicate on it.
+   *
+   * @param job The job
+   * @param splitBy the column to split the input by
+   */
+  public static void setSplitBy( JobConf job, String splitBy )
+    {
+    new DBConfiguration( job ).setInputSplitBy( splitBy );
+    }
+
+  /**
+   * Reads the input in one split per given predicate, which are appended to the conditions of a table or
+   * applied to the result of an input query. The predicates have to select disjoint sets of rows. No count
+   * query is run.
+   *
+   * @param job The job
+   * @param predicates the predicates selecting the rows of a split
+   */
+  public static void setSplitPredicates( JobConf job, String... predicates )
+    {
+    new DBConfiguration( job ).setInputSplitPredicates( predicates );
+    }
+
+  /**
+   * Selects only the given columns of the result of an input query, by wrapping it in a sub query. Tables
+   * are projected by the field names given to {@link #setInput(JobConf, Class, String, String, String, long, int, Boolean, String...)}.
+   *
+   * @param job The job
+   * @param fieldNames the columns to select
+   */
+  public static void setProjection( JobConf job, String... fieldNames )
+    {
+    new DBConfiguration( job ).setInputFieldNames( fieldNames );
+    }
+
+  /**
+   * Places the boundaries of the key ranges of the split by column at the quantiles of a sample of its
+   * values instead of evenly between its minimum and maximum, so that every split reads about the same
+   * number of rows even if the keys are clustered.
+   *
+   * @param job The job
+   * @param sampleSize the number of values to sample, 0 splits evenly
+   */
+  public static void setSplitSample( JobConf job, int sampleSize )
+    {
+    new DBConfiguration( job ).setInputSplitSampleSize( sampleSize );
+    }
+
+  /**
+   * Reads the input in splits of rows with the same hash of the given columns modulo the number of splits,
+   * for tables without a numeric or temporal key. Requires a dialect specific input format.
+   *
+   * @param job The job
+   * @param columns the columns to hash
+   */
+  public static void setSplitByHash( JobConf job, String... columns )
+    {
+    new DBConfiguration( job ).setInputSplitByHash( columns );
+    }
+
+  /**
+   * Commits and closes the given database connection.
    * */
-  private void closeConnection() throws IOException
+  protected void closeConnection( Connection connection ) throws IOException
     {
-    if( connection != null )
+    try
       {
-      try
-        {
-        // some databases like derby require a commit, before a close.
-        connection.commit();
-        connection.close();
-        connection = null;
-        }
-      catch ( SQLException e )
-        {
-        throw new IOException( e );
-        }
+      // some databases like derby require a commit, before a close.
+      connection.commit();
+      connection.close();
+      }
+    catch ( SQLException e )
+      {
+      throw new IOException( e );
+      }
+    }
+
+  /** Closes the connection of a reader that failed to open, without hiding the original failure. */
+  private static void closeQuietly( Connection connection )
+    {
+    try
+      {
+      connection.rollback();
+      connection.close();
+      }
+    catch( SQLException exception )
+      {
+      LOG.warn( "unable to close connection", exception );
       }
     }
   }
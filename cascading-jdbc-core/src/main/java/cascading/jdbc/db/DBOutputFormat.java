@@ -34,9 +34,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -58,25 +67,76 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
   {
   private static final Log LOG = LogFactory.getLog( DBOutputFormat.class );
 
-  /** A RecordWriter that writes the reduce output to a SQL table */
+  /** Counters of the batches executed by the record writers, their rows divided by the batches give the mean batch size */
+  public enum Counters
+    {
+      BATCHES, BATCH_ROWS, BATCH_MILLIS
+    }
+
+  /**
+   * A RecordWriter that writes the reduce output to a SQL table.
+   * <p/>
+   * If created with a second {@link StatementBatch}, the writer double-buffers its batches: while a background
+   * thread executes and commits the full batch on one connection, the next batch is added to the statements
+   * of the other connection. At most one batch is in flight, a failed batch fails the next write or the close.
+   * <p/>
+   * The number of rows per batch is given by a {@link BatchSizer}, which may adapt it to the time every batch takes.
+   * The batches executed are reported as counters when the writer is closed, the batch size it settled at is logged.
+   */
   protected class DBRecordWriter implements RecordWriter<K, V>
     {
-    private Connection connection;
-    private PreparedStatement insertStatement;
-    private PreparedStatement updateStatement;
-    private final int statementsBeforeExecute;
+    private StatementBatch current;
+    private StatementBatch flushing;
+    private ExecutorService flushExecutor;
+    private Future<Void> flush;
+    private final BatchSizer batchSizer;
+    private final String tableName;
 
-    private long statementsAdded = 0;
-    private long insertStatementsCurrent = 0;
-    private long updateStatementsCurrent = 0;
+    private volatile long statementsAdded = 0;
+    private int statementsInBatch = 0;
 
     protected DBRecordWriter( Connection connection, PreparedStatement insertStatement, PreparedStatement updateStatement,
         int statementsBeforeExecute )
       {
-      this.connection = connection;
-      this.insertStatement = insertStatement;
-      this.updateStatement = updateStatement;
-      this.statementsBeforeExecute = statementsBeforeExecute;
+      this( new StatementBatch( connection, insertStatement, updateStatement ), null, statementsBeforeExecute );
+      }
+
+    /**
+     * @param batch the statements to add the rows to
+     * @param flushBatch the statements of a second connection to alternate with in the background, may be null
+     * @param statementsBeforeExecute the number of rows after which the batch is executed
+     */
+    protected DBRecordWriter( StatementBatch batch, StatementBatch flushBatch, int statementsBeforeExecute )
+      {
+      this( batch, flushBatch, new BatchSizer( statementsBeforeExecute ), null );
+      }
+
+    /**
+     * @param batch the statements to add the rows to
+     * @param flushBatch the statements of a second connection to alternate with in the background, may be null
+     * @param batchSizer gives the number of rows after which the batch is executed
+     * @param tableName the table the batch size is logged for, may be null
+     */
+    protected DBRecordWriter( StatementBatch batch, StatementBatch flushBatch, BatchSizer batchSizer, String tableName )
+      {
+      this.current = batch;
+      this.flushing = flushBatch;
+      this.batchSizer = batchSizer;
+      this.tableName = tableName;
+
+      if( flushBatch == null )
+        return;
+
+      this.flushExecutor = Executors.newSingleThreadExecutor( new ThreadFactory()
+      {
+      @Override
+      public Thread newThread( Runnable runnable )
+        {
+        Thread thread = new Thread( runnable, "jdbc-flush" );
+        thread.setDaemon( true );
+        return thread;
+        }
+      } );
       }
 
     /** {@inheritDoc} */
@@ -84,32 +144,401 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
       {
       try
         {
-        if (insertStatement != null)
-          executeBatch(insertStatement, insertStatementsCurrent);
-        if (updateStatement != null)
-          executeBatch( updateStatement, updateStatementsCurrent );
+        if( flushExecutor != null )
+          awaitFlush();
+
+        execute( current, statementsAdded, statementsInBatch, batchSizer.getBatchSize() );
+        statementsInBatch = 0;
+
+        reportBatches( reporter );
         }
       finally
         {
+        if( flushExecutor != null )
+          flushExecutor.shutdownNow();
+
         try
           {
-          if (!connection.isClosed())
-            connection.close();
+          current.close();
+          }
+        finally
+          {
+          if( flushing != null )
+            flushing.close();
           }
-        catch ( SQLException exception )
+        }
+      }
+
+    /** {@inheritDoc} */
+    public synchronized void write( K key, V value ) throws IOException
+      {
+      // fail as early as possible if the batch in flight failed
+      if( flush != null && flush.isDone() )
+        awaitFlush();
+
+      try
+        {
+        if( value == null )
+          current.addInsert( key );
+        else
+          current.addUpdate( key );
+        }
+      catch ( SQLException exception )
+        {
+        throw new IOException( "unable to add batch statement", exception );
+        }
+
+      statementsAdded++;
+
+      if( ++statementsInBatch >= batchSizer.getBatchSize() )
+        {
+        if( flushExecutor == null )
+          execute( current, statementsAdded, statementsInBatch, batchSizer.getBatchSize() );
+        else
+          flushCurrent();
+
+        statementsInBatch = 0;
+        }
+      }
+
+    /** Executes the given batch, and measures it for the batch size. */
+    private void execute( StatementBatch batch, long totalStatements, int rows, int batchSize ) throws IOException
+      {
+      long start = System.nanoTime();
+
+      batch.execute( totalStatements, batchSize );
+
+      batchSizer.executed( rows, System.nanoTime() - start );
+      }
+
+    private void reportBatches( Reporter reporter )
+      {
+      // the size settled at is per writer, a counter would sum it over the tasks
+      LOG.info( "executed " + batchSizer.getBatches() + " batches of " + batchSizer.getBatchRows() + " rows"
+        + ( tableName != null ? " into " + tableName : "" ) + ", settled at batch size " + batchSizer.getBatchSize() );
+
+      if( reporter == null )
+        return;
+
+      reporter.incrCounter( Counters.BATCHES, batchSizer.getBatches() );
+      reporter.incrCounter( Counters.BATCH_ROWS, batchSizer.getBatchRows() );
+      reporter.incrCounter( Counters.BATCH_MILLIS, batchSizer.getBatchMillis() );
+      }
+
+    /** Hands the current batch to the flush thread and continues on the other connection. */
+    private void flushCurrent() throws IOException
+      {
+      // bounds the batches in flight to one
+      awaitFlush();
+
+      final StatementBatch full = current;
+      final long totalStatements = statementsAdded;
+      final int rows = statementsInBatch;
+      final int batchSize = batchSizer.getBatchSize();
+
+      current = flushing;
+      flushing = full;
+
+      flush = flushExecutor.submit( new Callable<Void>()
+      {
+      @Override
+      public Void call() throws IOException
+        {
+        execute( full, totalStatements, rows, batchSize );
+        return null;
+        }
+      } );
+      }
+
+    private void awaitFlush() throws IOException
+      {
+      if( flush == null )
+        return;
+
+      try
+        {
+        flush.get();
+        }
+      catch( InterruptedException exception )
+        {
+        Thread.currentThread().interrupt();
+        throw new IOException( "interrupted while waiting for the batch to be executed", exception );
+        }
+      catch( ExecutionException exception )
+        {
+        if( exception.getCause() instanceof IOException )
+          throw (IOException) exception.getCause();
+
+        throw new IOException( "unable to execute batch", exception.getCause() );
+        }
+      finally
+        {
+        flush = null;
+        }
+      }
+    }
+
+  /**
+   * The number of rows per batch, either fixed or adapted to the measured batches by additive increase and
+   * multiplicative decrease.
+   * <p/>
+   * An adaptive batch grows by the minimum batch size as long as a full batch executes within the target time and
+   * the rows written per second do not drop by more than a tenth, otherwise it is halved. So the batch size settles
+   * where a larger batch no longer pays off, narrow rows settle at large batches and wide rows at small ones.
+   * Partial batches are counted, but do not change the batch size.
+   */
+  protected static class BatchSizer
+    {
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetNanos;
+
+    private volatile int batchSize;
+    private double rowsPerSecond = 0;
+
+    private long batches = 0;
+    private long batchRows = 0;
+    private long batchNanos = 0;
+
+    /** @param batchSize the fixed number of rows per batch */
+    public BatchSizer( int batchSize )
+      {
+      this( batchSize, batchSize, batchSize, 0 );
+      }
+
+    /**
+     * @param batchSize the initial number of rows per batch
+     * @param minBatchSize the smallest number of rows per batch, also the step the batch grows by
+     * @param maxBatchSize the largest number of rows per batch
+     * @param targetMillis the milliseconds a batch may take before it is shrunk
+     */
+    public BatchSizer( int batchSize, int minBatchSize, int maxBatchSize, long targetMillis )
+      {
+      if( minBatchSize < 1 || maxBatchSize < minBatchSize )
+        throw new IllegalArgumentException( "invalid batch size bounds, min: " + minBatchSize + " max: " + maxBatchSize );
+
+      this.minBatchSize = minBatchSize;
+      this.maxBatchSize = maxBatchSize;
+      this.targetNanos = targetMillis * 1000000;
+      this.batchSize = Math.min( maxBatchSize, Math.max( minBatchSize, batchSize ) );
+      }
+
+    public int getBatchSize()
+      {
+      return batchSize;
+      }
+
+    /**
+     * Records an executed batch and adapts the batch size to it.
+     *
+     * @param rows the number of rows in the batch
+     * @param nanos the nanoseconds it took to execute and commit the batch
+     */
+    synchronized void executed( int rows, long nanos )
+      {
+      if( rows == 0 )
+        return;
+
+      batches++;
+      batchRows += rows;
+      batchNanos += nanos;
+
+      if( minBatchSize == maxBatchSize || rows < batchSize )
+        return;
+
+      double measured = rows * 1e9 / Math.max( 1, nanos );
+
+      if( nanos > targetNanos || measured < rowsPerSecond * 0.9 )
+        {
+        batchSize = Math.max( minBatchSize, batchSize / 2 );
+        // the smaller batch is measured afresh
+        rowsPerSecond = 0;
+        }
+      else
+        {
+        batchSize = Math.min( maxBatchSize, batchSize + minBatchSize );
+        rowsPerSecond = measured;
+        }
+
+      if( LOG.isDebugEnabled() )
+        LOG.debug( "batch of " + rows + " rows took " + nanos / 1000000 + " ms, next batch size: " + batchSize );
+      }
+
+    synchronized long getBatches()
+      {
+      return batches;
+      }
+
+    synchronized long getBatchRows()
+      {
+      return batchRows;
+      }
+
+    synchronized long getBatchMillis()
+      {
+      return batchNanos / 1000000;
+      }
+    }
+
+  /**
+   * The statements of one connection and the number of rows added to them since their last execution.
+   * <p/>
+   * With a multi-row insert statement, every inserted row is bound to its place in the multi-row statement,
+   * and a copy of it is kept until the statement is complete. The rows of an incomplete multi-row statement
+   * are bound again to one statement inserting just these rows when the batch is executed.
+   */
+  protected class StatementBatch
+    {
+    private final Connection connection;
+    private final PreparedStatement insertStatement;
+    private final PreparedStatement updateStatement;
+    private final PreparedStatement multiRowInsertStatement;
+    private final String tableName;
+    private final String[] fieldNames;
+    private final int rowsPerStatement;
+
+    /** the statements inserting fewer rows than the multi-row statement, by number of rows */
+    private final PreparedStatement[] remainderStatements;
+    private final List<MultiRowDBWritable> remainder = new ArrayList<MultiRowDBWritable>();
+
+    private long insertStatementsCurrent = 0;
+    private long updateStatementsCurrent = 0;
+    private long multiRowStatementsCurrent = 0;
+
+    public StatementBatch( Connection connection, PreparedStatement insertStatement, PreparedStatement updateStatement )
+      {
+      this( connection, insertStatement, updateStatement, null, null, null, 1 );
+      }
+
+    /**
+     * @param multiRowInsertStatement statement inserting rowsPerStatement rows at once, may be null
+     * @param tableName the table the remainder of the rows is inserted into
+     * @param fieldNames the fields of the rows, each is one parameter of the multi-row statement
+     * @param rowsPerStatement the number of rows inserted by the multi-row statement
+     */
+    public StatementBatch( Connection connection, PreparedStatement insertStatement, PreparedStatement updateStatement,
+        PreparedStatement multiRowInsertStatement, String tableName, String[] fieldNames, int rowsPerStatement )
+      {
+      this.connection = connection;
+      this.insertStatement = insertStatement;
+      this.updateStatement = updateStatement;
+      this.multiRowInsertStatement = multiRowInsertStatement;
+      this.tableName = tableName;
+      this.fieldNames = fieldNames;
+      this.rowsPerStatement = rowsPerStatement;
+      this.remainderStatements = new PreparedStatement[ rowsPerStatement ];
+      }
+
+    void addInsert( K key ) throws SQLException, IOException
+      {
+      if( multiRowInsertStatement == null )
+        {
+        key.write( insertStatement );
+        insertStatement.addBatch();
+        insertStatementsCurrent++;
+        return;
+        }
+
+      if( !( key instanceof MultiRowDBWritable ) )
+        throw new IOException( "multi-row inserts require a " + MultiRowDBWritable.class.getSimpleName() + ", got: " + key.getClass().getName() );
+
+      MultiRowDBWritable row = (MultiRowDBWritable) key;
+
+      row.write( multiRowInsertStatement, remainder.size() * fieldNames.length );
+
+      if( remainder.size() + 1 < rowsPerStatement )
+        {
+        // the record may be reused for the next row
+        remainder.add( row.copy() );
+        return;
+        }
+
+      multiRowInsertStatement.addBatch();
+      multiRowStatementsCurrent++;
+      remainder.clear();
+      }
+
+    void addUpdate( K key ) throws SQLException
+      {
+      key.write( updateStatement );
+      updateStatement.addBatch();
+      updateStatementsCurrent++;
+      }
+
+    void execute( long statementsAdded, int statementsBeforeExecute ) throws IOException
+      {
+      try
+        {
+        if( multiRowInsertStatement != null )
           {
-          throw new IOException( "unable to close connection", exception );
+          executeBatch( multiRowInsertStatement, multiRowStatementsCurrent, statementsAdded, statementsBeforeExecute );
+
+          if( !remainder.isEmpty() )
+            executeBatch( bindRemainder(), 1, statementsAdded, statementsBeforeExecute );
           }
+        if( insertStatement != null )
+          executeBatch( insertStatement, insertStatementsCurrent, statementsAdded, statementsBeforeExecute );
+        if( updateStatement != null )
+          executeBatch( updateStatement, updateStatementsCurrent, statementsAdded, statementsBeforeExecute );
+        }
+      finally
+        {
+        // reset counters after each batch
+        insertStatementsCurrent = 0;
+        updateStatementsCurrent = 0;
+        multiRowStatementsCurrent = 0;
+        remainder.clear();
+        }
+      }
+
+    /** Binds the rows of the incomplete multi-row statement to a statement inserting just these rows. */
+    private PreparedStatement bindRemainder() throws IOException
+      {
+      int rows = remainder.size();
+      String sqlInsert = constructInsertQuery( tableName, fieldNames, rows );
+
+      try
+        {
+        if( remainderStatements[ rows ] == null )
+          remainderStatements[ rows ] = connection.prepareStatement( sqlInsert );
+
+        PreparedStatement statement = remainderStatements[ rows ];
+
+        for( int i = 0; i < rows; i++ )
+          remainder.get( i ).write( statement, i * fieldNames.length );
+
+        statement.addBatch();
+
+        return statement;
+        }
+      catch( SQLException exception )
+        {
+        throw new IOException( "unable to bind the remaining rows to: " + sqlInsert, exception );
+        }
+      }
+
+    void close() throws IOException
+      {
+      try
+        {
+        if( !connection.isClosed() )
+          connection.close();
+        }
+      catch ( SQLException exception )
+        {
+        throw new IOException( "unable to close connection", exception );
         }
       }
 
-    private void executeBatch(PreparedStatement preparedStatement, long currentCount) throws IOException
+    private void executeBatch( PreparedStatement preparedStatement, long currentCount, long statementsAdded, int statementsBeforeExecute ) throws IOException
       {
+      String batchMessage = String.format( "[totstmts: %d][crntstmts: %d][batch: %d]", statementsAdded, currentCount, statementsBeforeExecute );
+
       try
         {
         if( currentCount != 0 )
           {
-          LOG.info( "executing batch " + createBatchMessage( currentCount ) );
+          LOG.info( "executing batch " + batchMessage );
           int[] result = preparedStatement.executeBatch();
           int updatedRecords = 0;
           boolean hasUpdateCount = true;
@@ -117,7 +546,7 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
           for( int value : result )
             {
             if (value == Statement.EXECUTE_FAILED)
-              manageBatchProcessingError("update failed", 0, new BatchProcessingException( "value=Statement.EXECUTE_FAILED" ));
+              manageBatchProcessingError( "update failed", batchMessage, new BatchProcessingException( "value=Statement.EXECUTE_FAILED" ));
             else if ( value == Statement.SUCCESS_NO_INFO)
               hasUpdateCount = false;
 
@@ -130,32 +559,26 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
           // If no records matched the update query it's still a success. But if the number of updated statements
           // that ran isn't the expected count there's a problem.
           if( result.length != currentCount )
-            manageBatchProcessingError("update did not update same number of statements executed in batch, batch: " + currentCount
-              + " updated: " + result.length, 0, new BatchProcessingException( "" ));
+            manageBatchProcessingError( "update did not update same number of statements executed in batch, batch: " + currentCount
+              + " updated: " + result.length, batchMessage, new BatchProcessingException( "" ));
             }
 
         connection.commit();
         }
       catch ( SQLException exception )
         {
-        manageBatchProcessingError( "unable to execute update batch", currentCount, exception );
+        manageBatchProcessingError( "unable to execute update batch", batchMessage, exception );
         }
 
       }
 
-    private String createBatchMessage( long currentStatements )
-      {
-      return String.format( "[totstmts: %d][crntstmts: %d][batch: %d]", statementsAdded, currentStatements, statementsBeforeExecute );
-      }
-
-    private void manageBatchProcessingError( String stateMessage, long currentStatements, SQLException exception ) throws IOException
+    private void manageBatchProcessingError( String stateMessage, String batchMessage, SQLException exception ) throws IOException
       {
       String message = exception.getMessage();
 
       message = message.substring( 0, Math.min( 75, message.length() ) );
 
       int messageLength = exception.getMessage().length();
-      String batchMessage = createBatchMessage( currentStatements );
       String template = "%s [msglength: %d]%s %s";
       String errorMessage = String.format( template, stateMessage, messageLength, batchMessage, message );
 
@@ -173,41 +596,6 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
 
       throw new IOException( errorMessage, exception.getNextException() );
       }
-
-    /** {@inheritDoc} */
-    public synchronized void write( K key, V value ) throws IOException
-      {
-      try
-        {
-        if( value == null )
-          {
-          key.write( insertStatement );
-          insertStatement.addBatch();
-          insertStatementsCurrent++;
-          }
-        else
-          {
-          key.write( updateStatement );
-          updateStatement.addBatch();
-          updateStatementsCurrent++;
-          }
-        }
-      catch ( SQLException exception )
-        {
-        throw new IOException( "unable to add batch statement", exception );
-        }
-
-      statementsAdded++;
-
-      if( statementsAdded % statementsBeforeExecute == 0 )
-        {
-        executeBatch(insertStatement, insertStatementsCurrent);
-        executeBatch(updateStatement, updateStatementsCurrent);
-        // reset counters after each batch
-        insertStatementsCurrent = 0;
-        updateStatementsCurrent = 0;
-        }
-      }
     }
 
   /**
@@ -218,6 +606,20 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
    *          supply an array of nulls.
    */
   protected String constructInsertQuery( String table, String[] fieldNames )
+    {
+    return constructInsertQuery( table, fieldNames, 1 );
+    }
+
+  /**
+   * Constructs the query used as the prepared statement to insert the given number of rows at once with a
+   * multi-row VALUES list. Subclasses appending a clause to the insert query should override this method.
+   *
+   * @param table the table to insert into
+   * @param fieldNames the fields to insert into. If field names are unknown,
+   *          supply an array of nulls.
+   * @param rows the number of rows inserted by the statement
+   */
+  protected String constructInsertQuery( String table, String[] fieldNames, int rows )
     {
     if( fieldNames == null )
       throw new IllegalArgumentException( "Field names may not be null" );
@@ -235,14 +637,21 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
         }
       query.append( ")" );
       }
-    query.append( " VALUES (" );
-    for( int i = 0; i < fieldNames.length; i++ )
+    query.append( " VALUES " );
+    for( int row = 0; row < rows; row++ )
       {
-      query.append( "?" );
-      if( i != fieldNames.length - 1 )
+      if( row != 0 )
         query.append( "," );
+
+      query.append( "(" );
+      for( int i = 0; i < fieldNames.length; i++ )
+        {
+        query.append( "?" );
+        if( i != fieldNames.length - 1 )
+          query.append( "," );
+        }
+      query.append( ")" );
       }
-    query.append( ")" );
 
     return query.toString();
     }
@@ -293,6 +702,117 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
     return query.toString();
     }
 
+  /**
+   * Constructs the query used as the prepared statement to insert a row, or to update the row with the same
+   * values of the given key columns, with a single statement. The parameters are bound in the order of the
+   * update statement, see {@link #getUpsertNames(String[], String[])}.
+   * <p/>
+   * This is a standard SQL MERGE, as supported by Teradata. Subclasses override it with the upsert statement of
+   * their database, like H2DBOutputFormat with the MERGE ... KEY of H2.
+   *
+   * @param table the table to upsert into
+   * @param fieldNames the fields to upsert
+   * @param updateNames the key fields identifying the row to update
+   */
+  protected String constructUpsertQuery( String table, String[] fieldNames, String[] updateNames )
+    {
+    String[] names = getUpsertNames( fieldNames, updateNames );
+    String[] valueNames = Arrays.copyOf( names, names.length - updateNames.length );
+
+    StringBuilder query = new StringBuilder();
+
+    query.append( "MERGE INTO " ).append( table ).append( " tgt USING ( " ).append( constructMergeSource( names ) ).append( " ) src ON ( " );
+    for( int i = 0; i < updateNames.length; i++ )
+      {
+      if( i != 0 )
+        query.append( " AND " );
+
+      query.append( "tgt." ).append( updateNames[ i ] ).append( " = src." ).append( updateNames[ i ] );
+      }
+    query.append( " )" );
+
+    if( valueNames.length != 0 )
+      {
+      query.append( " WHEN MATCHED THEN UPDATE SET " );
+      for( int i = 0; i < valueNames.length; i++ )
+        {
+        if( i != 0 )
+          query.append( "," );
+
+        query.append( valueNames[ i ] ).append( " = src." ).append( valueNames[ i ] );
+        }
+      }
+
+    query.append( " WHEN NOT MATCHED THEN INSERT (" );
+    for( int i = 0; i < names.length; i++ )
+      {
+      if( i != 0 )
+        query.append( "," );
+
+      query.append( names[ i ] );
+      }
+    query.append( ") VALUES (" );
+    for( int i = 0; i < names.length; i++ )
+      {
+      if( i != 0 )
+        query.append( "," );
+
+      query.append( "src." ).append( names[ i ] );
+      }
+    query.append( ")" );
+
+    return query.toString();
+    }
+
+  /**
+   * Constructs the single row query the MERGE statement of {@link #constructUpsertQuery} merges from, selecting a
+   * parameter for every given column. Databases requiring a FROM clause should override it.
+   *
+   * @param names the columns to select, in the order of the parameters
+   */
+  protected String constructMergeSource( String[] names )
+    {
+    StringBuilder query = new StringBuilder( "SELECT " );
+
+    for( int i = 0; i < names.length; i++ )
+      {
+      if( i != 0 )
+        query.append( ", " );
+
+      query.append( "? AS " ).append( names[ i ] );
+      }
+
+    return query.toString();
+    }
+
+  /**
+   * Returns the columns of an upsert in the order its parameters are bound, which is the order of the update
+   * statement: the columns not part of the key first, then the key columns.
+   *
+   * @param fieldNames the fields to upsert
+   * @param updateNames the key fields identifying the row to update
+   */
+  protected static String[] getUpsertNames( String[] fieldNames, String[] updateNames )
+    {
+    if( fieldNames == null || updateNames == null || updateNames.length == 0 )
+      throw new IllegalArgumentException( "an upsert requires field names and update names" );
+
+    Set<String> updateNamesSet = new HashSet<String>();
+    Collections.addAll( updateNamesSet, updateNames );
+
+    List<String> names = new ArrayList<String>();
+
+    for( String fieldName : fieldNames )
+      {
+      if( !updateNamesSet.contains( fieldName ) )
+        names.add( fieldName );
+      }
+
+    Collections.addAll( names, updateNames );
+
+    return names.toArray( new String[ names.size() ] );
+    }
+
   /** {@inheritDoc} */
   public void checkOutputSpecs( FileSystem filesystem, JobConf job ) throws IOException
     {
@@ -308,36 +828,103 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
     String[] updateNames = dbConf.getOutputUpdateFieldNames();
     int batchStatements = dbConf.getBatchStatementsNum();
 
+    String sqlInsert = constructInsertQuery( tableName, fieldNames );
+    String sqlUpdate = updateNames != null ? constructUpdateQuery( tableName, fieldNames, updateNames ) : null;
+
+    int insertRows = dbConf.getOutputInsertRows();
+
+    // every row is written by the upsert statement in place of the insert statement
+    if( dbConf.getOutputUpsert() )
+      {
+      sqlInsert = constructUpsertQuery( tableName, fieldNames, updateNames );
+      sqlUpdate = null;
+
+      if( insertRows > 1 )
+        LOG.warn( "ignoring " + insertRows + " rows per insert statement, upserts are written row by row" );
+
+      insertRows = 1;
+      }
+
+    // the parameters of all rows of a statement have to stay within the limit of the driver
+    if( insertRows > 1 && (long) insertRows * fieldNames.length > getMaxParameters() )
+      {
+      int maxRows = Math.max( 1, getMaxParameters() / Math.max( 1, fieldNames.length ) );
+
+      LOG.warn( "reducing " + insertRows + " rows per insert statement of " + fieldNames.length + " columns to " + maxRows
+        + ", the driver allows " + getMaxParameters() + " parameters per statement" );
+
+      insertRows = maxRows;
+      }
+
+    String sqlMultiRowInsert = insertRows > 1 ? constructInsertQuery( tableName, fieldNames, insertRows ) : null;
+
+    BatchSizer batchSizer = new BatchSizer( batchStatements );
+
+    if( dbConf.getOutputBatchAdaptive() )
+      batchSizer = new BatchSizer( batchStatements, dbConf.getOutputBatchMin(), dbConf.getOutputBatchMax(),
+        dbConf.getOutputBatchTargetMillis() );
+
+    StatementBatch batch = createStatementBatch( dbConf, sqlInsert, sqlUpdate, sqlMultiRowInsert, tableName, fieldNames, insertRows );
+
+    if( !dbConf.getOutputAsyncFlush() )
+      return new DBRecordWriter( batch, null, batchSizer, tableName );
+
+    // the batches are executed alternately on a second connection
+    StatementBatch flushBatch = createStatementBatch( dbConf, sqlInsert, sqlUpdate, sqlMultiRowInsert, tableName, fieldNames, insertRows );
+
+    return new DBRecordWriter( batch, flushBatch, batchSizer, tableName );
+    }
+
+  private StatementBatch createStatementBatch( DBConfiguration dbConf, String sqlInsert, String sqlUpdate, String sqlMultiRowInsert,
+      String tableName, String[] fieldNames, int insertRows ) throws IOException
+    {
     Connection connection = dbConf.getConnection();
 
     configureConnection( connection );
 
-    String sqlInsert = constructInsertQuery( tableName, fieldNames );
-    PreparedStatement insertPreparedStatement;
+    PreparedStatement updatePreparedStatement = prepareUpdateStatement( connection, sqlUpdate );
+
+    if( sqlMultiRowInsert == null )
+      return new StatementBatch( connection, prepareInsertStatement( connection, sqlInsert ), updatePreparedStatement );
+
+    PreparedStatement multiRowPreparedStatement = prepareInsertStatement( connection, sqlMultiRowInsert );
 
+    return new StatementBatch( connection, null, updatePreparedStatement, multiRowPreparedStatement, tableName, fieldNames, insertRows );
+    }
+
+  /**
+   * Returns the largest number of parameters the driver binds to a single statement, which limits the rows
+   * per multi-row insert statement. Many drivers send the number of parameters as a signed 16 bit value.
+   */
+  protected int getMaxParameters()
+    {
+    return Short.MAX_VALUE;
+    }
+
+  private PreparedStatement prepareInsertStatement( Connection connection, String sqlInsert ) throws IOException
+    {
     try
       {
-      insertPreparedStatement = connection.prepareStatement( sqlInsert );
+      PreparedStatement insertPreparedStatement = connection.prepareStatement( sqlInsert );
       insertPreparedStatement.setEscapeProcessing( true ); // should be on by default
+      return insertPreparedStatement;
       }
     catch ( SQLException exception )
       {
       throw new IOException( "unable to create statement for: " + sqlInsert, exception );
       }
+    }
 
-    String sqlUpdate = updateNames != null ? constructUpdateQuery( tableName, fieldNames, updateNames ) : null;
-    PreparedStatement updatePreparedStatement = null;
-
+  private PreparedStatement prepareUpdateStatement( Connection connection, String sqlUpdate ) throws IOException
+    {
     try
       {
-      updatePreparedStatement = sqlUpdate != null ? connection.prepareStatement( sqlUpdate ) : null;
+      return sqlUpdate != null ? connection.prepareStatement( sqlUpdate ) : null;
       }
     catch ( SQLException exception )
       {
       throw new IOException( "unable to create statement for: " + sqlUpdate, exception );
       }
-
-    return new DBRecordWriter( connection, insertPreparedStatement, updatePreparedStatement, batchStatements );
     }
 
   protected void configureConnection( Connection connection )
@@ -389,4 +976,69 @@ public class DBOutputFormat<K extends DBWritable, V> implements OutputFormat<K,
     if( batchSize != -1 )
       dbConf.setBatchStatementsNum( batchSize );
     }
+
+  /**
+   * Executes and commits every full batch on a background thread using a second connection, while the
+   * next batch is being filled.
+   *
+   * @param job The job
+   * @param asyncFlush true to execute the batches in the background
+   */
+  public static void setAsyncFlush( JobConf job, boolean asyncFlush )
+    {
+    new DBConfiguration( job ).setOutputAsyncFlush( asyncFlush );
+    }
+
+  /**
+   * Inserts the given number of rows with a single multi-row INSERT ... VALUES (...),(...) statement. The
+   * database has to support multi-row VALUES lists and the written records have to implement
+   * {@link MultiRowDBWritable}. The number of rows is reduced if the parameters of all rows would exceed
+   * {@link #getMaxParameters()}.
+   *
+   * @param job The job
+   * @param insertRows the number of rows per insert statement, 1 inserts every row with its own statement
+   */
+  public static void setInsertRows( JobConf job, int insertRows )
+    {
+    new DBConfiguration( job ).setOutputInsertRows( insertRows );
+    }
+
+  /**
+   * Writes every row with a single statement inserting the row, or updating the row with the same values of
+   * the update fields given to {@link #setOutput}, see {@link #constructUpsertQuery(String, String[], String[])}.
+   * The values of a row have to be in the order of the update statement, and the update fields have to be a
+   * unique key of the table.
+   *
+   * @param job The job
+   * @param upsert true to upsert the rows
+   */
+  public static void setUpsert( JobConf job, boolean upsert )
+    {
+    new DBConfiguration( job ).setOutputUpsert( upsert );
+    }
+
+  /**
+   * Adapts the number of rows per batch to the time every batch takes, starting at the batch size given to
+   * {@link #setOutput}. The batch grows by the minimum batch size while the batches execute within the target
+   * time without losing throughput, and is halved otherwise.
+   *
+   * @param job The job
+   * @param minBatchSize the smallest number of rows per batch
+   * @param maxBatchSize the largest number of rows per batch
+   * @param targetMillis the milliseconds a batch may take before it is shrunk, -1 for the default of 2000
+   */
+  public static void setAdaptiveBatchSize( JobConf job, int minBatchSize, int maxBatchSize, long targetMillis )
+    {
+    if( minBatchSize < 1 || maxBatchSize < minBatchSize )
+      throw new IllegalArgumentException( "invalid batch size bounds, min: " + minBatchSize + " max: " + maxBatchSize );
+
+    DBConfiguration dbConf = new DBConfiguration( job );
+
+    dbConf.setOutputBatchAdaptive( true );
+    dbConf.setOutputBatchMin( minBatchSize );
+    dbConf.setOutputBatchMax( maxBatchSize );
+
+    if( targetMillis != -1 )
+      dbConf.setOutputBatchTargetMillis( targetMillis );
+    }
   }
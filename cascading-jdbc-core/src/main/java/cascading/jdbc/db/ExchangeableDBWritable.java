@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+/**
+ * A {@link DBWritable} that can swap its decoded fields with another instance of the same type.
+ * <p/>
+ * This allows {@link DBInputFormat} to decode rows ahead of the reader on a separate thread and to hand
+ * them over without copying or allocating.
+ */
+public interface ExchangeableDBWritable<T extends DBWritable> extends DBWritable
+  {
+  /**
+   * Swaps the fields of this instance with the fields of the given instance.
+   *
+   * @param other the instance to exchange the fields with
+   */
+  void exchange( T other );
+  }
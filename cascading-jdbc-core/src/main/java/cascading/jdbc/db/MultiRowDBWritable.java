@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A {@link DBWritable} that can write its fields at an offset of the statement parameters, as needed by
+ * statements inserting several rows at once.
+ *
+ * @see DBOutputFormat#setInsertRows(org.apache.hadoop.mapred.JobConf, int)
+ */
+public interface MultiRowDBWritable extends DBWritable
+  {
+  /**
+   * Sets the fields of this instance as the parameters following the given offset.
+   *
+   * @param statement the statement to set the parameters of
+   * @param offset the number of parameters before the first field, 0 for the first row
+   */
+  void write( PreparedStatement statement, int offset ) throws SQLException;
+
+  /**
+   * Returns a copy holding the current fields of this instance, which is kept while the instance itself is
+   * reused for the next row.
+   */
+  MultiRowDBWritable copy();
+  }
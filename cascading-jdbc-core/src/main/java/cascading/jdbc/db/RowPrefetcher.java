@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class RowPrefetcher drains a {@link ResultSet} on a background thread into a bounded ring of decoded rows,
+ * so that the round trips to the database overlap with the processing of the rows already read.
+ * <p/>
+ * Rows taken from the prefetcher have to be released once their fields have been exchanged, the ring never
+ * grows beyond the rows given at construction time.
+ */
+class RowPrefetcher<T extends DBWritable> implements Runnable
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( RowPrefetcher.class );
+
+  private final ResultSet results;
+  private final BlockingQueue<T> free;
+  private final BlockingQueue<T> filled;
+  private final T endOfInput;
+  private final Thread thread;
+
+  private volatile Throwable failure;
+  private volatile boolean closed;
+
+  /**
+   * @param results the result set to drain, it must not be touched by anyone else once started
+   * @param rows the reusable rows of the ring
+   * @param endOfInput an instance not contained in rows, marking the end of the input
+   * @param name the name of the background thread
+   */
+  RowPrefetcher( ResultSet results, List<T> rows, T endOfInput, String name )
+    {
+    this.results = results;
+    this.free = new ArrayBlockingQueue<T>( rows.size(), false, rows );
+    this.filled = new ArrayBlockingQueue<T>( rows.size() + 1 );
+    this.endOfInput = endOfInput;
+    this.thread = new Thread( this, name );
+    this.thread.setDaemon( true );
+    }
+
+  void start()
+    {
+    LOG.info( "prefetching up to {} rows", free.remainingCapacity() + free.size() );
+    thread.start();
+    }
+
+  @Override
+  public void run()
+    {
+    try
+      {
+      while( !closed )
+        {
+        T row = free.take();
+
+        if( !results.next() )
+          break;
+
+        row.readFields( results );
+        filled.put( row );
+        }
+      }
+    catch( InterruptedException exception )
+      {
+      // closed before the end of the input
+      }
+    catch( Throwable throwable )
+      {
+      failure = throwable;
+      }
+    finally
+      {
+      filled.offer( endOfInput );
+      }
+    }
+
+  /**
+   * Returns the next decoded row, or null at the end of the input.
+   *
+   * @throws IOException if reading from the result set failed
+   */
+  T take() throws IOException
+    {
+    T row;
+
+    try
+      {
+      row = filled.take();
+      }
+    catch( InterruptedException exception )
+      {
+      Thread.currentThread().interrupt();
+      throw new IOException( "interrupted while waiting for the next row", exception );
+      }
+
+    if( row != endOfInput )
+      return row;
+
+    // answer every further call with the end of the input as well
+    filled.offer( endOfInput );
+
+    if( failure != null )
+      throw new IOException( "unable to get next value", failure );
+
+    return null;
+    }
+
+  /** Hands a row taken from this prefetcher back to the ring. */
+  void release( T row )
+    {
+    free.offer( row );
+    }
+
+  /** Stops the background thread, after which the result set may be closed. */
+  void close() throws IOException
+    {
+    closed = true;
+    thread.interrupt();
+
+    try
+      {
+      thread.join();
+      }
+    catch( InterruptedException exception )
+      {
+      Thread.currentThread().interrupt();
+      throw new IOException( "interrupted while stopping the prefetching thread", exception );
+      }
+    }
+  }
@@ -23,6 +23,8 @@ package cascading.jdbc;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -257,7 +259,22 @@ public class JDBCFactoryTest
 
     }
 
-  @Test(expected = IllegalArgumentException.class)
+  @Test
+  public void testCreateSchemeWithUpsert()
+    {
+    JDBCFactory factory = new JDBCFactory();
+    Fields fields = new Fields( "one", "two", "three" );
+
+    Properties schemeProperties = new Properties();
+    schemeProperties.setProperty( JDBCFactory.FORMAT_UPDATE_BY, "one" );
+    schemeProperties.setProperty( JDBCFactory.FORMAT_UPSERT, "true" );
+
+    JDBCScheme jdbcScheme = (JDBCScheme) factory.createScheme( "someFormat", fields, schemeProperties );
+
+    assertTrue( jdbcScheme.isUpsert() );
+    }
+
+  @Test
   public void testCreateSchemeWithSelectNoCount()
     {
     JDBCFactory factory = new JDBCFactory();
@@ -266,8 +283,11 @@ public class JDBCFactoryTest
     Properties schemeProperties = new Properties();
     schemeProperties.setProperty( JDBCFactory.FORMAT_COLUMNS, "one:two:three" );
     schemeProperties.setProperty( JDBCFactory.FORMAT_SELECT_QUERY, "select one, two, three from table" );
+    schemeProperties.setProperty( JDBCFactory.FORMAT_SPLIT_PREDICATES, "one < 10;one >= 10 OR one IS NULL" );
 
-    factory.createScheme( "someFormat", fields, schemeProperties );
+    JDBCScheme scheme = (JDBCScheme) factory.createScheme( "someFormat", fields, schemeProperties );
+    assertNotNull( scheme );
+    assertArrayEquals( new String[]{"one < 10", "one >= 10 OR one IS NULL"}, scheme.getSplitPredicates() );
     }
 
   @Test
@@ -291,4 +311,31 @@ public class JDBCFactoryTest
     assertEquals(DBInputFormat.class, new JDBCFactory().getInputFormatClass());
     }
 
+  @Test
+  public void testCreateTapModifiedTimeQuery()
+    {
+    String protocol = "jdbc";
+    String identifier = "jdbc:some:stuf//database";
+    JDBCScheme mockScheme = mock( JDBCScheme.class );
+
+    JDBCFactory factory = new JDBCFactory();
+
+    Properties props = new Properties();
+    props.setProperty( JDBCFactory.PROTOCOL_JDBC_DRIVER, "some.Driver" );
+    props.setProperty( JDBCFactory.PROTOCOL_TABLE_NAME, "myTable" );
+    props.setProperty( JDBCFactory.PROTOCOL_COLUMN_NAMES, "id:name:lastname" );
+    props.setProperty( JDBCFactory.PROTOCOL_COLUMN_DEFS, "int:varchar(42):varchar(23)" );
+
+    JDBCTap tap = (JDBCTap) factory.createTap( protocol, mockScheme, identifier, SinkMode.KEEP, props );
+    assertNull( tap.getModifiedTimeQuery() );
+
+    props.setProperty( JDBCFactory.PROTOCOL_MODIFIED_BY, "updated_at" );
+    tap = (JDBCTap) factory.createTap( protocol, mockScheme, identifier, SinkMode.KEEP, props );
+    assertEquals( "SELECT MAX(updated_at) FROM myTable", tap.getModifiedTimeQuery() );
+
+    props.setProperty( JDBCFactory.PROTOCOL_MODIFIED_TIME_QUERY, "select max(version) from changes" );
+    tap = (JDBCTap) factory.createTap( protocol, mockScheme, identifier, SinkMode.KEEP, props );
+    assertEquals( "select max(version) from changes", tap.getModifiedTimeQuery() );
+    }
+
   }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.FunctionCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+public class JDBCLookupTest
+  {
+  private final Fields argumentFields = new Fields( "order_id", "customer_id" );
+  private final List<List<Tuple>> lookups = new ArrayList<List<Tuple>>();
+
+  /** Looks up the customers 1 and 2, with keys read back as longs like a BIGINT column */
+  private JDBCLookup createLookup()
+    {
+    JDBCTap tap = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "customers", mock( JDBCScheme.class ) );
+
+    return new JDBCLookup( tap, argumentFields, new Fields( "customer_id" ), new Fields( "name" ) )
+      {
+      @Override
+      Map<Tuple, List<Tuple>> lookup( LookupContext context, Iterable<Tuple> keys )
+        {
+        List<Tuple> batch = new ArrayList<Tuple>();
+        Map<Tuple, List<Tuple>> found = new HashMap<Tuple, List<Tuple>>();
+
+        for( Tuple key : keys )
+          {
+          batch.add( key );
+
+          if( key.getLong( 0 ) <= 2 )
+            found.put( normalize( new Tuple( key.getLong( 0 ) ) ), Arrays.asList( new Tuple( "customer" + key.getLong( 0 ) ) ) );
+          }
+
+        lookups.add( batch );
+
+        return found;
+        }
+      };
+    }
+
+  @SuppressWarnings("unchecked")
+  private List<Tuple> operate( JDBCLookup lookup, Object[]... arguments )
+    {
+    FlowProcess flowProcess = mock( FlowProcess.class );
+    FunctionCall<JDBCLookup.LookupContext> call = mock( FunctionCall.class );
+    TupleEntryCollector collector = mock( TupleEntryCollector.class );
+    TupleEntry entry = new TupleEntry( argumentFields );
+
+    when( call.getContext() ).thenReturn( new JDBCLookup.LookupContext( lookup.getCacheSize() ) );
+    when( call.getArguments() ).thenReturn( entry );
+    when( call.getOutputCollector() ).thenReturn( collector );
+
+    for( Object[] values : arguments )
+      {
+      entry.setTuple( new Tuple( values ) );
+      lookup.operate( flowProcess, call );
+      }
+
+    lookup.flush( flowProcess, call );
+
+    ArgumentCaptor<Tuple> emitted = ArgumentCaptor.forClass( Tuple.class );
+    verify( collector, atLeast( 0 ) ).add( emitted.capture() );
+
+    return emitted.getAllValues();
+    }
+
+  @Test
+  public void testBatchedLookup()
+    {
+    JDBCLookup lookup = createLookup();
+    lookup.setBatchSize( 2 );
+
+    List<Tuple> emitted = operate( lookup, new Object[]{10, 1}, new Object[]{11, 2}, new Object[]{12, 1}, new Object[]{13, 3} );
+
+    assertEquals( 2, lookups.size() );
+    assertEquals( Arrays.asList( new Tuple( 1 ), new Tuple( 2 ) ), lookups.get( 0 ) );
+    assertEquals( Arrays.asList( new Tuple( 3 ) ), lookups.get( 1 ) );
+
+    assertEquals( 3, emitted.size() );
+    assertEquals( new Tuple( 10, 1, "customer1" ), emitted.get( 0 ) );
+    assertEquals( new Tuple( 11, 2, "customer2" ), emitted.get( 1 ) );
+    assertEquals( new Tuple( 12, 1, "customer1" ), emitted.get( 2 ) );
+    }
+
+  @Test
+  public void testOuterLookupWithoutCache()
+    {
+    JDBCLookup lookup = createLookup();
+    lookup.setOuter( true );
+    lookup.setCacheSize( 0 );
+    lookup.setBatchSize( 1 );
+
+    List<Tuple> emitted = operate( lookup, new Object[]{10, 1}, new Object[]{11, 3}, new Object[]{12, 1} );
+
+    assertEquals( 3, lookups.size() );
+    assertEquals( 3, emitted.size() );
+    assertEquals( new Tuple( 10, 1, "customer1" ), emitted.get( 0 ) );
+    assertEquals( new Tuple( 11, 3, null ), emitted.get( 1 ) );
+    assertEquals( new Tuple( 12, 1, "customer1" ), emitted.get( 2 ) );
+    }
+
+  @Test
+  public void testLookupQuery()
+    {
+    JDBCTap tap = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "orders", mock( JDBCScheme.class ) );
+    JDBCLookup lookup = new JDBCLookup( tap, new Fields( "region", "number", "total" ), new Fields( "region", "number" ),
+      new String[]{"region", "order_no"}, new Fields( "status" ), new String[]{"status"} );
+
+    assertEquals( "SELECT region, order_no, status FROM orders WHERE (region = ? AND order_no = ?) OR (region = ? AND order_no = ?)",
+      lookup.constructLookupQuery( 2 ) );
+    assertEquals( "SELECT customer_id, name FROM customers WHERE customer_id IN (?,?,?)", createLookup().constructLookupQuery( 3 ) );
+    }
+  }
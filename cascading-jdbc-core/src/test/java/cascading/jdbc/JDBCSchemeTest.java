@@ -23,13 +23,23 @@ package cascading.jdbc;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import cascading.flow.FlowProcess;
+import cascading.jdbc.db.DBConfiguration;
 import cascading.jdbc.db.DBInputFormat;
 import cascading.jdbc.db.DBOutputFormat;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.TapException;
 import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
 
 public class JDBCSchemeTest
   {
@@ -112,4 +122,201 @@ public class JDBCSchemeTest
 
     }
 
+    @SuppressWarnings("unchecked")
+  @Test
+  public void testSourceReusesTuple() throws Exception
+    {
+    JDBCScheme scheme = new JDBCScheme( new Fields( "id", "name" ), new String[]{ "id", "name" } );
+
+    RecordReader<LongWritable, TupleRecord> reader = mock( RecordReader.class );
+    when( reader.createKey() ).thenReturn( new LongWritable() );
+    when( reader.createValue() ).thenReturn( new TupleRecord( new Tuple( 1, "one" ) ) );
+    when( reader.next( any( LongWritable.class ), any( TupleRecord.class ) ) ).thenReturn( true, true, false );
+
+    TupleEntry incoming = new TupleEntry( scheme.getSourceFields() );
+    SourceCall<Object[], RecordReader> sourceCall = mock( SourceCall.class );
+    when( sourceCall.getInput() ).thenReturn( reader );
+    when( sourceCall.getIncomingEntry() ).thenReturn( incoming );
+
+    scheme.sourcePrepare( null, sourceCall );
+
+    ArgumentCaptor<Object[]> context = ArgumentCaptor.forClass( Object[].class );
+    verify( sourceCall ).setContext( context.capture() );
+    when( sourceCall.getContext() ).thenReturn( context.getValue() );
+
+    assertTrue( scheme.source( null, sourceCall ) );
+    Tuple first = incoming.getTuple();
+    assertEquals( new Tuple( 1, "one" ), first );
+
+    assertTrue( scheme.source( null, sourceCall ) );
+    assertSame( first, incoming.getTuple() );
+
+    assertFalse( scheme.source( null, sourceCall ) );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testSourceProjection() throws Exception
+    {
+    JDBCScheme scheme = new JDBCScheme( new Fields( "id", "name", "bio" ), new String[]{ "ID", "NAME", "BIO" } );
+    scheme.setProjection( new Fields( "bio", "id" ) );
+
+    assertEquals( new Fields( "bio", "id" ), scheme.getSourceFields() );
+    assertEquals( new Fields( "id", "name", "bio" ), scheme.getSinkFields() );
+
+    JobConf conf = new JobConf();
+    JDBCTap tap = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "people", scheme );
+    scheme.sourceConfInit( null, tap, conf );
+
+    assertArrayEquals( new String[]{ "BIO", "ID" }, conf.getStrings( DBConfiguration.INPUT_FIELD_NAMES_PROPERTY ) );
+
+    RecordReader<LongWritable, TupleRecord> reader = mock( RecordReader.class );
+    when( reader.createKey() ).thenReturn( new LongWritable() );
+    when( reader.createValue() ).thenReturn( new TupleRecord( new Tuple( "long text", 1 ) ) );
+    when( reader.next( any( LongWritable.class ), any( TupleRecord.class ) ) ).thenReturn( true );
+
+    TupleEntry incoming = new TupleEntry( scheme.getSourceFields() );
+    SourceCall<Object[], RecordReader> sourceCall = mock( SourceCall.class );
+    when( sourceCall.getInput() ).thenReturn( reader );
+    when( sourceCall.getIncomingEntry() ).thenReturn( incoming );
+
+    scheme.sourcePrepare( null, sourceCall );
+
+    ArgumentCaptor<Object[]> context = ArgumentCaptor.forClass( Object[].class );
+    verify( sourceCall ).setContext( context.capture() );
+    when( sourceCall.getContext() ).thenReturn( context.getValue() );
+
+    assertTrue( scheme.source( null, sourceCall ) );
+    assertEquals( new Tuple( "long text", 1 ), incoming.getTuple() );
+    }
+
+  @Test
+  public void testPresentSourceFieldsProjects()
+    {
+    JDBCScheme scheme = new JDBCScheme( new Fields( "id", "name", "bio" ), new String[]{ "ID", "NAME", "BIO" } );
+
+    scheme.presentSourceFields( null, null, new Fields( "id", "name", "bio" ) );
+    assertNull( scheme.getProjection() );
+
+    scheme.presentSourceFields( null, null, new Fields( "name" ) );
+    assertEquals( new Fields( "name" ), scheme.getProjection() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProjectionOfUnknownField()
+    {
+    JDBCScheme scheme = new JDBCScheme( new Fields( "id", "name" ), new String[]{ "ID", "NAME" } );
+    scheme.setProjection( new Fields( "age" ) );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testSinkReusesRecord() throws Exception
+    {
+    Fields fields = new Fields( "id", "name" );
+    JDBCScheme scheme = new JDBCScheme( fields, new String[]{ "id", "name" }, null, new Fields( "id" ), new String[]{ "id" } );
+
+    TupleEntry outgoing = new TupleEntry( fields );
+    OutputCollector<TupleRecord, TupleRecord> collector = mock( OutputCollector.class );
+    SinkCall<Object[], OutputCollector> sinkCall = mock( SinkCall.class );
+    when( sinkCall.getOutgoingEntry() ).thenReturn( outgoing );
+    when( sinkCall.getOutput() ).thenReturn( collector );
+
+    scheme.sinkPrepare( null, sinkCall );
+
+    ArgumentCaptor<Object[]> context = ArgumentCaptor.forClass( Object[].class );
+    verify( sinkCall ).setContext( context.capture() );
+    when( sinkCall.getContext() ).thenReturn( context.getValue() );
+
+    outgoing.setTuple( new Tuple( 1, "one" ) );
+    scheme.sink( null, sinkCall );
+
+    ArgumentCaptor<TupleRecord> key = ArgumentCaptor.forClass( TupleRecord.class );
+    ArgumentCaptor<TupleRecord> value = ArgumentCaptor.forClass( TupleRecord.class );
+    verify( collector ).collect( key.capture(), value.capture() );
+
+    TupleRecord record = key.getValue();
+    assertSame( record, value.getValue() );
+    assertEquals( new Tuple( "one", 1 ), record.getTuple() );
+
+    // a null update by value inserts the row
+    outgoing.setTuple( new Tuple( null, "two" ) );
+    scheme.sink( null, sinkCall );
+
+    verify( collector ).collect( record, null );
+    assertEquals( new Tuple( "two", null ), record.getTuple() );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testSinkUpserts() throws Exception
+    {
+    Fields fields = new Fields( "id", "name" );
+    JDBCScheme scheme = new JDBCScheme( fields, new String[]{ "id", "name" }, null, new Fields( "id" ), new String[]{ "id" } );
+    scheme.setUpsert( true );
+
+    TupleEntry outgoing = new TupleEntry( fields );
+    OutputCollector<TupleRecord, TupleRecord> collector = mock( OutputCollector.class );
+    SinkCall<Object[], OutputCollector> sinkCall = mock( SinkCall.class );
+    when( sinkCall.getOutgoingEntry() ).thenReturn( outgoing );
+    when( sinkCall.getOutput() ).thenReturn( collector );
+
+    scheme.sinkPrepare( null, sinkCall );
+
+    ArgumentCaptor<Object[]> context = ArgumentCaptor.forClass( Object[].class );
+    verify( sinkCall ).setContext( context.capture() );
+    when( sinkCall.getContext() ).thenReturn( context.getValue() );
+
+    outgoing.setTuple( new Tuple( 1, "one" ) );
+    scheme.sink( null, sinkCall );
+
+    // every row is written by the upsert statement, in the order of the update statement
+    ArgumentCaptor<TupleRecord> key = ArgumentCaptor.forClass( TupleRecord.class );
+    verify( collector ).collect( key.capture(), (TupleRecord) isNull() );
+    assertEquals( new Tuple( "one", 1 ), key.getValue().getTuple() );
+
+    JobConf conf = new JobConf();
+    JDBCTap tap = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "orders", scheme );
+    scheme.sinkConfInit( null, tap, conf );
+
+    assertTrue( conf.getBoolean( DBConfiguration.OUTPUT_UPSERT, false ) );
+    }
+
+  @Test
+  public void testStagedSinkWritesStagingTable()
+    {
+    JDBCScheme scheme = new JDBCScheme( new Fields( "id", "name" ), new String[]{ "id", "name" } );
+    JDBCTap tap = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "orders", scheme );
+    tap.setStagingTableName( "orders_staging" );
+
+    JobConf conf = new JobConf();
+    scheme.sinkConfInit( null, tap, conf );
+
+    // every load has a staging table of its own
+    String stagingTable = conf.get( DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY );
+    assertTrue( stagingTable.matches( "orders_staging_[0-9a-f]{8}" ) );
+    assertEquals( stagingTable, tap.getSinkTableName() );
+    assertEquals( "orders_staging", tap.getStagingTableName() );
+
+    JDBCTap other = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "orders", scheme );
+    other.setStagingTableName( "orders_staging" );
+    assertFalse( stagingTable.equals( other.getSinkTableName() ) );
+    }
+
+  @Test(expected = TapException.class)
+  public void testStagedSinkDoesNotUpdate()
+    {
+    JDBCScheme scheme = new JDBCScheme( new Fields( "id", "name" ), new String[]{ "id", "name" }, null, new Fields( "id" ), new String[]{ "id" } );
+    JDBCTap tap = new JDBCTap( "jdbc:test", null, null, "java.lang.Object", "orders", scheme );
+    tap.setStagingTableName( "orders_staging" );
+
+    scheme.sinkConfInit( null, tap, new JobConf() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUpsertRequiresUpdateBy()
+    {
+    new JDBCScheme( new Fields( "id", "name" ), new String[]{ "id", "name" } ).setUpsert( true );
+    }
+
   }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cascading.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+import cascading.jdbc.db.DBConfiguration;
+
+import cascading.tap.TapException;
+
+public class JDBCTapTest
+  {
+  private final List<Object> versions = new ArrayList<Object>();
+
+  /** Returns the versions in turn, and fails if the tap writes to the database */
+  private JDBCTap createTap( String connectionUrl )
+    {
+    JDBCTap tap = new JDBCTap( connectionUrl, null, null, "java.lang.Object", "orders", mock( JDBCScheme.class ) )
+      {
+      @Override
+      public List<Object[]> executeQuery( String queryString, int returnResults ) throws SQLException
+        {
+        Object version = versions.remove( 0 );
+
+        if( version instanceof RuntimeException )
+          throw (RuntimeException) version;
+
+        return Collections.singletonList( new Object[]{ version } );
+        }
+
+      @Override
+      public int executeUpdate( String updateString )
+        {
+        throw new AssertionError( "unexpected update: " + updateString );
+        }
+      };
+
+    tap.setModifiedTimeQuery( "SELECT version FROM changes" );
+
+    return tap;
+    }
+
+  @Test
+  public void testModifiedTimeOfVersion() throws Exception
+    {
+    JDBCTap tap = createTap( "jdbc:version" );
+    JobConf conf = new JobConf();
+
+    versions.add( new BigDecimal( "7" ) );
+    versions.add( new BigDecimal( "7" ) );
+    versions.add( new BigDecimal( "8" ) );
+
+    long first = tap.getModifiedTime( conf );
+    Thread.sleep( 5 );
+
+    assertEquals( first, tap.getModifiedTime( conf ) );
+    assertTrue( tap.getModifiedTime( conf ) > first );
+
+    // the versions are kept per database and table
+    versions.add( new BigDecimal( "8" ) );
+    assertTrue( createTap( "jdbc:other" ).getModifiedTime( conf ) > first );
+    }
+
+  @Test
+  public void testModifiedTimeOfVersionAcrossRuns() throws Exception
+    {
+    File file = File.createTempFile( "versions", ".properties" );
+    file.delete();
+
+    JobConf conf = new JobConf();
+    conf.set( DBConfiguration.VERSION_TIMES_PATH_PROPERTY, file.toURI().toString() );
+
+    versions.add( "42" );
+    versions.add( "42" );
+    versions.add( "42" );
+
+    long first = createTap( "jdbc:persisted" ).getModifiedTime( conf );
+    Thread.sleep( 5 );
+
+    // not kept in memory, a later run reads the time from the file
+    assertTrue( file.exists() );
+    assertEquals( first, createTap( "jdbc:persisted" ).getModifiedTime( conf ) );
+    assertTrue( createTap( "jdbc:persisted" ).getModifiedTime( new JobConf() ) > first );
+
+    file.delete();
+    }
+
+  @Test
+  public void testUnreadableSourceIsModified() throws Exception
+    {
+    JDBCTap tap = createTap( "jdbc:unreadable" );
+
+    versions.add( new TapException( "permission denied" ) );
+
+    long before = System.currentTimeMillis();
+    assertTrue( tap.getModifiedTime( new JobConf() ) >= before );
+    }
+  }
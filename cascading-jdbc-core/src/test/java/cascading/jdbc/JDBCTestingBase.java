@@ -26,6 +26,7 @@ import java.util.Properties;
 
 import cascading.flow.Flow;
 import cascading.flow.hadoop.HadoopFlowConnector;
+import cascading.flow.local.LocalFlowConnector;
 import cascading.jdbc.db.DBInputFormat;
 import cascading.jdbc.db.DBWritable;
 import cascading.operation.Identity;
@@ -37,6 +38,7 @@ import cascading.scheme.hadoop.TextLine;
 import cascading.tap.SinkMode;
 import cascading.tap.Tap;
 import cascading.tap.hadoop.Hfs;
+import cascading.tap.local.FileTap;
 import cascading.tuple.Fields;
 import cascading.tuple.TupleEntryIterator;
 import org.apache.commons.lang.StringUtils;
@@ -139,6 +141,48 @@ public abstract class JDBCTestingBase
     verifySink( readFlow, 13 );
     }
 
+  @Test
+  public void testLocalJDBC() throws IOException
+    {
+
+    // CREATE NEW TABLE FROM SOURCE IN PROCESS
+
+    Tap<?, ?, ?> source = new FileTap( new cascading.scheme.local.TextLine(), inputFile );
+    Fields fields = new Fields( new Comparable[]{"num", "lwr", "upr"}, new Type[]{int.class, String.class,
+                                                                                  String.class} );
+    Pipe parsePipe = new Each( "insert", new Fields( "line" ), new RegexSplitter( fields, "\\s" ) );
+
+    String[] columnNames = {"num", "lwr", "upr"};
+    String[] columnDefs = {"INT NOT NULL", "VARCHAR(100) NOT NULL", "VARCHAR(100) NOT NULL"};
+    String[] primaryKeys = {"num", "lwr"};
+    TableDesc tableDesc = getNewTableDesc( TESTING_TABLE_NAME, columnNames, columnDefs, primaryKeys );
+
+    LocalJDBCScheme scheme = new LocalJDBCScheme( getNewJDBCScheme( fields, columnNames ) );
+
+    LocalJDBCTap replaceTap = getNewLocalJDBCTap( tableDesc, scheme, SinkMode.REPLACE );
+
+    // forcing commits to test the batch behaviour
+    replaceTap.setBatchSize( 2 );
+
+    Flow<?> parseFlow = new LocalFlowConnector( createProperties() ).connect( source, replaceTap, parsePipe );
+
+    parseFlow.complete();
+
+    verifySink( parseFlow, 13 );
+
+    // READ DATA FROM TABLE INTO TEXT FILE IN PROCESS
+
+    Tap<?, ?, ?> sink = new FileTap( new cascading.scheme.local.TextLine(), "build/test/jdbclocal.txt", SinkMode.REPLACE );
+
+    Pipe copyPipe = new Each( "read", new Identity() );
+
+    Flow<?> copyFlow = new LocalFlowConnector( createProperties() ).connect( replaceTap, sink, copyPipe );
+
+    copyFlow.complete();
+
+    verifySink( copyFlow, 13 );
+    }
+
   @Test
   public void testJDBCDeriveTypesFromFields() throws IOException
     {
@@ -532,6 +576,11 @@ public abstract class JDBCTestingBase
     return new JDBCTap( jdbcurl, driverName, jdbcScheme );
     }
 
+  protected LocalJDBCTap getNewLocalJDBCTap( TableDesc tableDesc, LocalJDBCScheme localScheme, SinkMode sinkMode )
+    {
+    return new LocalJDBCTap( jdbcurl, null, null, driverName, tableDesc, localScheme, sinkMode );
+    }
+
   /**
    * SinkMode.UPDATE is not intended for production use so allow data sources that have different semantics for data
    * swapping to override this.
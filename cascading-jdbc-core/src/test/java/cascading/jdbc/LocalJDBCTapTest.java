@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import cascading.flow.Flow;
+import cascading.stats.FlowStats;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+
+public class LocalJDBCTapTest
+  {
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testSplitsAreReadInSequence() throws Exception
+    {
+    JobConf conf = new JobConf();
+    InputSplit first = mock( InputSplit.class );
+    InputSplit second = mock( InputSplit.class );
+
+    RecordReader<LongWritable, TupleRecord> firstReader = mock( RecordReader.class );
+    when( firstReader.next( any(), any() ) ).thenReturn( true, false );
+    when( firstReader.createKey() ).thenReturn( new LongWritable() );
+
+    RecordReader<LongWritable, TupleRecord> secondReader = mock( RecordReader.class );
+    when( secondReader.next( any(), any() ) ).thenReturn( true, true, false );
+
+    InputFormat<LongWritable, TupleRecord> inputFormat = mock( InputFormat.class );
+    when( inputFormat.getRecordReader( first, conf, Reporter.NULL ) ).thenReturn( firstReader );
+    when( inputFormat.getRecordReader( second, conf, Reporter.NULL ) ).thenReturn( secondReader );
+
+    JDBCTap tap = mock( JDBCTap.class );
+
+    LocalJDBCTap.SplitsRecordReader reader = new LocalJDBCTap.SplitsRecordReader( inputFormat, new InputSplit[]{first, second}, conf, tap );
+    Object key = reader.createKey();
+    Object value = new TupleRecord();
+
+    int rows = 0;
+    while( reader.next( key, value ) )
+      rows++;
+
+    assertEquals( 3, rows );
+    assertEquals( 1.0f, reader.getProgress(), 0.0f );
+    verify( firstReader ).close();
+    verify( secondReader ).close();
+    verify( tap ).releaseSnapshots();
+
+    reader.close();
+    verify( secondReader, times( 1 ) ).close();
+    verify( tap, times( 1 ) ).releaseSnapshots();
+    }
+
+  @Test
+  public void testCreateJobConf()
+    {
+    Properties properties = new Properties();
+    properties.setProperty( "mapred.jdbc.input.fetch.size", "500" );
+
+    assertEquals( 500, LocalJDBCTap.createJobConf( properties ).getInt( "mapred.jdbc.input.fetch.size", 0 ) );
+    }
+
+  @Test
+  public void testBackedByJDBCTap()
+    {
+    JDBCScheme jdbcScheme = new JDBCScheme( new Fields( "id", "name" ), new String[]{"id", "name"} );
+    LocalJDBCScheme scheme = new LocalJDBCScheme( jdbcScheme );
+    TableDesc tableDesc = new TableDesc( "people", new String[]{"id", "name"}, new String[]{"INT", "VARCHAR(100)"}, null );
+
+    LocalJDBCTap tap = new LocalJDBCTap( "jdbc:test", null, null, "java.lang.Object", tableDesc, scheme );
+
+    assertSame( jdbcScheme, tap.getJDBCTap().getScheme() );
+    assertEquals( "people", tap.getTableName() );
+    assertEquals( new Fields( "id", "name" ), scheme.getSourceFields() );
+    assertTrue( tap.isSink() );
+    assertTrue( tap.isUpdate() );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testWatermarkCommittedByListener() throws Exception
+    {
+    JDBCScheme jdbcScheme = new JDBCScheme( new Fields( "id", "name" ), new String[]{"id", "name"} );
+    LocalJDBCTap tap = spy( new LocalJDBCTap( "jdbc:test", null, null, "java.lang.Object", new LocalJDBCScheme( jdbcScheme ) ) );
+    JDBCTap jdbcTap = mock( JDBCTap.class );
+    doReturn( jdbcTap ).when( tap ).getJDBCTap();
+
+    Properties properties = new Properties();
+    properties.setProperty( "mapred.jdbc.input.fetch.size", "500" );
+
+    // Cascading never commits sources, a local flow is configured by Properties
+    FlowStats stats = mock( FlowStats.class );
+    when( stats.isSuccessful() ).thenReturn( true );
+    Flow<Properties> flow = mock( Flow.class );
+    when( flow.getConfig() ).thenReturn( properties );
+    when( flow.getFlowStats() ).thenReturn( stats );
+    when( flow.getSourcesCollection() ).thenReturn( Collections.<Tap>singletonList( tap ) );
+
+    new WatermarkListener().onCompleted( flow );
+
+    verify( jdbcTap ).releaseSnapshots();
+    ArgumentCaptor<JobConf> conf = ArgumentCaptor.forClass( JobConf.class );
+    verify( jdbcTap ).commitResource( conf.capture() );
+    assertEquals( 500, conf.getValue().getInt( "mapred.jdbc.input.fetch.size", 0 ) );
+    }
+  }
@@ -20,6 +20,8 @@
 
 package cascading.jdbc;
 
+import java.util.Arrays;
+
 import cascading.lingual.type.SQLDateCoercibleType;
 import cascading.tuple.Fields;
 import org.junit.Test;
@@ -99,4 +101,19 @@ public class TableDescTest
     desc.completeFromFields( fields );
     }
 
+  @Test
+  public void testStagingTableStatements()
+    {
+    TableDesc desc = new TableDesc( "orders", new String[]{ "id", "amount" }, new String[]{ "int not null", "int" }, new String[]{ "id" } );
+
+    assertEquals( "CREATE TABLE orders_staging ( id int not null, amount int )", desc.getCreateStagingTableStatement( "orders_staging" ) );
+    assertEquals( "DROP TABLE orders_staging", desc.getStagingTableDropStatement( "orders_staging" ) );
+    assertEquals( Arrays.asList( "DELETE FROM orders", "INSERT INTO orders ( id, amount ) SELECT id, amount FROM orders_staging" ),
+      desc.getStagingTableSwapStatements( "orders_staging", true ) );
+
+    desc = new TableDesc( "orders" );
+
+    assertEquals( "CREATE TABLE orders_staging AS SELECT * FROM orders WHERE 1 = 0", desc.getCreateStagingTableStatement( "orders_staging" ) );
+    assertEquals( Arrays.asList( "INSERT INTO orders SELECT * FROM orders_staging" ), desc.getStagingTableSwapStatements( "orders_staging", false ) );
+    }
   }
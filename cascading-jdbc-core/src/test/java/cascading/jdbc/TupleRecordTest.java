@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 
 import org.junit.Test;
 
@@ -83,4 +84,70 @@ public class TupleRecordTest
 
       }
 
+      @Test
+    public void testReadWithCodecs() throws SQLException
+      {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData rsm = mock(ResultSetMetaData.class);
+        when(rsm.getColumnCount()).thenReturn(3);
+        when(rsm.getColumnType(1)).thenReturn(Types.BIGINT);
+        when(rsm.isSigned(1)).thenReturn(true);
+        when(rsm.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(rsm.getColumnType(3)).thenReturn(Types.DATE);
+        when(resultSet.getMetaData()).thenReturn(rsm);
+        when(resultSet.getLong(1)).thenReturn(42L, 0L);
+        when(resultSet.wasNull()).thenReturn(false, true);
+        when(resultSet.getString(2)).thenReturn("foo", "bar");
+        when(resultSet.getObject(3)).thenReturn(null);
+
+        TupleRecord tupleRecord = new TupleRecord();
+
+        tupleRecord.readFields(resultSet);
+        Tuple first = tupleRecord.getTuple();
+        assertEquals(new Tuple(42L, "foo", null), first);
+
+        tupleRecord.readFields(resultSet);
+        assertSame(first, tupleRecord.getTuple());
+        assertEquals(new Tuple(null, "bar", null), tupleRecord.getTuple());
+
+        verify(resultSet, times(1)).getMetaData();
+        verify(resultSet, never()).getObject(1);
+      }
+
+    @Test
+    public void testWriteWithCodecs() throws SQLException
+      {
+        Tuple t = new Tuple(1L, "two", null, 4);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        TupleRecord tupleRecord = new TupleRecord(t);
+        tupleRecord.setWriteCodecs(new ColumnCodec[]{ColumnCodec.LONG, ColumnCodec.STRING, ColumnCodec.TIMESTAMP, ColumnCodec.LONG});
+        tupleRecord.write(stmt);
+        verify(stmt).setLong(1, 1L);
+        verify(stmt).setString(2, "two");
+        verify(stmt).setNull(3, Types.TIMESTAMP);
+        verify(stmt).setObject(4, 4);
+        verifyNoMoreInteractions(stmt);
+      }
+
+    @Test
+    public void testCodecForType()
+      {
+        assertEquals(ColumnCodec.LONG, ColumnCodec.forType(long.class));
+        assertEquals(ColumnCodec.INT, ColumnCodec.forType(Integer.class));
+        assertEquals(ColumnCodec.TIMESTAMP, ColumnCodec.forType(java.sql.Timestamp.class));
+        assertEquals(ColumnCodec.OBJECT, ColumnCodec.forType(java.util.Date.class));
+      }
+
+    @Test
+    public void testCodecForColumn() throws SQLException
+      {
+        ResultSetMetaData rsm = mock(ResultSetMetaData.class);
+        when(rsm.getColumnType(1)).thenReturn(Types.TIMESTAMP);
+        when(rsm.getColumnType(2)).thenReturn(Types.NUMERIC);
+
+        // drivers differ in the type of TIMESTAMP values, it is left to getObject
+        assertEquals(ColumnCodec.OBJECT, ColumnCodec.forColumn(rsm, 1));
+        assertEquals(ColumnCodec.BIG_DECIMAL, ColumnCodec.forColumn(rsm, 2));
+      }
+
   }
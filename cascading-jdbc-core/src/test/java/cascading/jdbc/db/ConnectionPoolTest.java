@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+public class ConnectionPoolTest
+  {
+
+  private ConnectionPool createPool( final Connection... connections )
+    {
+    return new ConnectionPool( "test", "jdbc:test", null, null, 2, 1000, null )
+      {
+      private int opened;
+
+      @Override
+      protected Connection open()
+        {
+        return connections[ opened++ ];
+        }
+      };
+    }
+
+  private Connection createConnection() throws SQLException
+    {
+    Connection connection = mock( Connection.class );
+    when( connection.getAutoCommit() ).thenReturn( true );
+    when( connection.getTransactionIsolation() ).thenReturn( Connection.TRANSACTION_READ_COMMITTED );
+    when( connection.isValid( anyInt() ) ).thenReturn( true );
+    return connection;
+    }
+
+  @Test
+  public void testReusesReturnedConnection() throws Exception
+    {
+    Connection physical = createConnection();
+    ConnectionPool pool = createPool( physical );
+
+    Connection first = pool.getConnection();
+    first.createStatement();
+    first.close();
+
+    assertTrue( first.isClosed() );
+    assertEquals( 1, pool.getIdleCount() );
+
+    Connection second = pool.getConnection();
+    second.createStatement();
+
+    verify( physical, times( 2 ) ).createStatement();
+    verify( physical, never() ).close();
+    assertEquals( 1, pool.getHits() );
+    assertEquals( 1, pool.getMisses() );
+    assertEquals( 1, pool.getActiveCount() );
+    }
+
+  @Test
+  public void testRestoresStateOnReturn() throws Exception
+    {
+    Connection physical = createConnection();
+    ConnectionPool pool = createPool( physical );
+
+    Connection connection = pool.getConnection();
+
+    when( physical.getAutoCommit() ).thenReturn( false );
+    when( physical.getTransactionIsolation() ).thenReturn( Connection.TRANSACTION_SERIALIZABLE );
+
+    connection.close();
+
+    verify( physical ).rollback();
+    verify( physical ).setAutoCommit( true );
+    verify( physical ).setTransactionIsolation( Connection.TRANSACTION_READ_COMMITTED );
+    }
+
+  @Test
+  public void testDiscardsInvalidConnection() throws Exception
+    {
+    Connection stale = createConnection();
+    Connection fresh = createConnection();
+    ConnectionPool pool = createPool( stale, fresh );
+
+    pool.getConnection().close();
+    when( stale.isValid( anyInt() ) ).thenReturn( false );
+
+    pool.getConnection().createStatement();
+
+    verify( stale ).close();
+    verify( fresh ).createStatement();
+    assertEquals( 0, pool.getHits() );
+    assertEquals( 2, pool.getMisses() );
+    assertEquals( 1, pool.getEvictions() );
+    }
+
+  @Test
+  public void testEvictsIdleConnections() throws Exception
+    {
+    Connection physical = createConnection();
+    ConnectionPool pool = createPool( physical );
+
+    pool.getConnection().close();
+
+    pool.evictIdle( System.currentTimeMillis() );
+    assertEquals( 1, pool.getIdleCount() );
+
+    pool.evictIdle( System.currentTimeMillis() + 1000 );
+    assertEquals( 0, pool.getIdleCount() );
+    assertEquals( 1, pool.getEvictions() );
+    verify( physical ).close();
+    }
+
+  @Test
+  public void testClosedPoolClosesReturnedConnections() throws Exception
+    {
+    Connection physical = createConnection();
+    ConnectionPool pool = createPool( physical );
+
+    Connection connection = pool.getConnection();
+    pool.close();
+    connection.close();
+
+    verify( physical ).close();
+    assertEquals( 0, pool.getIdleCount() );
+    }
+
+  @Test
+  public void testExhaustedPoolFailsFast() throws Exception
+    {
+    ConnectionPool pool = createPool( createConnection(), createConnection() );
+
+    pool.getConnection();
+    Connection second = pool.getConnection();
+
+    try
+      {
+      pool.getConnection();
+      fail( "expected the exhausted pool to fail" );
+      }
+    catch( SQLException exception )
+      {
+      assertTrue( exception.getMessage().contains( DBConfiguration.POOL_MAX_SIZE_PROPERTY ) );
+      }
+
+    second.close();
+    pool.getConnection();
+    assertEquals( 1, pool.getHits() );
+    }
+
+  @Test
+  public void testDiscardsConnectionWithChangedSession() throws Exception
+    {
+    Connection physical = createConnection();
+    Connection fresh = createConnection();
+    Statement statement = mock( Statement.class );
+    when( physical.createStatement() ).thenReturn( statement );
+    ConnectionPool pool = createPool( physical, fresh );
+
+    Connection connection = pool.getConnection();
+    Statement borrowed = connection.createStatement();
+    borrowed.executeQuery( "SELECT 1" );
+    borrowed.execute( "SET search_path TO staging" );
+    assertSame( connection, borrowed.getConnection() );
+    connection.close();
+
+    verify( statement ).execute( "SET search_path TO staging" );
+    verify( physical ).close();
+    assertEquals( 0, pool.getIdleCount() );
+
+    connection = pool.getConnection();
+    connection.prepareCall( "{call DBMS_FLASHBACK.DISABLE}" );
+    connection.close();
+
+    verify( fresh ).close();
+    assertEquals( 0, pool.getIdleCount() );
+    }
+
+  @Test
+  public void testChangesSession()
+    {
+    assertTrue( ConnectionPool.changesSession( "SET TIME ZONE 'UTC'" ) );
+    assertTrue( ConnectionPool.changesSession( "  alter session set nls_date_format = 'YYYY'" ) );
+    assertTrue( ConnectionPool.changesSession( "CREATE GLOBAL TEMPORARY TABLE t ( id INT )" ) );
+    assertTrue( ConnectionPool.changesSession( "CREATE TEMP TABLE t ( id INT )" ) );
+    assertTrue( ConnectionPool.changesSession( "{call DBMS_FLASHBACK.DISABLE}" ) );
+    assertTrue( ConnectionPool.changesSession( "BEGIN DBMS_SESSION.SET_ROLE('r'); END;" ) );
+    assertFalse( ConnectionPool.changesSession( "SELECT settings FROM t" ) );
+    assertFalse( ConnectionPool.changesSession( "UPDATE t SET a = 1" ) );
+    assertFalse( ConnectionPool.changesSession( "CREATE TABLE temp_orders ( id INT )" ) );
+    assertFalse( ConnectionPool.changesSession( null ) );
+    }
+
+  @Test
+  public void testPoolingIsOptIn() throws Exception
+    {
+    assertEquals( 0, ConnectionPool.DEFAULT_MAX_SIZE );
+
+    ConnectionPool pool = ConnectionPool.getPool( "jdbc:grow", null, null, 1, 1000, null );
+
+    try
+      {
+      assertSame( pool, ConnectionPool.getPool( "jdbc:grow", null, null, 4, 1000, null ) );
+      assertTrue( pool.toString().startsWith( "ConnectionPool{jdbc:grow" ) );
+      }
+    finally
+      {
+      pool.close();
+      }
+    }
+  }
@@ -0,0 +1,588 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import cascading.jdbc.TupleRecord;
+
+public class DBInputFormatTest
+  {
+
+  private DBInputFormat<DBWritable> createInputFormat( JobConf job ) throws SQLException
+    {
+    DBInputFormat<DBWritable> inputFormat = new DBInputFormat<DBWritable>();
+    inputFormat.configure( job );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( anyString() ) ).thenReturn( mock( ResultSet.class ) );
+
+    Connection connection = mock( Connection.class );
+    when( connection.createStatement( anyInt(), anyInt() ) ).thenReturn( statement );
+
+    return withConnection( inputFormat, connection );
+    }
+
+  /** Returns a spy of the given format opening the given connection for the splits and every reader. */
+  static <F extends DBInputFormat<?>> F withConnection( F inputFormat, Connection connection )
+    {
+    F spy = spy( inputFormat );
+    doReturn( connection ).when( spy ).openConnection();
+    return spy;
+    }
+
+  private JobConf createTableInput( String conditions )
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", conditions, null, -1, 4, false, "id", "amount" );
+    DBInputFormat.setSplitBy( job, "id" );
+    return job;
+    }
+
+  @Test
+  public void testKeysetSplits() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( null ) );
+
+    DBInputFormat.DBInputSplit[] splits = inputFormat.createKeysetSplits( 1, 100, false, 4 );
+
+    assertEquals( 4, splits.length );
+    assertEquals( "id IS NULL OR ( id >= 1 AND id < 26 )", splits[ 0 ].getPredicate() );
+    assertEquals( "( id >= 26 AND id < 51 )", splits[ 1 ].getPredicate() );
+    assertEquals( "( id >= 51 AND id < 76 )", splits[ 2 ].getPredicate() );
+    assertEquals( "( id >= 76 )", splits[ 3 ].getPredicate() );
+    }
+
+  @Test
+  public void testKeysetSplitsNarrowRange() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( null ) );
+
+    DBInputFormat.DBInputSplit[] splits = inputFormat.createKeysetSplits( 7, 8, false, 4 );
+
+    assertEquals( 2, splits.length );
+    assertEquals( "id IS NULL OR ( id >= 7 AND id < 8 )", splits[ 0 ].getPredicate() );
+    assertEquals( "( id >= 8 )", splits[ 1 ].getPredicate() );
+    }
+
+  @Test
+  public void testTemporalKeysetSplits() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( null ) );
+
+    // the max of a column with microseconds is cut to 2000 ms, the last split must not end there
+    DBInputFormat.DBInputSplit[] splits = inputFormat.createKeysetSplits( 0, 2000, true, 2 );
+
+    assertEquals( 2, splits.length );
+    assertEquals( "id IS NULL OR ( id >= {ts '" + new Timestamp( 0 ) + "'} AND id < {ts '" + new Timestamp( 1000 ) + "'} )",
+      splits[ 0 ].getPredicate() );
+    assertEquals( "( id >= {ts '" + new Timestamp( 1000 ) + "'} )", splits[ 1 ].getPredicate() );
+    }
+
+  @Test
+  public void testKeysetSelectQuery() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( "amount > 0" ) );
+
+    DBInputFormat.DBInputSplit split = new DBInputFormat.DBInputSplit( 26, 51, 4, "( id >= 26 AND id < 51 )" );
+    DBInputFormat.DBRecordReader reader = inputFormat.new DBRecordReader( split, DBWritable.class, new JobConf() );
+
+    assertEquals( "SELECT id, amount FROM orders WHERE (amount > 0) AND (( id >= 26 AND id < 51 ))", reader.getSelectQuery() );
+    assertEquals( "SELECT MIN(id), MAX(id) FROM orders WHERE amount > 0", inputFormat.getBoundaryQuery() );
+    }
+
+  @Test
+  public void testQuantileSplits() throws Exception
+    {
+    JobConf job = createTableInput( null );
+    DBInputFormat.setSplitSample( job, 8 );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+    Connection connection = inputFormat.openConnection();
+
+    // clustered keys, most rows are between 1 and 4
+    ResultSet results = mock( ResultSet.class );
+    when( results.next() ).thenReturn( true, true, true, true, true, true, true, true, false );
+    when( results.getBigDecimal( 1 ) ).thenReturn( new BigDecimal( 4 ), new BigDecimal( 1 ), new BigDecimal( 2 ), new BigDecimal( 1000 ),
+      new BigDecimal( 3 ), new BigDecimal( 2 ), new BigDecimal( 1 ), new BigDecimal( 4 ) );
+    when( results.getMetaData() ).thenReturn( mock( ResultSetMetaData.class ) );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( "SELECT id FROM orders WHERE (id IS NOT NULL) ORDER BY RANDOM() LIMIT 8" ) ).thenReturn( results );
+    when( connection.createStatement() ).thenReturn( statement );
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    assertEquals( 4, splits.length );
+    assertEquals( "id IS NULL OR id < 2", ( (DBInputFormat.DBInputSplit) splits[ 0 ] ).getPredicate() );
+    assertEquals( "( id >= 2 AND id < 3 )", ( (DBInputFormat.DBInputSplit) splits[ 1 ] ).getPredicate() );
+    assertEquals( "( id >= 3 AND id < 4 )", ( (DBInputFormat.DBInputSplit) splits[ 2 ] ).getPredicate() );
+    assertEquals( "id >= 4", ( (DBInputFormat.DBInputSplit) splits[ 3 ] ).getPredicate() );
+    }
+
+  @Test
+  public void testSingleQuantileSplit() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, 1, false, "id", "amount" );
+    DBInputFormat.setSplitBy( job, "id" );
+    DBInputFormat.setSplitSample( job, 8 );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+    Connection connection = inputFormat.openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    assertEquals( 1, splits.length );
+    assertNull( ( (DBInputFormat.DBInputSplit) splits[ 0 ] ).getPredicate() );
+    verify( connection, never() ).createStatement();
+
+    DBInputFormat.DBInputSplit[] unbounded = inputFormat.createQuantileSplits( new long[ 0 ], false );
+
+    assertEquals( 1, unbounded.length );
+    assertNull( unbounded[ 0 ].getPredicate() );
+    }
+
+  @Test
+  public void testQuantilesSkipDuplicates()
+    {
+    assertArrayEquals( new long[]{7}, DBInputFormat.getQuantiles( new ArrayList<Long>( Arrays.asList( 7L, 7L, 7L, 7L, 1L, 7L ) ), 3 ) );
+    }
+
+  @Test
+  public void testPredicateSplits() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "SELECT id, region FROM orders_view", null, -1, 4, false );
+    DBInputFormat.setSplitPredicates( job, "region = 'EU'", "region IN ('US', 'CA')", "region NOT IN ('EU', 'US', 'CA')" );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+    Connection connection = inputFormat.openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verify( connection, never() ).createStatement();
+    assertEquals( 3, splits.length );
+
+    DBInputFormat.DBRecordReader reader = inputFormat.new DBRecordReader( (DBInputFormat.DBInputSplit) splits[ 1 ], DBWritable.class, job );
+
+    assertEquals( "SELECT * FROM ( SELECT id, region FROM orders_view ) dbif_split WHERE region IN ('US', 'CA')", reader.getSelectQuery() );
+    }
+
+  @Test
+  public void testProjectedQuery() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "SELECT * FROM orders_view", null, -1, 1, false );
+    DBInputFormat.setProjection( job, "id", "amount" );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+    Connection connection = inputFormat.openConnection();
+    DBInputFormat.DBInputSplit split = (DBInputFormat.DBInputSplit) inputFormat.getSplits( job, 1 )[ 0 ];
+
+    DBInputFormat.DBRecordReader reader = inputFormat.new DBRecordReader( split, DBWritable.class, job );
+
+    assertEquals( "SELECT id, amount FROM ( SELECT * FROM orders_view ) dbif_split", reader.getSelectQuery() );
+    }
+
+  @Test
+  public void testReadersOwnTheirConnection() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( null ) );
+    InputSplit[] splits = inputFormat.createKeysetSplits( 1, 100, false, 2 );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( anyString() ) ).thenReturn( mock( ResultSet.class ) );
+
+    Connection first = mock( Connection.class );
+    Connection second = mock( Connection.class );
+    when( first.createStatement( anyInt(), anyInt() ) ).thenReturn( statement );
+    when( second.createStatement( anyInt(), anyInt() ) ).thenReturn( statement );
+    doReturn( first ).doReturn( second ).when( inputFormat ).openConnection();
+
+    RecordReader<LongWritable, DBWritable> firstReader = inputFormat.getRecordReader( splits[ 0 ], new JobConf(), Reporter.NULL );
+    RecordReader<LongWritable, DBWritable> secondReader = inputFormat.getRecordReader( splits[ 1 ], new JobConf(), Reporter.NULL );
+
+    firstReader.close();
+
+    verify( first ).close();
+    verify( second, never() ).close();
+
+    secondReader.close();
+
+    verify( second ).close();
+    }
+
+  @Test
+  public void testUncountedSplit() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "SELECT id FROM orders_view", null, -1, 4, false );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+    Connection connection = inputFormat.openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verify( connection, never() ).createStatement();
+    assertEquals( 1, splits.length );
+
+    ResultSet results = mock( ResultSet.class );
+    when( results.next() ).thenReturn( true, true, false );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( "SELECT id FROM orders_view" ) ).thenReturn( results );
+    when( connection.createStatement( anyInt(), anyInt() ) ).thenReturn( statement );
+
+    RecordReader<LongWritable, DBWritable> reader = inputFormat.getRecordReader( splits[ 0 ], job, Reporter.NULL );
+    DBWritable value = mock( DBWritable.class );
+
+    assertTrue( reader.next( new LongWritable(), value ) );
+    assertTrue( reader.next( new LongWritable(), value ) );
+    assertEquals( 0.0f, reader.getProgress(), 0.0f );
+    assertFalse( reader.next( new LongWritable(), value ) );
+    assertEquals( 1.0f, reader.getProgress(), 0.0f );
+    assertEquals( 2, reader.getPos() );
+    }
+
+  @Test
+  public void testHashSplits() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, 3, false, "id", "amount" );
+    DBInputFormat.setSplitByHash( job, "region", "code" );
+
+    DBInputFormat<DBWritable> inputFormat = new DBInputFormat<DBWritable>()
+      {
+      @Override
+      protected String getHashExpression( String[] columns )
+        {
+        return "HASH(" + columns[ 0 ] + ", " + columns[ 1 ] + ")";
+        }
+      };
+    inputFormat.configure( job );
+    Connection connection = mock( Connection.class );
+    inputFormat = withConnection( inputFormat, connection );
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verifyZeroInteractions( connection );
+    assertEquals( 3, splits.length );
+    assertEquals( "MOD(HASH(region, code), 3) = 0", ( (DBInputFormat.DBInputSplit) splits[ 0 ] ).getPredicate() );
+    assertEquals( "MOD(HASH(region, code), 3) = 2", ( (DBInputFormat.DBInputSplit) splits[ 2 ] ).getPredicate() );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( anyString() ) ).thenReturn( mock( ResultSet.class ) );
+    when( connection.createStatement( anyInt(), anyInt() ) ).thenReturn( statement );
+
+    DBInputFormat.DBRecordReader reader = inputFormat.new DBRecordReader( (DBInputFormat.DBInputSplit) splits[ 1 ], DBWritable.class, job );
+
+    assertEquals( "SELECT id, amount FROM orders WHERE (MOD(HASH(region, code), 3) = 1)", reader.getSelectQuery() );
+    }
+
+  @Test(expected = IOException.class)
+  public void testHashSplitsUnsupported() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, 3, false, "id", "amount" );
+    DBInputFormat.setSplitByHash( job, "code" );
+
+    createInputFormat( job ).getSplits( job, 1 );
+    }
+
+  @Test
+  public void testPagedSelectQuery() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( null ) );
+
+    DBInputFormat.DBInputSplit split = new DBInputFormat.DBInputSplit( 10, 20, 4 );
+    DBInputFormat.DBRecordReader reader = inputFormat.new DBRecordReader( split, DBWritable.class, new JobConf() );
+
+    assertEquals( "SELECT id, amount FROM orders LIMIT 10 OFFSET 10", reader.getSelectQuery() );
+    }
+
+  @Test
+  public void testEstimatedSplits() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, 3, false, "id", "amount" );
+    DBInputFormat.setCountEstimate( job, true, "SELECT estimate FROM stats" );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+    Connection connection = inputFormat.openConnection();
+
+    ResultSet results = mock( ResultSet.class );
+    when( results.next() ).thenReturn( true );
+    when( results.getLong( 1 ) ).thenReturn( 100L );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( "SELECT estimate FROM stats" ) ).thenReturn( results );
+    when( connection.createStatement() ).thenReturn( statement );
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verify( statement, never() ).executeQuery( "SELECT COUNT(*) FROM orders" );
+    assertEquals( 3, splits.length );
+    assertFalse( ( (DBInputFormat.DBInputSplit) splits[ 1 ] ).isOpenEnded() );
+    assertTrue( ( (DBInputFormat.DBInputSplit) splits[ 2 ] ).isOpenEnded() );
+
+    DBInputFormat.DBRecordReader reader = inputFormat.new DBRecordReader( (DBInputFormat.DBInputSplit) splits[ 2 ], DBWritable.class, job );
+
+    assertEquals( "SELECT id, amount FROM orders LIMIT " + Long.MAX_VALUE + " OFFSET 66", reader.getSelectQuery() );
+    }
+
+  @Test
+  public void testPrefetchedRead() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, 1, false, "id" );
+    DBInputFormat.setPrefetch( job, 2, 50 );
+
+    DBInputFormat<TupleRecord> inputFormat = createPrefetchingInputFormat( job );
+    Statement statement = inputFormat.openConnection().createStatement( 0, 0 );
+    ResultSet results = statement.executeQuery( "" );
+    when( results.next() ).thenReturn( true, true, true, false );
+    when( results.getObject( 1 ) ).thenReturn( 1, 2, 3 );
+
+    RecordReader<LongWritable, TupleRecord> reader = inputFormat.new DBRecordReader( new DBInputFormat.DBInputSplit( 0, 3, 1 ), TupleRecord.class, job );
+
+    LongWritable key = reader.createKey();
+    TupleRecord value = reader.createValue();
+
+    for( int i = 1; i <= 3; i++ )
+      {
+      assertTrue( reader.next( key, value ) );
+      assertEquals( i - 1, key.get() );
+      assertEquals( i, value.getTuple().getObject( 0 ) );
+      }
+
+    assertFalse( reader.next( key, value ) );
+    assertFalse( reader.next( key, value ) );
+    reader.close();
+
+    verify( statement ).setFetchSize( 50 );
+    verify( results ).close();
+    }
+
+  @Test
+  public void testPrefetchedReadFailure() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, 1, false, "id" );
+    DBInputFormat.setPrefetch( job, 2, 0 );
+
+    DBInputFormat<TupleRecord> inputFormat = createPrefetchingInputFormat( job );
+    ResultSet results = inputFormat.openConnection().createStatement( 0, 0 ).executeQuery( "" );
+    when( results.next() ).thenReturn( true ).thenThrow( new SQLException( "connection reset" ) );
+    when( results.getObject( 1 ) ).thenReturn( 1 );
+
+    RecordReader<LongWritable, TupleRecord> reader = inputFormat.new DBRecordReader( new DBInputFormat.DBInputSplit( 0, 2, 1 ), TupleRecord.class, job );
+
+    LongWritable key = reader.createKey();
+    TupleRecord value = reader.createValue();
+
+    assertTrue( reader.next( key, value ) );
+
+    try
+      {
+      reader.next( key, value );
+      fail( "expected the failure of the prefetching thread" );
+      }
+    catch( IOException exception )
+      {
+      assertEquals( "connection reset", exception.getCause().getMessage() );
+      }
+
+    reader.close();
+    }
+
+  private DBInputFormat<TupleRecord> createPrefetchingInputFormat( JobConf job ) throws SQLException
+    {
+    DBInputFormat<TupleRecord> inputFormat = new DBInputFormat<TupleRecord>();
+    inputFormat.configure( job );
+
+    ResultSetMetaData metaData = mock( ResultSetMetaData.class );
+    when( metaData.getColumnCount() ).thenReturn( 1 );
+
+    ResultSet results = mock( ResultSet.class );
+    when( results.getMetaData() ).thenReturn( metaData );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( anyString() ) ).thenReturn( results );
+
+    Connection connection = mock( Connection.class );
+    when( connection.createStatement( anyInt(), anyInt() ) ).thenReturn( statement );
+
+    return withConnection( inputFormat, connection );
+    }
+
+  @Test
+  public void testSplitSerialization() throws IOException
+    {
+    DBInputFormat.DBInputSplit split = new DBInputFormat.DBInputSplit( 26, 51, 4, "( id >= 26 AND id < 51 )" );
+    split.setSnapshot( "00000003-0000001B-1" );
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write( new DataOutputStream( bytes ) );
+
+    DBInputFormat.DBInputSplit copy = new DBInputFormat.DBInputSplit();
+    copy.readFields( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+
+    assertEquals( 26, copy.getStart() );
+    assertEquals( 51, copy.getEnd() );
+    assertEquals( 4, copy.getChunks() );
+    assertEquals( split.getPredicate(), copy.getPredicate() );
+    assertEquals( split.getSnapshot(), copy.getSnapshot() );
+    }
+
+  @Test
+  public void testWatermarkConditions() throws Exception
+    {
+    JobConf job = createTableInput( "amount > 0" );
+    DBInputFormat.setWatermark( job, "id", "10", "20" );
+
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+
+    assertEquals( "SELECT MIN(id), MAX(id) FROM orders WHERE (amount > 0) AND (id > 10 AND id <= 20)", inputFormat.getBoundaryQuery() );
+
+    job = createTableInput( null );
+    DBInputFormat.setWatermark( job, "id", null, "20" );
+    inputFormat.configure( job );
+
+    assertEquals( "SELECT MIN(id), MAX(id) FROM orders WHERE id <= 20", inputFormat.getBoundaryQuery() );
+
+    job = createTableInput( null );
+    DBInputFormat.setWatermark( job, "id", "20", null );
+    inputFormat.configure( job );
+
+    assertEquals( "SELECT MIN(id), MAX(id) FROM orders WHERE 1 = 0", inputFormat.getBoundaryQuery() );
+    }
+
+  @Test
+  public void testSnapshotSplits() throws Exception
+    {
+    JobConf job = createTableInput( null );
+    DBInputFormat.setSnapshot( job, true );
+
+    DBInputFormat<DBWritable> inputFormat = new DBInputFormat<DBWritable>()
+      {
+      @Override
+      protected String exportSnapshot()
+        {
+        return "00000003-0000001B-1";
+        }
+
+      @Override
+      protected InputSplit[] computeSplits( int chunks )
+        {
+        return createKeysetSplits( 1, 100, false, chunks );
+        }
+      };
+    inputFormat.configure( job );
+
+    InputSplit[] splits = inputFormat.getSplits( job, 4 );
+
+    assertEquals( 4, splits.length );
+
+    for( InputSplit split : splits )
+      assertEquals( "00000003-0000001B-1", ( (DBInputFormat.DBInputSplit) split ).getSnapshot() );
+    }
+
+  @Test
+  public void testReaderDetachesFromSnapshot() throws Exception
+    {
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( createTableInput( null ) );
+    Connection connection = inputFormat.openConnection();
+
+    DBInputFormat.DBInputSplit split = new DBInputFormat.DBInputSplit( 1, 100, 1, "( id >= 1 )" );
+    split.setSnapshot( "00000003-0000001B-1" );
+
+    inputFormat.getRecordReader( split, new JobConf(), Reporter.NULL ).close();
+
+    InOrder order = inOrder( inputFormat, connection );
+    order.verify( inputFormat ).attachSnapshot( connection, "00000003-0000001B-1" );
+    order.verify( inputFormat ).detachSnapshot( connection, "00000003-0000001B-1" );
+    order.verify( connection ).close();
+    }
+
+  @Test
+  public void testSnapshotsReleasedByOwner() throws Exception
+    {
+    JobConf job = createTableInput( null );
+    DBInputFormat.setSnapshotOwner( job, "orders-tap" );
+
+    DBInputFormat<DBWritable> inputFormat = new DBInputFormat<DBWritable>();
+    inputFormat.configure( job );
+
+    Connection connection = mock( Connection.class );
+    inputFormat.holdSnapshot( "00000003-0000001B-1", connection );
+
+    DBInputFormat.releaseSnapshots( "other-tap" );
+    verify( connection, never() ).rollback();
+
+    DBInputFormat.releaseSnapshots( "orders-tap" );
+    verify( connection ).rollback();
+    verify( connection ).close();
+    }
+
+  @Test
+  public void testIsolationLevel() throws Exception
+    {
+    JobConf job = createTableInput( null );
+    DBInputFormat<DBWritable> inputFormat = createInputFormat( job );
+
+    assertEquals( Connection.TRANSACTION_SERIALIZABLE, inputFormat.getTransactionIsolationLevel() );
+
+    DBInputFormat.setSnapshot( job, true );
+    inputFormat.configure( job );
+
+    assertEquals( Connection.TRANSACTION_REPEATABLE_READ, inputFormat.getTransactionIsolationLevel() );
+
+    DBInputFormat.setIsolationLevel( job, Connection.TRANSACTION_READ_COMMITTED );
+    inputFormat.configure( job );
+
+    assertEquals( Connection.TRANSACTION_READ_COMMITTED, inputFormat.getTransactionIsolationLevel() );
+    }
+  }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class DBOutputFormatTest
+  {
+
+  @Test
+  public void testAsyncFlushAlternatesConnections() throws Exception
+    {
+    Connection connection = mock( Connection.class );
+    PreparedStatement insert = mock( PreparedStatement.class );
+    when( insert.executeBatch() ).thenReturn( new int[]{ 1, 1 }, new int[]{ 1 } );
+
+    Connection flushConnection = mock( Connection.class );
+    PreparedStatement flushInsert = mock( PreparedStatement.class );
+    when( flushInsert.executeBatch() ).thenReturn( new int[]{ 1, 1 } );
+
+    DBOutputFormat<DBWritable, Object>.DBRecordWriter writer = createAsyncWriter( connection, insert, flushConnection, flushInsert, 2 );
+
+    DBWritable row = mock( DBWritable.class );
+
+    for( int i = 0; i < 5; i++ )
+      writer.write( row, null );
+
+    writer.close( null );
+
+    verify( insert, times( 3 ) ).addBatch();
+    verify( insert, times( 2 ) ).executeBatch();
+    verify( flushInsert, times( 2 ) ).addBatch();
+    verify( flushInsert, times( 1 ) ).executeBatch();
+    verify( connection, times( 2 ) ).commit();
+    verify( flushConnection, times( 1 ) ).commit();
+    verify( connection ).close();
+    verify( flushConnection ).close();
+    }
+
+  @Test
+  public void testAsyncFlushFailureSurfacesAtClose() throws Exception
+    {
+    Connection connection = mock( Connection.class );
+    PreparedStatement insert = mock( PreparedStatement.class );
+    when( insert.executeBatch() ).thenReturn( new int[]{ 1, 1 } );
+
+    Connection flushConnection = mock( Connection.class );
+    PreparedStatement flushInsert = mock( PreparedStatement.class );
+    when( flushInsert.executeBatch() ).thenThrow( new SQLException( "duplicate key" ) );
+
+    DBOutputFormat<DBWritable, Object>.DBRecordWriter writer = createAsyncWriter( connection, insert, flushConnection, flushInsert, 2 );
+
+    DBWritable row = mock( DBWritable.class );
+
+    for( int i = 0; i < 4; i++ )
+      writer.write( row, null );
+
+    try
+      {
+      writer.close( null );
+      fail( "expected the failure of the batch in flight" );
+      }
+    catch( IOException exception )
+      {
+      assertTrue( exception.getMessage().contains( "duplicate key" ) );
+      }
+
+    verify( flushConnection ).rollback();
+    verify( connection ).close();
+    verify( flushConnection ).close();
+    }
+    @Test
+  public void testMultiRowInsertQuery()
+    {
+    DBOutputFormat<DBWritable, Object> outputFormat = new DBOutputFormat<DBWritable, Object>();
+
+    assertEquals( "INSERT INTO orders (id,amount) VALUES (?,?)", outputFormat.constructInsertQuery( "orders", new String[]{ "id", "amount" } ) );
+    assertEquals( "INSERT INTO orders (id,amount) VALUES (?,?),(?,?),(?,?)",
+      outputFormat.constructInsertQuery( "orders", new String[]{ "id", "amount" }, 3 ) );
+    }
+
+  @Test
+  public void testMultiRowInsert() throws Exception
+    {
+    Connection connection = mock( Connection.class );
+    PreparedStatement multiRowInsert = mock( PreparedStatement.class );
+    when( multiRowInsert.executeBatch() ).thenReturn( new int[]{ 2, 2 } );
+    PreparedStatement remainderInsert = mock( PreparedStatement.class );
+    when( remainderInsert.executeBatch() ).thenReturn( new int[]{ 1 } );
+    when( connection.prepareStatement( "INSERT INTO orders (id,amount,region) VALUES (?,?,?)" ) ).thenReturn( remainderInsert );
+
+    DBOutputFormat<MultiRowDBWritable, Object> outputFormat = new DBOutputFormat<MultiRowDBWritable, Object>();
+    DBOutputFormat<MultiRowDBWritable, Object>.DBRecordWriter writer = outputFormat.new DBRecordWriter(
+      outputFormat.new StatementBatch( connection, null, null, multiRowInsert, "orders", new String[]{ "id", "amount", "region" }, 2 ), null, 100 );
+
+    MultiRowDBWritable row = mock( MultiRowDBWritable.class );
+    MultiRowDBWritable copy = mock( MultiRowDBWritable.class );
+    when( row.copy() ).thenReturn( copy );
+
+    for( int i = 0; i < 5; i++ )
+      writer.write( row, null );
+
+    writer.close( null );
+
+    // every row is bound once, only the rows of an incomplete statement are kept
+    InOrder order = inOrder( row );
+    for( int i = 0; i < 5; i++ )
+      order.verify( row ).write( multiRowInsert, i % 2 * 3 );
+    verify( row, never() ).write( any( PreparedStatement.class ) );
+    verify( row, times( 3 ) ).copy();
+
+    // two complete statements of two rows, and the fifth row by a statement of its own
+    verify( multiRowInsert, times( 2 ) ).addBatch();
+    verify( multiRowInsert ).executeBatch();
+    verify( copy ).write( remainderInsert, 0 );
+    verify( remainderInsert ).addBatch();
+    verify( remainderInsert ).executeBatch();
+    }
+
+  @Test
+  public void testUpsertQuery()
+    {
+    DBOutputFormat<DBWritable, Object> outputFormat = new DBOutputFormat<DBWritable, Object>();
+
+    assertArrayEquals( new String[]{ "amount", "region", "id" },
+      DBOutputFormat.getUpsertNames( new String[]{ "id", "amount", "region" }, new String[]{ "id" } ) );
+    assertEquals( "MERGE INTO orders tgt USING ( SELECT ? AS amount, ? AS id ) src ON ( tgt.id = src.id )"
+      + " WHEN MATCHED THEN UPDATE SET amount = src.amount WHEN NOT MATCHED THEN INSERT (amount,id) VALUES (src.amount,src.id)",
+      outputFormat.constructUpsertQuery( "orders", new String[]{ "id", "amount" }, new String[]{ "id" } ) );
+    assertEquals( "MERGE INTO orders tgt USING ( SELECT ? AS id ) src ON ( tgt.id = src.id )"
+      + " WHEN NOT MATCHED THEN INSERT (id) VALUES (src.id)",
+      outputFormat.constructUpsertQuery( "orders", new String[]{ "id" }, new String[]{ "id" } ) );
+    }
+
+  @Test
+  public void testBatchSizerGrowsAndHalves()
+    {
+    DBOutputFormat.BatchSizer batchSizer = new DBOutputFormat.BatchSizer( 1000, 100, 1200, 2000 );
+
+    batchSizer.executed( 1000, 100000000L );
+    assertEquals( 1100, batchSizer.getBatchSize() );
+
+    // a partial batch does not change the size
+    batchSizer.executed( 10, 100000000L );
+    assertEquals( 1100, batchSizer.getBatchSize() );
+
+    batchSizer.executed( 1100, 100000000L );
+    assertEquals( 1200, batchSizer.getBatchSize() );
+
+    batchSizer.executed( 1200, 100000000L );
+    assertEquals( 1200, batchSizer.getBatchSize() );
+
+    // slower than the target
+    batchSizer.executed( 1200, 3000000000L );
+    assertEquals( 600, batchSizer.getBatchSize() );
+
+    batchSizer.executed( 600, 100000000L );
+    assertEquals( 700, batchSizer.getBatchSize() );
+
+    // fewer rows per second than the previous batch
+    batchSizer.executed( 700, 1000000000L );
+    assertEquals( 350, batchSizer.getBatchSize() );
+
+    assertEquals( 7, batchSizer.getBatches() );
+    assertEquals( 5810, batchSizer.getBatchRows() );
+    assertEquals( 4500, batchSizer.getBatchMillis() );
+    }
+
+  @Test
+  public void testFixedBatchSizer()
+    {
+    DBOutputFormat.BatchSizer batchSizer = new DBOutputFormat.BatchSizer( 500 );
+
+    batchSizer.executed( 500, 100000000L );
+    batchSizer.executed( 500, 5000000000L );
+
+    assertEquals( 500, batchSizer.getBatchSize() );
+    assertEquals( 2, batchSizer.getBatches() );
+    }
+
+  @Test
+  public void testAdaptiveBatchesAreCounted() throws Exception
+    {
+    Connection connection = mock( Connection.class );
+    PreparedStatement insert = mock( PreparedStatement.class );
+    when( insert.executeBatch() ).thenReturn( new int[]{ 1, 1 }, new int[]{ 1 } );
+
+    DBOutputFormat<DBWritable, Object> outputFormat = new DBOutputFormat<DBWritable, Object>();
+    DBOutputFormat<DBWritable, Object>.DBRecordWriter writer = outputFormat.new DBRecordWriter(
+      outputFormat.new StatementBatch( connection, insert, null ), null, new DBOutputFormat.BatchSizer( 2, 2, 4, 60000 ), "orders" );
+
+    DBWritable row = mock( DBWritable.class );
+
+    for( int i = 0; i < 3; i++ )
+      writer.write( row, null );
+
+    Reporter reporter = mock( Reporter.class );
+    writer.close( reporter );
+
+    // a full batch of 2 rows grows the batch, the partial batch at close does not
+    verify( insert, times( 2 ) ).executeBatch();
+    verify( reporter ).incrCounter( DBOutputFormat.Counters.BATCHES, 2 );
+    verify( reporter ).incrCounter( DBOutputFormat.Counters.BATCH_ROWS, 3 );
+    verify( reporter, never() ).incrCounter( anyString(), anyString(), anyLong() );
+    }
+
+  @Test
+  public void testSetAdaptiveBatchSize()
+    {
+    JobConf job = new JobConf();
+    DBOutputFormat.setAdaptiveBatchSize( job, 100, 20000, -1 );
+
+    DBConfiguration dbConf = new DBConfiguration( job );
+
+    assertTrue( dbConf.getOutputBatchAdaptive() );
+    assertEquals( 100, dbConf.getOutputBatchMin() );
+    assertEquals( 20000, dbConf.getOutputBatchMax() );
+    assertEquals( 2000, dbConf.getOutputBatchTargetMillis() );
+    }
+
+  private DBOutputFormat<DBWritable, Object>.DBRecordWriter createAsyncWriter( Connection connection, PreparedStatement insert,
+      Connection flushConnection, PreparedStatement flushInsert, int batchSize )
+    {
+    DBOutputFormat<DBWritable, Object> outputFormat = new DBOutputFormat<DBWritable, Object>();
+
+    return outputFormat.new DBRecordWriter( outputFormat.new StatementBatch( connection, insert, null ),
+      outputFormat.new StatementBatch( flushConnection, flushInsert, null ), batchSize );
+    }
+  }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.jdbc.db;
+
+/**
+ * H2 specific sub-class of DBOutputFormat, which upserts with the MERGE ... KEY statement of H2, as H2 1.3 does
+ * not parse the standard MERGE ... USING.
+ */
+public class H2DBOutputFormat<K extends DBWritable, V> extends DBOutputFormat<K, V>
+  {
+  /** Constructs a MERGE INTO table ( columns ) KEY ( key columns ) VALUES ( ?, ... ) statement. */
+  @Override
+  protected String constructUpsertQuery( String table, String[] fieldNames, String[] updateNames )
+    {
+    String[] names = getUpsertNames( fieldNames, updateNames );
+
+    StringBuilder query = new StringBuilder();
+
+    query.append( "MERGE INTO " ).append( table ).append( " (" );
+    for( int i = 0; i < names.length; i++ )
+      {
+      query.append( names[ i ] );
+      if( i != names.length - 1 )
+        query.append( "," );
+      }
+
+    query.append( ") KEY (" );
+    for( int i = 0; i < updateNames.length; i++ )
+      {
+      query.append( updateNames[ i ] );
+      if( i != updateNames.length - 1 )
+        query.append( "," );
+      }
+
+    query.append( ") VALUES (" );
+    for( int i = 0; i < names.length; i++ )
+      {
+      query.append( "?" );
+      if( i != names.length - 1 )
+        query.append( "," );
+      }
+
+    return query.append( ")" ).toString();
+    }
+  }
@@ -20,7 +20,23 @@
 
 package cascading.jdbc;
 
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
 import org.junit.Before;
+import org.junit.Test;
+
+import cascading.jdbc.db.DBConfiguration;
+import cascading.jdbc.db.H2DBOutputFormat;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
 
 /**
  * Runs the tests against an instance of h2:
@@ -34,6 +50,55 @@ public class H2Test extends JDBCTestingBase
     {
     setDriverName( "org.h2.Driver" );
     setJdbcurl( "jdbc:h2:mem:testing;DB_CLOSE_DELAY=-1;MVCC=true" );
+    setFactory( new H2JDBCFactory() );
+    }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testUpsertWithFactory() throws Exception
+    {
+    Connection connection = DriverManager.getConnection( jdbcurl );
+
+    try
+      {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate( "CREATE TABLE upserttest ( id INT NOT NULL PRIMARY KEY, name VARCHAR(100) )" );
+      statement.executeUpdate( "INSERT INTO upserttest VALUES ( 1, 'one' )" );
+
+      Properties schemeProperties = new Properties();
+      schemeProperties.setProperty( JDBCFactory.FORMAT_COLUMNS, "id:name" );
+      schemeProperties.setProperty( JDBCFactory.FORMAT_UPDATE_BY, "id" );
+      schemeProperties.setProperty( JDBCFactory.FORMAT_UPSERT, "true" );
+
+      JDBCScheme scheme = (JDBCScheme) new H2JDBCFactory().createScheme( "h2", new Fields( "id", "name" ), schemeProperties );
+      JDBCTap tap = new JDBCTap( jdbcurl, null, null, driverName, "upserttest", scheme );
+
+      JobConf conf = new JobConf();
+      DBConfiguration.configureDB( conf, driverName, jdbcurl );
+      scheme.sinkConfInit( null, tap, conf );
+
+      assertTrue( conf.getOutputFormat() instanceof H2DBOutputFormat );
+
+      // JDBCScheme#sink orders the values like the update statement, the key columns last
+      RecordWriter<TupleRecord, Object> writer = conf.getOutputFormat().getRecordWriter( null, conf, "upsert", null );
+      writer.write( new TupleRecord( new Tuple( "uno", 1 ) ), null );
+      writer.write( new TupleRecord( new Tuple( "two", 2 ) ), null );
+      writer.close( null );
+
+      ResultSet results = statement.executeQuery( "SELECT id, name FROM upserttest ORDER BY id" );
+
+      assertTrue( results.next() );
+      assertEquals( "uno", results.getString( 2 ) );
+      assertTrue( results.next() );
+      assertEquals( "two", results.getString( 2 ) );
+      assertFalse( results.next() );
+
+      statement.executeUpdate( "DROP TABLE upserttest" );
+      }
+    finally
+      {
+      connection.close();
+      }
     }
 
   }
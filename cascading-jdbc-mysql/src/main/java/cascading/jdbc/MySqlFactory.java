@@ -48,6 +48,35 @@ public class MySqlFactory extends JDBCFactory
     return MySqlDBInputFormat.class;
     }
 
+  /**
+   * Uses the update time of the table, which InnoDB only maintains since MySQL 5.7 and not across restarts. Tables
+   * without an update time are considered as modified.
+   * <p/>
+   * MySQL 8.0 caches the statistics of information_schema.TABLES for information_schema_stats_expiry seconds, a day by
+   * default, so the update time may be that old and a modified table would be skipped. Unless the expiry is 0, like
+   * after <code>SET GLOBAL information_schema_stats_expiry = 0</code>, the query returns NULL on 8.0 and later, and the
+   * table is always considered as modified. The expiry is read from performance_schema, without it the same applies.
+   */
+  @Override
+  protected String getModifiedTimeQuery( String tableName )
+    {
+    if( tableName == null )
+      return null;
+
+    String schema = "DATABASE()";
+    int index = tableName.indexOf( '.' );
+    if( index != -1 )
+      {
+      schema = "'" + tableName.substring( 0, index ).replace( "'", "''" ) + "'";
+      tableName = tableName.substring( index + 1 );
+      }
+
+    // referring to @@information_schema_stats_expiry would fail before 8.0
+    return "SELECT CASE WHEN VERSION() LIKE '5.%' OR ( SELECT VARIABLE_VALUE FROM performance_schema.session_variables "
+      + "WHERE VARIABLE_NAME = 'information_schema_stats_expiry' ) = '0' THEN UPDATE_TIME END "
+      + "FROM information_schema.TABLES WHERE TABLE_SCHEMA = " + schema + " AND TABLE_NAME = '" + tableName.replace( "'", "''" ) + "'";
+    }
+
   protected Scheme createUpdatableScheme( Fields fields, long limit, String[] columnNames, Boolean tableAlias, String conditions,
                                           String[] updateBy, Fields updateByFields, String[] orderBy, Properties properties )
     {
@@ -24,6 +24,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.RecordReader;
@@ -52,6 +53,39 @@ public class MySqlDBInputFormat<T extends DBWritable> extends DBInputFormat<T>
       }
     }
 
+  /**
+   * Estimates the row count from information_schema.TABLES, which is only approximate for InnoDB but does
+   * not scan the table.
+   */
+  @Override
+  protected String getEstimateQuery()
+    {
+    String query = super.getEstimateQuery();
+
+    if( query != null || dbConf.getInputQuery() != null )
+      return query;
+
+    int dot = tableName.indexOf( '.' );
+    String schema = dot == -1 ? "DATABASE()" : toLiteral( tableName.substring( 0, dot ) );
+
+    return String.format( "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = %s AND TABLE_NAME = %s", schema,
+      toLiteral( tableName.substring( dot + 1 ) ) );
+    }
+
+  /** MySQL has no sampling clause, the sample is picked by ORDER BY RAND() LIMIT. */
+  @Override
+  protected String getRandomFunction()
+    {
+    return "RAND()";
+    }
+
+  /** Hashes the columns with CRC32, which is never negative. CONCAT_WS skips NULLs instead of returning NULL. */
+  @Override
+  protected String getHashExpression( String[] columns )
+    {
+    return "CRC32( CONCAT_WS( '|', " + StringUtils.join( columns, ", " ) + " ) )";
+    }
+
   @Override
   protected RecordReader<LongWritable, T> getRecordReaderInternal( DBInputSplit split, Class inputClass, JobConf job ) throws SQLException,
     IOException
@@ -45,9 +45,9 @@ public class MySqlDBOutputFormat<K extends DBWritable, V> extends DBOutputFormat
 
   /** {@inheritDoc} */
   @Override
-  protected String constructInsertQuery( String table, String[] fieldNames )
+  protected String constructInsertQuery( String table, String[] fieldNames, int rows )
     {
-    StringBuilder query = new StringBuilder( super.constructInsertQuery( table, fieldNames ) );
+    StringBuilder query = new StringBuilder( super.constructInsertQuery( table, fieldNames, rows ) );
     if( replaceOnInsert )
       {
       query.append( " ON DUPLICATE KEY UPDATE " );
@@ -61,4 +61,27 @@ public class MySqlDBOutputFormat<K extends DBWritable, V> extends DBOutputFormat
       }
     return query.toString();
     }
+
+  /** Constructs an INSERT ... ON DUPLICATE KEY UPDATE statement, updating the row of any unique key of the table. */
+  @Override
+  protected String constructUpsertQuery( String table, String[] fieldNames, String[] updateNames )
+    {
+    String[] names = getUpsertNames( fieldNames, updateNames );
+
+    // the plain insert, without the ON DUPLICATE KEY UPDATE of replaceOnInsert
+    StringBuilder query = new StringBuilder( super.constructInsertQuery( table, names, 1 ) );
+    query.append( " ON DUPLICATE KEY UPDATE " );
+
+    // with only key columns, the row is left as it is
+    int valueCount = Math.max( 1, names.length - updateNames.length );
+
+    for( int i = 0; i < valueCount; i++ )
+      {
+      query.append( String.format( "%s=VALUES(%s)", names[ i ], names[ i ] ) );
+      if( i != valueCount - 1 )
+        query.append( "," );
+      }
+
+    return query.toString();
+    }
   }
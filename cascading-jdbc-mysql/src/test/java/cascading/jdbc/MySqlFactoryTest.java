@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.jdbc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MySqlFactoryTest
+  {
+
+  @Test
+  public void testGetModifiedTimeQuery()
+    {
+    MySqlFactory factory = new MySqlFactory();
+
+    // the update time is only trusted while information_schema.TABLES is not cached
+    assertEquals( "SELECT CASE WHEN VERSION() LIKE '5.%' OR ( SELECT VARIABLE_VALUE FROM performance_schema.session_variables "
+      + "WHERE VARIABLE_NAME = 'information_schema_stats_expiry' ) = '0' THEN UPDATE_TIME END FROM information_schema.TABLES "
+      + "WHERE TABLE_SCHEMA = 'shop' AND TABLE_NAME = 'orders'", factory.getModifiedTimeQuery( "shop.orders" ) );
+    assertNull( factory.getModifiedTimeQuery( null ) );
+    }
+
+  }
@@ -20,7 +20,9 @@
 package cascading.jdbc;
 
 import cascading.jdbc.db.DBInputFormat;
+import cascading.jdbc.db.DBOutputFormat;
 import cascading.jdbc.db.OracleDBInputFormat;
+import cascading.jdbc.db.OracleDBOutputFormat;
 
 public class OracleJDBCFactory extends JDBCFactory
   {
@@ -29,4 +31,10 @@ public class OracleJDBCFactory extends JDBCFactory
     {
     return OracleDBInputFormat.class;
     }
+
+  @Override
+  protected Class<? extends DBOutputFormat> getOutputFormClass()
+    {
+    return OracleDBOutputFormat.class;
+    }
   }
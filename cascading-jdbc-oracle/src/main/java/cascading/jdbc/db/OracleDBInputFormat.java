@@ -37,9 +37,18 @@
 package cascading.jdbc.db;
 
 import java.io.IOException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.slf4j.Logger;
@@ -50,6 +59,14 @@ import cascading.jdbc.JDBCFactory;
 @SuppressWarnings("rawtypes")
 public class OracleDBInputFormat extends DBInputFormat<DBWritable>
   {
+    private static final Logger LOG = LoggerFactory.getLogger(OracleDBInputFormat.class);
+
+    /** Digits of the base 64 encoding of extended ROWIDs */
+    private static final String ROWID_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /** Highest row number of a block used as upper bound of a ROWID range */
+    private static final long MAX_ROW = 32767;
+
     class OracleDBRecordReader extends DBInputFormat.DBRecordReader
     {
 
@@ -75,27 +92,32 @@ public class OracleDBInputFormat extends DBInputFormat<DBWritable>
           }   
       
           query.append(" FROM ").append(tableName);
-          if (conditions != null && conditions.length() > 0)
-            query.append(" WHERE ").append(conditions);
+          if (split.getSnapshot() != null) {
+            query.append(" AS OF SCN ").append(Long.parseLong(split.getSnapshot()));
+          }
+          appendConditions(query, conditions, split.getPredicate());
           String orderBy = dbConf.getInputOrderBy();
           if (orderBy != null && orderBy.length() > 0) {
             query.append(" ORDER BY ").append(orderBy);
           }   
         } else {
-          //PREBUILT QUERY
-          query.append(dbConf.getInputQuery());
+          //PREBUILT QUERY, possibly projected or bounded by a key range
+          query.append(getInputQuery());
         }   
         
         try {
           
-          if (split.getLength() > 0 && split.getStart() >= 0){ 
+          if (split.getPredicate() == null && split.getChunks() > 1){ 
             String querystring = query.toString();
 
             query = new StringBuilder();
             query.append("SELECT * FROM (SELECT a.*,ROWNUM dbif_rno FROM ( ");
             query.append(querystring);
-            query.append(" ) a WHERE rownum <= ").append(split.getStart());
-            query.append(" + ").append(split.getLength());
+            query.append(" ) a");
+            if (!split.isOpenEnded()) {
+              query.append(" WHERE rownum <= ").append(split.getStart());
+              query.append(" + ").append(split.getLength());
+            }
             query.append(" ) WHERE dbif_rno >= ").append(split.getStart() + 1 );
           }   
         } catch (IOException ex) {
@@ -107,6 +129,246 @@ public class OracleDBInputFormat extends DBInputFormat<DBWritable>
 
     }
     
+    /** Estimates the row count from ALL_TABLES.NUM_ROWS, as gathered by DBMS_STATS. */
+    @Override
+    protected String getEstimateQuery() {
+      String query = super.getEstimateQuery();
+
+      if (query != null || dbConf.getInputQuery() != null)
+        return query;
+
+      int dot = tableName.indexOf('.');
+      String owner = dot == -1 ? "SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA')" : toLiteral(tableName.substring(0, dot).toUpperCase());
+
+      return String.format("SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = %s AND TABLE_NAME = %s", owner,
+        toLiteral(tableName.substring(dot + 1).toUpperCase()));
+    }
+
+    /**
+     * Splits a table into ROWID ranges of its extents, so that every split reads only its own blocks instead of
+     * producing and discarding all rows before its ROWNUM offset. Input queries, limits and the other split modes
+     * keep their splits, as do tables whose extents can't be read.
+     */
+    @Override
+    protected InputSplit[] computeSplits(int chunks) throws IOException {
+      chunks = maxConcurrentReads == 0 ? chunks : maxConcurrentReads;
+
+      if (chunks <= 1 || dbConf.getInputQuery() != null || limit != -1 || splitBy != null || splitByHash != null || splitPredicates != null)
+        return super.computeSplits(chunks);
+
+      List<long[]> extents = null;
+      Connection connection = openConnection();
+
+      try {
+        extents = readExtents(connection);
+      } catch (SQLException exception) {
+        LOG.warn("unable to read extents of {}, splitting by ROWNUM", tableName, exception);
+      } finally {
+        closeConnection(connection);
+      }
+
+      if (extents == null)
+        return super.computeSplits(chunks);
+
+      // a table without a segment has no rows yet
+      if (extents.isEmpty())
+        return new InputSplit[]{new DBInputSplit(0, 0, 1)};
+
+      return createRowidSplits(extents, chunks);
+    }
+
+    /**
+     * Groups the extents, given as data object id, relative file number, first block and number of blocks in ROWID
+     * order, into at most the given number of splits of about the same number of blocks. Every split reads the ROWID
+     * range from the first block of its first extent to the last block of its last extent.
+     */
+    protected DBInputSplit[] createRowidSplits(List<long[]> extents, int chunks) {
+      long total = 0;
+
+      for (long[] extent : extents)
+        total += extent[3];
+
+      List<DBInputSplit> splits = new ArrayList<DBInputSplit>();
+      long blocks = 0;
+      long start = 0;
+      int first = 0;
+
+      for (int i = 0; i < extents.size(); i++) {
+        blocks += extents.get(i)[3];
+
+        if (i == extents.size() - 1 || blocks * chunks >= total * (splits.size() + 1)) {
+          long[] low = extents.get(first);
+          long[] high = extents.get(i);
+
+          String predicate = "ROWID BETWEEN CHARTOROWID('" + toRowid(low[0], low[1], low[2], 0) + "') AND CHARTOROWID('"
+            + toRowid(high[0], high[1], high[2] + high[3] - 1, MAX_ROW) + "')";
+
+          splits.add(new DBInputSplit(start, blocks, chunks, predicate));
+          start = blocks;
+          first = i + 1;
+        }
+      }
+
+      return splits.toArray(new DBInputSplit[splits.size()]);
+    }
+
+    /**
+     * Samples tables with the SAMPLE clause at the fraction of the estimated rows giving about the requested number
+     * of values, and input queries by ORDER BY DBMS_RANDOM.VALUE and ROWNUM, as Oracle has no LIMIT.
+     */
+    @Override
+    protected String getSampleQuery(int sampleSize, long estimatedRows) {
+      StringBuilder query = new StringBuilder();
+
+      query.append("SELECT ").append(splitBy).append(" FROM ");
+
+      if (dbConf.getInputQuery() == null && estimatedRows > 0) {
+        double percent = Math.max(0.000001, Math.min(99.999999, 100.0 * sampleSize / estimatedRows));
+
+        query.append(tableName).append(" SAMPLE (").append(String.format(Locale.ROOT, "%.6f", percent)).append(")");
+        appendConditions(query, conditions, splitBy + " IS NOT NULL");
+
+        return query.toString();
+      }
+
+      if (dbConf.getInputQuery() == null)
+        query.append(tableName);
+      else
+        query.append("( ").append(dbConf.getInputQuery()).append(" ) dbif_split");
+
+      appendConditions(query, dbConf.getInputQuery() == null ? conditions : null, splitBy + " IS NOT NULL");
+      query.append(" ORDER BY DBMS_RANDOM.VALUE");
+
+      return "SELECT * FROM ( " + query + " ) WHERE ROWNUM <= " + sampleSize;
+    }
+
+    /** Encodes an extended ROWID from its data object id, relative file number, block and row number. */
+    static String toRowid(long objectId, long file, long block, long row) {
+      StringBuilder rowid = new StringBuilder(18);
+
+      appendRowidDigits(rowid, objectId, 6);
+      appendRowidDigits(rowid, file, 3);
+      appendRowidDigits(rowid, block, 6);
+      appendRowidDigits(rowid, row, 3);
+
+      return rowid.toString();
+    }
+
+    private static void appendRowidDigits(StringBuilder rowid, long value, int digits) {
+      for (int i = digits - 1; i >= 0; i--)
+        rowid.append(ROWID_DIGITS.charAt((int) ((value >> (6 * i)) & 63)));
+    }
+
+    /**
+     * Returns the query for getting the extents of the table and its partitions in ROWID order. Tables of the current
+     * schema are looked up in USER_EXTENTS, tables of other schemas need access to DBA_EXTENTS.
+     */
+    protected String getExtentsQuery() {
+      int dot = tableName.indexOf('.');
+      String segment = toLiteral(tableName.substring(dot + 1).toUpperCase());
+
+      if (dot == -1)
+        return "SELECT o.DATA_OBJECT_ID, e.RELATIVE_FNO, e.BLOCK_ID, e.BLOCKS FROM USER_EXTENTS e JOIN USER_OBJECTS o "
+          + "ON o.OBJECT_NAME = e.SEGMENT_NAME AND NVL(o.SUBOBJECT_NAME, '-') = NVL(e.PARTITION_NAME, '-') "
+          + "WHERE e.SEGMENT_NAME = " + segment + " AND o.OBJECT_TYPE LIKE 'TABLE%' ORDER BY 1, 2, 3";
+
+      String owner = toLiteral(tableName.substring(0, dot).toUpperCase());
+
+      return "SELECT o.DATA_OBJECT_ID, e.RELATIVE_FNO, e.BLOCK_ID, e.BLOCKS FROM DBA_EXTENTS e JOIN DBA_OBJECTS o "
+        + "ON o.OWNER = e.OWNER AND o.OBJECT_NAME = e.SEGMENT_NAME AND NVL(o.SUBOBJECT_NAME, '-') = NVL(e.PARTITION_NAME, '-') "
+        + "WHERE e.OWNER = " + owner + " AND e.SEGMENT_NAME = " + segment + " AND o.OBJECT_TYPE LIKE 'TABLE%' ORDER BY 1, 2, 3";
+    }
+
+    private List<long[]> readExtents(Connection connection) throws SQLException {
+      String query = getExtentsQuery();
+      Statement statement = connection.createStatement();
+
+      try {
+        LOG.info(query);
+        ResultSet results = statement.executeQuery(query);
+        List<long[]> extents = new ArrayList<long[]>();
+
+        while (results.next())
+          extents.add(new long[]{results.getLong(1), results.getLong(2), results.getLong(3), results.getLong(4)});
+
+        results.close();
+
+        return extents;
+      } finally {
+        statement.close();
+      }
+    }
+
+    /** Exports the current system change number, which the splits read the tables AS OF. */
+    @Override
+    protected String exportSnapshot() throws SQLException, IOException {
+      Connection connection = dbConf.getConnection();
+
+      try {
+        Statement statement = connection.createStatement();
+        ResultSet results = statement.executeQuery("SELECT DBMS_FLASHBACK.GET_SYSTEM_CHANGE_NUMBER FROM DUAL");
+
+        results.next();
+        long scn = results.getLong(1);
+
+        results.close();
+        statement.close();
+
+        return String.valueOf(scn);
+      } finally {
+        connection.close();
+      }
+    }
+
+    /** Oracle has no REPEATABLE READ, the SCN already makes every split consistent. */
+    @Override
+    protected int getSnapshotIsolationLevel() {
+      return Connection.TRANSACTION_READ_COMMITTED;
+    }
+
+    /**
+     * Tables are read AS OF the SCN, a free form input query can't be rewritten and is run with the whole
+     * session in flashback mode instead.
+     */
+    @Override
+    protected void attachSnapshot(Connection connection, String snapshot) throws SQLException {
+      if (dbConf.getInputQuery() == null)
+        return;
+
+      CallableStatement statement = connection.prepareCall("{call DBMS_FLASHBACK.ENABLE_AT_SYSTEM_CHANGE_NUMBER(?)}");
+
+      try {
+        statement.setLong(1, Long.parseLong(snapshot));
+        statement.execute();
+      } finally {
+        statement.close();
+      }
+    }
+
+    /** Ends the flashback mode of the session, which would otherwise outlive the reader in a pooled connection. */
+    @Override
+    protected void detachSnapshot(Connection connection, String snapshot) throws SQLException {
+      if (dbConf.getInputQuery() == null)
+        return;
+
+      CallableStatement statement = connection.prepareCall("{call DBMS_FLASHBACK.DISABLE}");
+
+      try {
+        statement.execute();
+      } finally {
+        statement.close();
+      }
+    }
+
+    /** Hashes the columns with ORA_HASH, which is never negative. Concatenation treats NULLs as empty strings. */
+    @Override
+    protected String getHashExpression(String[] columns) {
+      if (columns.length == 1)
+        return "ORA_HASH(" + columns[0] + ")";
+
+      return "ORA_HASH(" + StringUtils.join(columns, " || '|' || ") + ")";
+    }
+
     @Override
     protected RecordReader<LongWritable, DBWritable> getRecordReaderInternal( cascading.jdbc.db.DBInputFormat.DBInputSplit split,
       Class inputClass, JobConf job ) throws SQLException, IOException
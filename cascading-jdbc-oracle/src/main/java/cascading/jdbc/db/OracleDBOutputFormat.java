@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.jdbc.db;
+
+/**
+ * Oracle specific sub-class of DBOutputFormat, which upserts with a MERGE statement merging from DUAL.
+ */
+public class OracleDBOutputFormat<K extends DBWritable, V> extends DBOutputFormat<K, V>
+  {
+  /** Oracle requires a FROM clause, the row of parameters is selected from DUAL. */
+  @Override
+  protected String constructMergeSource( String[] names )
+    {
+    return super.constructMergeSource( names ) + " FROM DUAL";
+    }
+  }
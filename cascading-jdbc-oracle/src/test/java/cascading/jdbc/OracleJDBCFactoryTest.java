@@ -24,6 +24,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import cascading.jdbc.db.OracleDBInputFormat;
+import cascading.jdbc.db.OracleDBOutputFormat;
 
 public class OracleJDBCFactoryTest
   {
@@ -33,5 +34,18 @@ public class OracleJDBCFactoryTest
     {
     assertEquals(OracleDBInputFormat.class, new OracleJDBCFactory().getInputFormatClass());
     }
+
+  @Test
+  public void testGetOutputFormatClass()
+    {
+    assertEquals( OracleDBOutputFormat.class, new OracleJDBCFactory().getOutputFormClass() );
+    }
+
+  @Test
+  public void testGetModifiedTimeQuery()
+    {
+    // MAX(ORA_ROWSCN) scans the whole table, it is only used when asked for by the modifiedtimequery property
+    assertNull( new OracleJDBCFactory().getModifiedTimeQuery( "employees" ) );
+    }
   
   }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+import cascading.jdbc.TupleRecord;
+
+public class OracleDBInputFormatTest
+  {
+
+  private JobConf createTableInput( String tableName )
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, tableName, null, null, -1, 2, false, "id", "amount" );
+    return job;
+    }
+
+  @Test
+  public void testToRowid()
+    {
+    assertEquals( "AAAR3sAAEAAAACXAAA", OracleDBInputFormat.toRowid( 73196, 4, 151, 0 ) );
+    assertEquals( "AAAAAAAAAAAAAAAH//", OracleDBInputFormat.toRowid( 0, 0, 0, 32767 ) );
+    }
+
+  @Test
+  public void testRowidSplits()
+    {
+    OracleDBInputFormat inputFormat = new OracleDBInputFormat();
+    inputFormat.configure( createTableInput( "orders" ) );
+
+    DBInputFormat.DBInputSplit[] splits = inputFormat.createRowidSplits( Arrays.asList( new long[]{100, 4, 128, 8}, new long[]{100, 4, 136, 8},
+      new long[]{100, 4, 256, 16}, new long[]{101, 5, 8, 32} ), 2 );
+
+    assertEquals( 2, splits.length );
+    assertEquals( "ROWID BETWEEN CHARTOROWID('" + OracleDBInputFormat.toRowid( 100, 4, 128, 0 ) + "') AND CHARTOROWID('"
+      + OracleDBInputFormat.toRowid( 100, 4, 271, 32767 ) + "')", splits[ 0 ].getPredicate() );
+    assertEquals( "ROWID BETWEEN CHARTOROWID('" + OracleDBInputFormat.toRowid( 101, 5, 8, 0 ) + "') AND CHARTOROWID('"
+      + OracleDBInputFormat.toRowid( 101, 5, 39, 32767 ) + "')", splits[ 1 ].getPredicate() );
+    }
+
+  @Test
+  public void testSplitsByExtents() throws Exception
+    {
+    JobConf job = createTableInput( "sales.orders" );
+
+    OracleDBInputFormat inputFormat = new OracleDBInputFormat();
+    inputFormat.configure( job );
+
+    assertTrue( inputFormat.getExtentsQuery().contains( "WHERE e.OWNER = 'SALES' AND e.SEGMENT_NAME = 'ORDERS'" ) );
+
+    ResultSet results = mock( ResultSet.class );
+    when( results.next() ).thenReturn( true, true, false );
+    when( results.getLong( 1 ) ).thenReturn( 100L );
+    when( results.getLong( 2 ) ).thenReturn( 4L );
+    when( results.getLong( 3 ) ).thenReturn( 128L, 136L );
+    when( results.getLong( 4 ) ).thenReturn( 8L );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( inputFormat.getExtentsQuery() ) ).thenReturn( results );
+
+    Connection connection = mock( Connection.class );
+    when( connection.createStatement() ).thenReturn( statement );
+    inputFormat = spy( inputFormat );
+    doReturn( connection ).when( inputFormat ).openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verify( statement, never() ).executeQuery( "SELECT COUNT(*) FROM sales.orders" );
+    assertEquals( 2, splits.length );
+    assertEquals( "ROWID BETWEEN CHARTOROWID('" + OracleDBInputFormat.toRowid( 100, 4, 136, 0 ) + "') AND CHARTOROWID('"
+      + OracleDBInputFormat.toRowid( 100, 4, 143, 32767 ) + "')", ( (DBInputFormat.DBInputSplit) splits[ 1 ] ).getPredicate() );
+    }
+
+  @Test
+  public void testFlashbackOfInputQueryIsDisabled() throws Exception
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "SELECT id, amount FROM orders", null, -1, 2, false );
+
+    OracleDBInputFormat inputFormat = new OracleDBInputFormat();
+    inputFormat.configure( job );
+
+    CallableStatement enable = mock( CallableStatement.class );
+    CallableStatement disable = mock( CallableStatement.class );
+    Connection connection = mock( Connection.class );
+    when( connection.prepareCall( "{call DBMS_FLASHBACK.ENABLE_AT_SYSTEM_CHANGE_NUMBER(?)}" ) ).thenReturn( enable );
+    when( connection.prepareCall( "{call DBMS_FLASHBACK.DISABLE}" ) ).thenReturn( disable );
+
+    inputFormat.attachSnapshot( connection, "4711" );
+    inputFormat.detachSnapshot( connection, "4711" );
+
+    verify( enable ).setLong( 1, 4711L );
+    verify( enable ).execute();
+    verify( disable ).execute();
+    verify( disable ).close();
+    }
+  }
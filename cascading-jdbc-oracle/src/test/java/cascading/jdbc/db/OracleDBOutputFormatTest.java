@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OracleDBOutputFormatTest
+  {
+  @Test
+  public void testUpsertQuery()
+    {
+    OracleDBOutputFormat<DBWritable, Object> outputFormat = new OracleDBOutputFormat<DBWritable, Object>();
+
+    assertEquals( "MERGE INTO sales.orders tgt USING ( SELECT ? AS amount, ? AS id FROM DUAL ) src ON ( tgt.id = src.id )"
+      + " WHEN MATCHED THEN UPDATE SET amount = src.amount WHEN NOT MATCHED THEN INSERT (amount,id) VALUES (src.amount,src.id)",
+      outputFormat.constructUpsertQuery( "sales.orders", new String[]{ "id", "amount" }, new String[]{ "id" } ) );
+    }
+  }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc;
+
+import cascading.jdbc.db.DBInputFormat;
+import cascading.jdbc.db.DBOutputFormat;
+import cascading.jdbc.db.PostgresDBInputFormat;
+import cascading.jdbc.db.PostgresDBOutputFormat;
+
+/**
+ * Subclass of JDBCFactory with PostgreSQL specific behaviour.
+ */
+public class PostgresJDBCFactory extends JDBCFactory
+  {
+  @Override
+  protected Class<? extends DBInputFormat> getInputFormatClass()
+    {
+    return PostgresDBInputFormat.class;
+    }
+
+  /** Streams the rows of sinks with COPY FROM STDIN, and upserts them with INSERT ... ON CONFLICT DO UPDATE. */
+  @Override
+  protected Class<? extends DBOutputFormat> getOutputFormClass()
+    {
+    return PostgresDBOutputFormat.class;
+    }
+
+  /**
+   * Uses the row counters of the statistics collector and the file node of the table as version, the latter changes
+   * on a TRUNCATE. The counters are updated asynchronously, shortly after a transaction ends. PostgreSQL keeps no
+   * time of the last modification, and the times of the last vacuum or analyze miss small changes, so the version is
+   * only of use if the time it was first seen is kept across runs, see {@link JDBCTap#setModifiedTimeQuery(String)}.
+   */
+  @Override
+  protected String getModifiedTimeQuery( String tableName )
+    {
+    if( tableName == null )
+      return null;
+
+    return "SELECT n_tup_ins || '.' || n_tup_upd || '.' || n_tup_del || '.' || pg_relation_filenode( relid ) "
+      + "FROM pg_stat_user_tables WHERE relid = CAST( '" + tableName.replace( "'", "''" ) + "' AS regclass )";
+    }
+  }
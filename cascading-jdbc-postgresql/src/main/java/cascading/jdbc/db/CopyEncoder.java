@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.TimeZone;
+
+import cascading.tuple.Tuple;
+
+/**
+ * Class CopyEncoder encodes tuples into the buffered data of a PostgreSQL COPY FROM STDIN stream.
+ *
+ * @see PostgresDBOutputFormat
+ */
+abstract class CopyEncoder
+  {
+  static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  /** The buffered data, exposing its array to avoid copying it */
+  static class Buffer extends ByteArrayOutputStream
+    {
+    Buffer( int size )
+      {
+      super( size );
+      }
+
+    byte[] array()
+      {
+      return buf;
+      }
+    }
+
+  final Buffer buffer;
+
+  CopyEncoder( Buffer buffer )
+    {
+    this.buffer = buffer;
+    }
+
+  static CopyEncoder forFormat( String format, Buffer buffer )
+    {
+    if( PostgresDBConfiguration.COPY_FORMAT_BINARY.equalsIgnoreCase( format ) )
+      return new BinaryEncoder( buffer );
+
+    if( PostgresDBConfiguration.COPY_FORMAT_CSV.equalsIgnoreCase( format ) )
+      return new CsvEncoder( buffer );
+
+    throw new IllegalArgumentException( "unknown COPY format: " + format );
+    }
+
+  /** Returns the format option of the COPY statement. */
+  abstract String getFormat();
+
+  /** Writes the data preceding the first row. */
+  void start() throws IOException
+    {
+    }
+
+  /** Appends the given tuple as one row to the buffer. */
+  abstract void encode( Tuple tuple ) throws IOException;
+
+  /** Writes the data following the last row. */
+  void finish() throws IOException
+    {
+    }
+
+  /** Encodes values the way the text input functions of PostgreSQL read them. */
+  static class CsvEncoder extends CopyEncoder
+    {
+    private final Writer writer;
+
+    CsvEncoder( Buffer buffer )
+      {
+      super( buffer );
+      this.writer = new OutputStreamWriter( buffer, UTF8 );
+      }
+
+    @Override
+    String getFormat()
+      {
+      return "CSV";
+      }
+
+    @Override
+    void encode( Tuple tuple ) throws IOException
+      {
+      for( int i = 0; i < tuple.size(); i++ )
+        {
+        if( i != 0 )
+          writer.write( ',' );
+
+        Object value = tuple.getObject( i );
+
+        // an unquoted empty value is NULL
+        if( value != null )
+          writeValue( toText( value ) );
+        }
+
+      writer.write( '\n' );
+      writer.flush();
+      }
+
+    private void writeValue( String text ) throws IOException
+      {
+      if( !needsQuotes( text ) )
+        {
+        writer.write( text );
+        return;
+        }
+
+      writer.write( '"' );
+
+      for( int i = 0; i < text.length(); i++ )
+        {
+        char c = text.charAt( i );
+
+        if( c == '"' )
+          writer.write( '"' );
+
+        writer.write( c );
+        }
+
+      writer.write( '"' );
+      }
+
+    private static boolean needsQuotes( String text )
+      {
+      // quoted empty strings are empty strings, a lone \. marks the end of the data
+      if( text.isEmpty() || text.equals( "\\." ) )
+        return true;
+
+      for( int i = 0; i < text.length(); i++ )
+        {
+        char c = text.charAt( i );
+
+        if( c == ',' || c == '"' || c == '\n' || c == '\r' )
+          return true;
+        }
+
+      return false;
+      }
+
+    private static String toText( Object value )
+      {
+      if( value instanceof BigDecimal )
+        return ( (BigDecimal) value ).toPlainString();
+
+      if( value instanceof byte[] )
+        return toHex( (byte[]) value );
+
+      if( value instanceof java.util.Date && !( value instanceof java.sql.Date || value instanceof Time || value instanceof Timestamp ) )
+        return new Timestamp( ( (java.util.Date) value ).getTime() ).toString();
+
+      return value.toString();
+      }
+
+    private static String toHex( byte[] bytes )
+      {
+      StringBuilder hex = new StringBuilder( 2 + bytes.length * 2 ).append( "\\x" );
+
+      for( byte b : bytes )
+        hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+
+      return hex.toString();
+      }
+    }
+
+  /**
+   * Encodes values in the binary format of PostgreSQL. The binary format is not converted by the server, so
+   * the Java types of the values have to match the column types: Long for bigint, Integer for integer, Double
+   * for double precision and so on. Timestamps are written as timestamp without time zone in the local time
+   * zone of the JVM.
+   */
+  static class BinaryEncoder extends CopyEncoder
+    {
+    private static final byte[] SIGNATURE = new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /** 2000-01-01, the epoch of the binary date and time values of PostgreSQL */
+    private static final long POSTGRES_EPOCH_DAYS = 10957;
+    private static final long POSTGRES_EPOCH_MILLIS = POSTGRES_EPOCH_DAYS * 86400000L;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private static final int NUMERIC_NEGATIVE = 0x4000;
+
+    private final DataOutputStream output;
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    BinaryEncoder( Buffer buffer )
+      {
+      super( buffer );
+      this.output = new DataOutputStream( buffer );
+      }
+
+    @Override
+    String getFormat()
+      {
+      return "BINARY";
+      }
+
+    @Override
+    void start() throws IOException
+      {
+      output.write( SIGNATURE );
+      output.writeInt( 0 ); // flags
+      output.writeInt( 0 ); // header extension length
+      }
+
+    @Override
+    void encode( Tuple tuple ) throws IOException
+      {
+      output.writeShort( tuple.size() );
+
+      for( int i = 0; i < tuple.size(); i++ )
+        writeValue( tuple.getObject( i ) );
+      }
+
+    @Override
+    void finish() throws IOException
+      {
+      output.writeShort( -1 );
+      }
+
+    private void writeValue( Object value ) throws IOException
+      {
+      if( value == null )
+        {
+        output.writeInt( -1 );
+        }
+      else if( value instanceof Long )
+        {
+        output.writeInt( 8 );
+        output.writeLong( (Long) value );
+        }
+      else if( value instanceof Integer )
+        {
+        output.writeInt( 4 );
+        output.writeInt( (Integer) value );
+        }
+      else if( value instanceof Short || value instanceof Byte )
+        {
+        output.writeInt( 2 );
+        output.writeShort( ( (Number) value ).shortValue() );
+        }
+      else if( value instanceof Double )
+        {
+        output.writeInt( 8 );
+        output.writeDouble( (Double) value );
+        }
+      else if( value instanceof Float )
+        {
+        output.writeInt( 4 );
+        output.writeFloat( (Float) value );
+        }
+      else if( value instanceof Boolean )
+        {
+        output.writeInt( 1 );
+        output.writeByte( (Boolean) value ? 1 : 0 );
+        }
+      else if( value instanceof String )
+        {
+        writeBytes( ( (String) value ).getBytes( UTF8 ) );
+        }
+      else if( value instanceof byte[] )
+        {
+        writeBytes( (byte[]) value );
+        }
+      else if( value instanceof Timestamp )
+        {
+        Timestamp timestamp = (Timestamp) value;
+        long seconds = floorDiv( localMillis( timestamp.getTime() ) - POSTGRES_EPOCH_MILLIS, 1000 );
+
+        output.writeInt( 8 );
+        output.writeLong( seconds * 1000000 + timestamp.getNanos() / 1000 );
+        }
+      else if( value instanceof java.sql.Date )
+        {
+        output.writeInt( 4 );
+        output.writeInt( (int) ( floorDiv( localMillis( ( (java.sql.Date) value ).getTime() ), MILLIS_PER_DAY ) - POSTGRES_EPOCH_DAYS ) );
+        }
+      else if( value instanceof Time )
+        {
+        long millis = localMillis( ( (Time) value ).getTime() ) % MILLIS_PER_DAY;
+
+        output.writeInt( 8 );
+        output.writeLong( ( millis < 0 ? millis + MILLIS_PER_DAY : millis ) * 1000 );
+        }
+      else if( value instanceof BigDecimal )
+        {
+        writeNumeric( (BigDecimal) value );
+        }
+      else
+        {
+        throw new IOException( "cannot write values of " + value.getClass().getName() + " with binary COPY, use the csv format" );
+        }
+      }
+
+    private void writeBytes( byte[] bytes ) throws IOException
+      {
+      output.writeInt( bytes.length );
+      output.write( bytes );
+      }
+
+    /** Writes the value as base 10000 digits, the first one being the weight-th power of 10000. */
+    private void writeNumeric( BigDecimal value ) throws IOException
+      {
+      if( value.scale() < 0 )
+        value = value.setScale( 0 );
+
+      String plain = value.unscaledValue().abs().toString();
+      int scale = value.scale();
+
+      // pad the integral part to full groups of four digits on the left, the fraction on the right
+      int integralDigits = Math.max( plain.length() - scale, 0 );
+      int integralPadding = ( 4 - integralDigits % 4 ) % 4;
+      int fractionPadding = ( 4 - scale % 4 ) % 4;
+
+      StringBuilder digits = new StringBuilder();
+
+      for( int i = 0; i < integralPadding; i++ )
+        digits.append( '0' );
+
+      for( int i = plain.length(); i < scale; i++ )
+        digits.append( '0' );
+
+      digits.append( plain );
+
+      for( int i = 0; i < fractionPadding; i++ )
+        digits.append( '0' );
+
+      int groups = digits.length() / 4;
+      int weight = ( integralDigits + integralPadding ) / 4 - 1;
+      int first = 0;
+      int last = groups;
+
+      while( first < last && digits.substring( first * 4, first * 4 + 4 ).equals( "0000" ) )
+        {
+        first++;
+        weight--;
+        }
+
+      while( last > first && digits.substring( last * 4 - 4, last * 4 ).equals( "0000" ) )
+        last--;
+
+      if( first == last )
+        weight = 0;
+
+      output.writeInt( 8 + 2 * ( last - first ) );
+      output.writeShort( last - first );
+      output.writeShort( weight );
+      output.writeShort( value.signum() < 0 ? NUMERIC_NEGATIVE : 0 );
+      output.writeShort( scale );
+
+      for( int i = first; i < last; i++ )
+        output.writeShort( Integer.parseInt( digits.substring( i * 4, i * 4 + 4 ) ) );
+      }
+
+    /** Returns the wall clock time of the local time zone as milliseconds since the epoch in UTC. */
+    private long localMillis( long millis )
+      {
+      return millis + timeZone.getOffset( millis );
+      }
+
+    private static long floorDiv( long dividend, long divisor )
+      {
+      long quotient = dividend / divisor;
+
+      if( ( dividend % divisor != 0 ) && ( ( dividend < 0 ) != ( divisor < 0 ) ) )
+        quotient--;
+
+      return quotient;
+      }
+    }
+  }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import org.apache.hadoop.conf.Configuration;
+
+public class PostgresDBConfiguration
+  {
+
+  /** Format of the data streamed by COPY FROM STDIN, either csv or binary. */
+  public static final String COPY_FORMAT = "mapred.jdbc.output.copy.format";
+
+  /** Number of bytes buffered before they are sent to the COPY FROM STDIN stream. */
+  public static final String COPY_FLUSH_SIZE = "mapred.jdbc.output.copy.flush.size";
+
+  public static final String COPY_FORMAT_CSV = "csv";
+  public static final String COPY_FORMAT_BINARY = "binary";
+
+  private Configuration job;
+
+  public PostgresDBConfiguration( Configuration job )
+    {
+    this.job = job;
+    }
+
+  public String getCopyFormat()
+    {
+    return job.get( PostgresDBConfiguration.COPY_FORMAT, COPY_FORMAT_CSV );
+    }
+
+  public void setCopyFormat( String copyFormat )
+    {
+    job.set( PostgresDBConfiguration.COPY_FORMAT, copyFormat );
+    }
+
+  public int getCopyFlushSize()
+    {
+    return job.getInt( PostgresDBConfiguration.COPY_FLUSH_SIZE, 64 * 1024 );
+    }
+
+  public void setCopyFlushSize( int copyFlushSize )
+    {
+    job.setInt( PostgresDBConfiguration.COPY_FLUSH_SIZE, copyFlushSize );
+    }
+
+  }
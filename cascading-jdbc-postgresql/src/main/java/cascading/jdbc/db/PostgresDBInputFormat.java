@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PostgreSQL specific sub-class of DBInputFormat, which estimates the row count from the planner statistics
+ * instead of counting all rows, and shares snapshots between the splits with pg_export_snapshot().
+ * <p/>
+ * Tables are split into ranges of their pages by ctid, which PostgreSQL 14 and later read with a TID range
+ * scan, and every split is streamed through a server side cursor.
+ */
+public class PostgresDBInputFormat<T extends DBWritable> extends DBInputFormat<T>
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( PostgresDBInputFormat.class );
+
+  /** matches the estimated row count of the top plan node in EXPLAIN output */
+  private static final Pattern EXPLAIN_ROWS = Pattern.compile( "rows=(\\d+)" );
+
+  /** Rows fetched per round trip of the cursor if no fetch size is set, without one the driver buffers all rows */
+  public static final int DEFAULT_FETCH_SIZE = 10000;
+
+  protected class PostgresDBRecordReader extends DBRecordReader
+    {
+    protected PostgresDBRecordReader( DBInputSplit split, Class<T> inputClass, JobConf job ) throws SQLException, IOException
+      {
+      super( split, inputClass, job );
+      }
+
+    /** The driver only uses a cursor for forward only statements with a fetch size outside of auto commit. */
+    @Override
+    protected Statement createStatement() throws SQLException
+      {
+      Statement statement = super.createStatement();
+
+      if( dbConf.getInputFetchSize() <= 0 )
+        statement.setFetchSize( DEFAULT_FETCH_SIZE );
+
+      return statement;
+      }
+    }
+
+  @Override
+  protected RecordReader<LongWritable, T> getRecordReaderInternal( DBInputSplit split, Class inputClass, JobConf job ) throws SQLException,
+    IOException
+    {
+    return new PostgresDBRecordReader( split, inputClass, job );
+    }
+
+  /**
+   * Splits a table into ranges of its pages by ctid, so that every split reads only its own pages instead of
+   * scanning and discarding all rows before its OFFSET. Input queries, limits and the other split modes keep
+   * their splits, as do tables without pages of their own, like partitioned tables.
+   */
+  @Override
+  protected InputSplit[] computeSplits( int chunks ) throws IOException
+    {
+    chunks = maxConcurrentReads == 0 ? chunks : maxConcurrentReads;
+
+    if( chunks <= 1 || dbConf.getInputQuery() != null || limit != -1 || splitBy != null || splitByHash != null || splitPredicates != null )
+      return super.computeSplits( chunks );
+
+    long pages;
+    Connection connection = openConnection();
+
+    try
+      {
+      if( connection.getMetaData().getDatabaseMajorVersion() < 14 )
+        LOG.warn( "PostgreSQL before 14 has no TID range scans, every split of {} scans the whole table", tableName );
+
+      pages = readPageCount( connection );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to read page count of: " + tableName, exception );
+      }
+    finally
+      {
+      closeConnection( connection );
+      }
+
+    if( pages <= 0 )
+      return super.computeSplits( chunks );
+
+    return createCtidSplits( pages, chunks );
+    }
+
+  /**
+   * Cuts the given number of pages into at most the given number of ranges. The first range starts at the
+   * first page and the last range is open ended, so rows on pages added since the count are read as well.
+   */
+  protected DBInputSplit[] createCtidSplits( long pages, int chunks )
+    {
+    chunks = (int) Math.max( 1, Math.min( chunks, pages ) );
+
+    DBInputSplit[] splits = new DBInputSplit[ chunks ];
+
+    for( int i = 0; i < chunks; i++ )
+      {
+      long start = pages * i / chunks;
+      long end = pages * ( i + 1 ) / chunks;
+
+      String predicate;
+
+      if( i == 0 && i + 1 == chunks )
+        predicate = null;
+      else if( i == 0 )
+        predicate = "ctid < '(" + end + ",0)'";
+      else if( i + 1 == chunks )
+        predicate = "ctid >= '(" + start + ",0)'";
+      else
+        predicate = "ctid >= '(" + start + ",0)' AND ctid < '(" + end + ",0)'";
+
+      splits[ i ] = new DBInputSplit( start, end, chunks, predicate );
+      }
+
+    return splits;
+    }
+
+  /**
+   * Samples tables with TABLESAMPLE BERNOULLI, which needs no sort, at the fraction of the estimated rows
+   * giving about the requested number of values. Requires PostgreSQL 9.5 or later.
+   */
+  @Override
+  protected String getSampleQuery( int sampleSize, long estimatedRows )
+    {
+    if( dbConf.getInputQuery() != null || estimatedRows <= 0 )
+      return super.getSampleQuery( sampleSize, estimatedRows );
+
+    double percent = Math.min( 100.0, 100.0 * sampleSize / estimatedRows );
+
+    StringBuilder query = new StringBuilder();
+
+    query.append( "SELECT " ).append( splitBy ).append( " FROM " ).append( tableName );
+    query.append( " TABLESAMPLE BERNOULLI (" ).append( String.format( Locale.ROOT, "%.6f", percent ) ).append( ")" );
+
+    appendConditions( query, conditions, splitBy + " IS NOT NULL" );
+
+    return query.toString();
+    }
+
+  /** Returns the query for getting the current number of pages of the table, which relpages only estimates. */
+  protected String getPageCountQuery()
+    {
+    return "SELECT pg_relation_size( oid ) / CAST( current_setting( 'block_size' ) AS bigint ) FROM pg_class WHERE oid = CAST("
+      + toLiteral( tableName ) + " AS regclass)";
+    }
+
+  private long readPageCount( Connection connection ) throws SQLException
+    {
+    String query = getPageCountQuery();
+    Statement statement = connection.createStatement();
+
+    try
+      {
+      LOG.info( query );
+      ResultSet results = statement.executeQuery( query );
+      long pages = results.next() ? results.getLong( 1 ) : 0;
+      results.close();
+
+      return pages;
+      }
+    finally
+      {
+      statement.close();
+      }
+    }
+
+  /**
+   * Estimates the row count from pg_class.reltuples, as maintained by VACUUM and ANALYZE. If the input is
+   * restricted by conditions or given as a query, the estimate of the planner for it is used instead.
+   */
+  @Override
+  protected String getEstimateQuery()
+    {
+    String query = super.getEstimateQuery();
+
+    if( query != null )
+      return query;
+
+    if( dbConf.getInputQuery() != null )
+      return "EXPLAIN " + dbConf.getInputQuery();
+
+    if( conditions != null && conditions.length() > 0 )
+      return "EXPLAIN SELECT 1 FROM " + tableName + " WHERE " + conditions;
+
+    return "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST(" + toLiteral( tableName ) + " AS regclass)";
+    }
+
+  @Override
+  protected long readEstimate( ResultSet results ) throws SQLException
+    {
+    if( !results.next() )
+      return -1;
+
+    Matcher matcher = EXPLAIN_ROWS.matcher( results.getString( 1 ) );
+
+    if( matcher.find() )
+      return Long.parseLong( matcher.group( 1 ) );
+
+    return results.getLong( 1 );
+    }
+  
+  /**
+   * Exports the snapshot of a REPEATABLE READ transaction, which is held open until the snapshot is
+   * released. Requires PostgreSQL 9.2 or later. The connection is not taken from the connection pool,
+   * it stays open for as long as the reads of the snapshot.
+   */
+  @Override
+  protected String exportSnapshot() throws SQLException, IOException
+    {
+    Connection connection = dbConf.getConnection( false );
+
+    try
+      {
+      connection.setAutoCommit( false );
+      connection.setTransactionIsolation( Connection.TRANSACTION_REPEATABLE_READ );
+
+      Statement statement = connection.createStatement();
+      ResultSet results = statement.executeQuery( "SELECT pg_export_snapshot()" );
+
+      results.next();
+      String snapshot = results.getString( 1 );
+
+      results.close();
+      statement.close();
+
+      holdSnapshot( snapshot, connection );
+
+      return snapshot;
+      }
+    catch( SQLException exception )
+      {
+      connection.close();
+      throw exception;
+      }
+    }
+
+  /** Imports the snapshot, the reader has to run in a REPEATABLE READ or SERIALIZABLE transaction. */
+  @Override
+  protected void attachSnapshot( Connection connection, String snapshot ) throws SQLException
+    {
+    Statement statement = connection.createStatement();
+
+    try
+      {
+      statement.execute( "SET TRANSACTION SNAPSHOT " + toLiteral( snapshot ) );
+      }
+    finally
+      {
+      statement.close();
+      }
+    }
+
+  /**
+   * Hashes the text of a row of the columns with hashtext, which also covers NULLs. The int4 hash is widened
+   * before ABS, which fails on the smallest int4.
+   */
+  @Override
+  protected String getHashExpression( String[] columns )
+    {
+    return "ABS( CAST( hashtext( CAST( ROW( " + StringUtils.join( columns, ", " ) + " ) AS text ) ) AS bigint ) )";
+    }
+  }
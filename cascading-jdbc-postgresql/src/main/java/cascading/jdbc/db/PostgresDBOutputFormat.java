@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import cascading.jdbc.TupleRecord;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * PostgreSQL specific sub-class of DBOutputFormat, which streams the inserted rows to the table with
+ * COPY FROM STDIN instead of batched INSERT statements. The rows of a task are committed when the task's
+ * record writer is closed.
+ * <p/>
+ * The data is sent in the csv format by default, see {@link PostgresDBConfiguration} for the binary format
+ * and the flush size. Updates are written with batched UPDATE statements as usual, upserts with batched
+ * INSERT ... ON CONFLICT DO UPDATE statements.
+ */
+public class PostgresDBOutputFormat<K extends DBWritable, V> extends DBOutputFormat<K, V>
+  {
+  private static final Log LOG = LogFactory.getLog( PostgresDBOutputFormat.class );
+
+  /** A RecordWriter that streams the reduce output to COPY FROM STDIN */
+  protected class CopyRecordWriter implements RecordWriter<K, V>
+    {
+    private final Connection connection;
+    private final CopyIn copyIn;
+    private final CopyEncoder encoder;
+    private final int flushSize;
+
+    protected CopyRecordWriter( Connection connection, CopyIn copyIn, String format, int flushSize ) throws IOException
+      {
+      this.connection = connection;
+      this.copyIn = copyIn;
+      this.encoder = CopyEncoder.forFormat( format, new CopyEncoder.Buffer( flushSize + 1024 ) );
+      this.flushSize = flushSize;
+
+      encoder.start();
+      }
+
+    /** {@inheritDoc} */
+    public void write( K key, V value ) throws IOException
+      {
+      if( !( key instanceof TupleRecord ) )
+        throw new IOException( "COPY requires a " + TupleRecord.class.getName() + ", got: " + key.getClass().getName() );
+
+      encoder.encode( ( (TupleRecord) key ).getTuple() );
+
+      if( encoder.buffer.size() >= flushSize )
+        flush();
+      }
+
+    private void flush() throws IOException
+      {
+      try
+        {
+        copyIn.writeToCopy( encoder.buffer.array(), 0, encoder.buffer.size() );
+        }
+      catch( SQLException exception )
+        {
+        throw new IOException( "unable to write to COPY: " + exception.getMessage(), exception );
+        }
+      finally
+        {
+        encoder.buffer.reset();
+        }
+      }
+
+    /** {@inheritDoc} */
+    public void close( Reporter reporter ) throws IOException
+      {
+      try
+        {
+        encoder.finish();
+        flush();
+
+        long rows = copyIn.endCopy();
+        connection.commit();
+
+        LOG.info( "copied records: " + rows );
+        }
+      catch( SQLException exception )
+        {
+        throw new IOException( "unable to complete COPY: " + exception.getMessage(), exception );
+        }
+      finally
+        {
+        try
+          {
+          if( copyIn.isActive() )
+            copyIn.cancelCopy();
+          }
+        catch( SQLException exception )
+          {
+          LOG.error( "unable to cancel COPY", exception );
+          }
+
+        try
+          {
+          if( !connection.isClosed() )
+            connection.close();
+          }
+        catch( SQLException exception )
+          {
+          throw new IOException( "unable to close connection", exception );
+          }
+        }
+      }
+    }
+
+  /** {@inheritDoc} */
+  @Override
+  public RecordWriter<K, V> getRecordWriter( FileSystem filesystem, JobConf job, String name, Progressable progress ) throws IOException
+    {
+    DBConfiguration dbConf = new DBConfiguration( job );
+
+    // COPY only appends
+    if( dbConf.getOutputUpdateFieldNames() != null )
+      return super.getRecordWriter( filesystem, job, name, progress );
+
+    PostgresDBConfiguration postgresConf = new PostgresDBConfiguration( job );
+    String format = postgresConf.getCopyFormat();
+    String sqlCopy = constructCopyQuery( dbConf.getOutputTableName(), dbConf.getOutputFieldNames(),
+      CopyEncoder.forFormat( format, new CopyEncoder.Buffer( 0 ) ).getFormat() );
+
+    Connection connection = dbConf.getConnection();
+
+    configureConnection( connection );
+
+    try
+      {
+      PGConnection pgConnection = connection instanceof PGConnection ? (PGConnection) connection : connection.unwrap( PGConnection.class );
+
+      LOG.info( sqlCopy );
+
+      return new CopyRecordWriter( connection, pgConnection.getCopyAPI().copyIn( sqlCopy ), format, postgresConf.getCopyFlushSize() );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to start COPY: " + sqlCopy, exception );
+      }
+    }
+
+  /**
+   * Constructs an INSERT ... ON CONFLICT ( key ) DO UPDATE statement, which requires a unique index or
+   * constraint on the key columns.
+   */
+  @Override
+  protected String constructUpsertQuery( String table, String[] fieldNames, String[] updateNames )
+    {
+    String[] names = getUpsertNames( fieldNames, updateNames );
+
+    StringBuilder query = new StringBuilder( constructInsertQuery( table, names ) );
+
+    query.append( " ON CONFLICT (" );
+    for( int i = 0; i < updateNames.length; i++ )
+      {
+      query.append( updateNames[ i ] );
+      if( i != updateNames.length - 1 )
+        query.append( "," );
+      }
+    query.append( ")" );
+
+    int valueCount = names.length - updateNames.length;
+
+    if( valueCount == 0 )
+      return query.append( " DO NOTHING" ).toString();
+
+    query.append( " DO UPDATE SET " );
+    for( int i = 0; i < valueCount; i++ )
+      {
+      query.append( names[ i ] ).append( " = EXCLUDED." ).append( names[ i ] );
+      if( i != valueCount - 1 )
+        query.append( "," );
+      }
+
+    return query.toString();
+    }
+
+  /**
+   * Constructs the COPY FROM STDIN statement streaming into the table.
+   *
+   * @param table the table to copy into
+   * @param fieldNames the fields to copy into. If field names are unknown,
+   *          supply an array of nulls.
+   * @param format the format option of the data, CSV or BINARY
+   */
+  protected String constructCopyQuery( String table, String[] fieldNames, String format )
+    {
+    if( fieldNames == null )
+      throw new IllegalArgumentException( "Field names may not be null" );
+
+    StringBuilder query = new StringBuilder();
+    query.append( "COPY " ).append( table );
+
+    if( fieldNames.length > 0 && fieldNames[ 0 ] != null )
+      {
+      query.append( " (" );
+      for( int i = 0; i < fieldNames.length; i++ )
+        {
+        query.append( fieldNames[ i ] );
+        if( i != fieldNames.length - 1 )
+          query.append( "," );
+        }
+      query.append( ")" );
+      }
+
+    query.append( " FROM STDIN WITH " ).append( format );
+
+    return query.toString();
+    }
+
+  /**
+   * Sets the format and the flush size of the COPY FROM STDIN stream.
+   *
+   * @param job The job
+   * @param format csv or binary
+   * @param flushSize the number of bytes buffered before they are sent
+   */
+  public static void setCopyOptions( JobConf job, String format, int flushSize )
+    {
+    PostgresDBConfiguration postgresConf = new PostgresDBConfiguration( job );
+
+    postgresConf.setCopyFormat( format );
+    postgresConf.setCopyFlushSize( flushSize );
+    }
+  }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.junit.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import cascading.jdbc.db.DBConfiguration;
+import cascading.jdbc.db.PostgresDBInputFormat;
+import cascading.jdbc.db.PostgresDBOutputFormat;
+import cascading.tap.SinkMode;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+public class PostgresJDBCFactoryTest
+  {
+  /** Hands out the connection of the test for the URLs of this driver */
+  public static class TestDriver implements Driver
+    {
+    static Connection connection;
+
+    static
+      {
+      try
+        {
+        DriverManager.registerDriver( new TestDriver() );
+        }
+      catch( SQLException exception )
+        {
+        throw new IllegalStateException( exception );
+        }
+      }
+
+    public Connection connect( String url, Properties info )
+      {
+      return acceptsURL( url ) ? connection : null;
+      }
+
+    public boolean acceptsURL( String url )
+      {
+      return url.startsWith( "jdbc:postgresql-test:" );
+      }
+
+    public DriverPropertyInfo[] getPropertyInfo( String url, Properties info )
+      {
+      return new DriverPropertyInfo[ 0 ];
+      }
+
+    public int getMajorVersion()
+      {
+      return 1;
+      }
+
+    public int getMinorVersion()
+      {
+      return 0;
+      }
+
+    public boolean jdbcCompliant()
+      {
+      return false;
+      }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+      {
+      throw new SQLFeatureNotSupportedException();
+      }
+    }
+
+  @Test
+  public void testGetInputFormatClass()
+    {
+    assertEquals( PostgresDBInputFormat.class, new PostgresJDBCFactory().getInputFormatClass() );
+    }
+
+  @Test
+  public void testGetOutputFormatClass()
+    {
+    assertEquals( PostgresDBOutputFormat.class, new PostgresJDBCFactory().getOutputFormClass() );
+    }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testFactorySinkWritesThroughCopy() throws Exception
+    {
+    PostgresJDBCFactory factory = new PostgresJDBCFactory();
+
+    Properties schemeProperties = new Properties();
+    schemeProperties.setProperty( JDBCFactory.FORMAT_COLUMNS, "id:name" );
+
+    JDBCScheme scheme = (JDBCScheme) factory.createScheme( "postgresql", new Fields( "id", "name" ), schemeProperties );
+
+    Properties tapProperties = new Properties();
+    tapProperties.setProperty( JDBCFactory.PROTOCOL_JDBC_DRIVER, TestDriver.class.getName() );
+    tapProperties.setProperty( JDBCFactory.PROTOCOL_TABLE_NAME, "orders" );
+    tapProperties.setProperty( JDBCFactory.PROTOCOL_COLUMN_NAMES, "id:name" );
+    tapProperties.setProperty( JDBCFactory.PROTOCOL_COLUMN_DEFS, "int:varchar(42)" );
+
+    JDBCTap tap = (JDBCTap) factory.createTap( "jdbc", scheme, "jdbc:postgresql-test:orders", SinkMode.UPDATE, tapProperties );
+
+    // the tap configures the database when it creates the table, which is left out here
+    JobConf conf = new JobConf();
+    DBConfiguration.configureDB( conf, TestDriver.class.getName(), "jdbc:postgresql-test:orders" );
+    scheme.sinkConfInit( null, tap, conf );
+
+    assertTrue( conf.getOutputFormat() instanceof PostgresDBOutputFormat );
+
+    CopyIn copyIn = mock( CopyIn.class );
+    CopyManager copyManager = mock( CopyManager.class );
+    when( copyManager.copyIn( "COPY orders (id,name) FROM STDIN WITH CSV" ) ).thenReturn( copyIn );
+
+    Connection connection = mock( Connection.class, withSettings().extraInterfaces( PGConnection.class ) );
+    when( ( (PGConnection) connection ).getCopyAPI() ).thenReturn( copyManager );
+    TestDriver.connection = connection;
+
+    RecordWriter<TupleRecord, Object> writer = conf.getOutputFormat().getRecordWriter( null, conf, "part-00000", null );
+    writer.write( new TupleRecord( new Tuple( 1, "one" ) ), null );
+    writer.close( null );
+
+    verify( copyManager ).copyIn( "COPY orders (id,name) FROM STDIN WITH CSV" );
+    verify( copyIn ).writeToCopy( any( byte[].class ), eq( 0 ), eq( 6 ) );
+    verify( copyIn ).endCopy();
+    verify( connection ).commit();
+    }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testFactorySinkUpsertsOnConflict() throws Exception
+    {
+    PostgresJDBCFactory factory = new PostgresJDBCFactory();
+
+    Properties schemeProperties = new Properties();
+    schemeProperties.setProperty( JDBCFactory.FORMAT_COLUMNS, "id:name" );
+    schemeProperties.setProperty( JDBCFactory.FORMAT_UPDATE_BY, "id" );
+    schemeProperties.setProperty( JDBCFactory.FORMAT_UPSERT, "true" );
+
+    JDBCScheme scheme = (JDBCScheme) factory.createScheme( "postgresql", new Fields( "id", "name" ), schemeProperties );
+    JDBCTap tap = new JDBCTap( "jdbc:postgresql-test:orders", null, null, TestDriver.class.getName(), "orders", scheme );
+
+    JobConf conf = new JobConf();
+    DBConfiguration.configureDB( conf, TestDriver.class.getName(), "jdbc:postgresql-test:orders" );
+    scheme.sinkConfInit( null, tap, conf );
+
+    PreparedStatement upsert = mock( PreparedStatement.class );
+    Connection connection = mock( Connection.class );
+    when( connection.prepareStatement( anyString() ) ).thenReturn( upsert );
+    TestDriver.connection = connection;
+
+    conf.getOutputFormat().getRecordWriter( null, conf, "part-00000", null ).close( null );
+
+    // PostgreSQL before 15 has no MERGE
+    verify( connection ).prepareStatement( "INSERT INTO orders (name,id) VALUES (?,?) ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name" );
+    }
+  }
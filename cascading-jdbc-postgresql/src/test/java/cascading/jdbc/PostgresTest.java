@@ -22,6 +22,8 @@ package cascading.jdbc;
 
 import org.junit.Before;
 
+import cascading.jdbc.db.PostgresDBInputFormat;
+
 /**
  * Runs the tests against postgres.
  * */
@@ -33,5 +35,7 @@ public class PostgresTest extends JDBCTestingBase
     {
     setDriverName( "org.postgresql.Driver" );
     setJdbcurl( System.getProperty( "cascading.jdbcurl" ) );
+    setInputFormatClass( PostgresDBInputFormat.class );
+    setFactory( new PostgresJDBCFactory() );
     }
   }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+import cascading.jdbc.TupleRecord;
+
+public class PostgresDBInputFormatTest
+  {
+
+  private JobConf createTableInput( int concurrentReads )
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "orders", null, null, -1, concurrentReads, false, "id", "amount" );
+    return job;
+    }
+
+  @Test
+  public void testCtidSplits()
+    {
+    PostgresDBInputFormat<DBWritable> inputFormat = new PostgresDBInputFormat<DBWritable>();
+    inputFormat.configure( createTableInput( 3 ) );
+
+    DBInputFormat.DBInputSplit[] splits = inputFormat.createCtidSplits( 100, 3 );
+
+    assertEquals( 3, splits.length );
+    assertEquals( "ctid < '(33,0)'", splits[ 0 ].getPredicate() );
+    assertEquals( "ctid >= '(33,0)' AND ctid < '(66,0)'", splits[ 1 ].getPredicate() );
+    assertEquals( "ctid >= '(66,0)'", splits[ 2 ].getPredicate() );
+
+    assertEquals( 2, inputFormat.createCtidSplits( 2, 3 ).length );
+    assertNull( inputFormat.createCtidSplits( 1, 3 )[ 0 ].getPredicate() );
+    }
+
+  @Test
+  public void testSampleQuery()
+    {
+    JobConf job = createTableInput( 4 );
+    DBInputFormat.setSplitBy( job, "id" );
+
+    PostgresDBInputFormat<DBWritable> inputFormat = new PostgresDBInputFormat<DBWritable>();
+    inputFormat.configure( job );
+
+    assertEquals( "SELECT id FROM orders TABLESAMPLE BERNOULLI (0.100000) WHERE (id IS NOT NULL)", inputFormat.getSampleQuery( 1000, 1000000 ) );
+    assertEquals( "SELECT id FROM orders WHERE (id IS NOT NULL) ORDER BY RANDOM() LIMIT 1000", inputFormat.getSampleQuery( 1000, -1 ) );
+    }
+
+  @Test
+  public void testSplitsByPages() throws Exception
+    {
+    JobConf job = createTableInput( 2 );
+
+    PostgresDBInputFormat<DBWritable> inputFormat = new PostgresDBInputFormat<DBWritable>();
+    inputFormat.configure( job );
+
+    ResultSet results = mock( ResultSet.class );
+    when( results.next() ).thenReturn( true );
+    when( results.getLong( 1 ) ).thenReturn( 10L );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( inputFormat.getPageCountQuery() ) ).thenReturn( results );
+
+    DatabaseMetaData metaData = mock( DatabaseMetaData.class );
+    when( metaData.getDatabaseMajorVersion() ).thenReturn( 14 );
+
+    Connection connection = mock( Connection.class );
+    when( connection.createStatement() ).thenReturn( statement );
+    when( connection.getMetaData() ).thenReturn( metaData );
+    inputFormat = spy( inputFormat );
+    doReturn( connection ).when( inputFormat ).openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verify( statement, never() ).executeQuery( "SELECT COUNT(*) FROM orders" );
+    assertEquals( 2, splits.length );
+
+    Statement select = mock( Statement.class );
+    when( select.executeQuery( anyString() ) ).thenReturn( mock( ResultSet.class ) );
+    when( connection.createStatement( anyInt(), anyInt() ) ).thenReturn( select );
+
+    DBInputFormat.DBRecordReader reader = inputFormat.new PostgresDBRecordReader( (DBInputFormat.DBInputSplit) splits[ 1 ], DBWritable.class, job );
+
+    assertEquals( "SELECT id, amount FROM orders WHERE (ctid >= '(5,0)')", reader.getSelectQuery() );
+    verify( select, atLeastOnce() ).setFetchSize( PostgresDBInputFormat.DEFAULT_FETCH_SIZE );
+    }
+  }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import cascading.jdbc.TupleRecord;
+import cascading.tuple.Tuple;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.postgresql.copy.CopyIn;
+
+public class PostgresDBOutputFormatTest
+  {
+
+  @Test
+  public void testCopyQuery()
+    {
+    PostgresDBOutputFormat<TupleRecord, Void> format = new PostgresDBOutputFormat<TupleRecord, Void>();
+
+    assertEquals( "COPY test (id,name) FROM STDIN WITH CSV", format.constructCopyQuery( "test", new String[]{"id", "name"}, "CSV" ) );
+    assertEquals( "COPY test FROM STDIN WITH BINARY", format.constructCopyQuery( "test", new String[]{null, null}, "BINARY" ) );
+    }
+
+  @Test
+  public void testUpsertQuery()
+    {
+    PostgresDBOutputFormat<TupleRecord, Void> format = new PostgresDBOutputFormat<TupleRecord, Void>();
+
+    assertEquals( "INSERT INTO test (name,amount,id) VALUES (?,?,?) ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name,amount = EXCLUDED.amount",
+      format.constructUpsertQuery( "test", new String[]{ "id", "name", "amount" }, new String[]{ "id" } ) );
+    assertEquals( "INSERT INTO test (id) VALUES (?) ON CONFLICT (id) DO NOTHING",
+      format.constructUpsertQuery( "test", new String[]{ "id" }, new String[]{ "id" } ) );
+    }
+
+  @Test
+  public void testCsvEncoding() throws IOException
+    {
+    CopyEncoder.Buffer buffer = new CopyEncoder.Buffer( 64 );
+    CopyEncoder encoder = CopyEncoder.forFormat( "csv", buffer );
+
+    encoder.encode( new Tuple( 1L, null, "", "a,\"b\"", new BigDecimal( "1E+3" ) ) );
+    encoder.encode( new Tuple( "\\.", "line\nbreak" ) );
+
+    assertEquals( "1,,\"\",\"a,\"\"b\"\"\",1000\n\"\\.\",\"line\nbreak\"\n", buffer.toString( "UTF-8" ) );
+    }
+
+  @Test
+  public void testBinaryEncoding() throws IOException
+    {
+    CopyEncoder.Buffer buffer = new CopyEncoder.Buffer( 64 );
+    CopyEncoder encoder = CopyEncoder.forFormat( "binary", buffer );
+
+    encoder.start();
+    assertEquals( 19, buffer.size() );
+    buffer.reset();
+
+    encoder.encode( new Tuple( 42L, null, new BigDecimal( "123.45" ) ) );
+    encoder.finish();
+
+    ByteBuffer data = ByteBuffer.wrap( buffer.toByteArray() );
+
+    assertEquals( 3, data.getShort() );
+
+    assertEquals( 8, data.getInt() );
+    assertEquals( 42L, data.getLong() );
+
+    assertEquals( -1, data.getInt() );
+
+    // 123.45 is 0123 4500 in base 10000 digits
+    assertEquals( 12, data.getInt() );
+    assertEquals( 2, data.getShort() ); // digits
+    assertEquals( 0, data.getShort() ); // weight
+    assertEquals( 0, data.getShort() ); // sign
+    assertEquals( 2, data.getShort() ); // scale
+    assertEquals( 123, data.getShort() );
+    assertEquals( 4500, data.getShort() );
+
+    assertEquals( -1, data.getShort() );
+    assertFalse( data.hasRemaining() );
+    }
+
+  @Test
+  public void testCopyRecordWriter() throws Exception
+    {
+    Connection connection = mock( Connection.class );
+    CopyIn copyIn = mock( CopyIn.class );
+    when( copyIn.endCopy() ).thenReturn( 3L );
+
+    PostgresDBOutputFormat<TupleRecord, Void> format = new PostgresDBOutputFormat<TupleRecord, Void>();
+    PostgresDBOutputFormat<TupleRecord, Void>.CopyRecordWriter writer = format.new CopyRecordWriter( connection, copyIn, "csv", 6 );
+
+    TupleRecord record = new TupleRecord();
+
+    record.setTuple( new Tuple( "first" ) );
+    writer.write( record, null );
+
+    verify( copyIn ).writeToCopy( any( byte[].class ), eq( 0 ), eq( 6 ) );
+
+    record.setTuple( new Tuple( "a" ) );
+    writer.write( record, null );
+    record.setTuple( new Tuple( "b" ) );
+    writer.write( record, null );
+
+    writer.close( null );
+
+    InOrder inOrder = inOrder( copyIn, connection );
+    inOrder.verify( copyIn ).writeToCopy( any( byte[].class ), eq( 0 ), eq( 4 ) );
+    inOrder.verify( copyIn ).endCopy();
+    inOrder.verify( connection ).commit();
+    inOrder.verify( connection ).close();
+    }
+
+  @Test
+  public void testCopyRecordWriterFailure() throws Exception
+    {
+    Connection connection = mock( Connection.class );
+    CopyIn copyIn = mock( CopyIn.class );
+    when( copyIn.endCopy() ).thenThrow( new SQLException( "bad row" ) );
+    when( copyIn.isActive() ).thenReturn( true );
+
+    PostgresDBOutputFormat<TupleRecord, Void> format = new PostgresDBOutputFormat<TupleRecord, Void>();
+    PostgresDBOutputFormat<TupleRecord, Void>.CopyRecordWriter writer = format.new CopyRecordWriter( connection, copyIn, "csv", 1024 );
+
+    writer.write( new TupleRecord( new Tuple( "value" ) ), null );
+
+    try
+      {
+      writer.close( null );
+      fail( "expected an IOException" );
+      }
+    catch( IOException exception )
+      {
+      assertTrue( exception.getMessage().contains( "bad row" ) );
+      }
+
+    verify( copyIn ).cancelCopy();
+    verify( connection, never() ).commit();
+    verify( connection ).close();
+    }
+  }
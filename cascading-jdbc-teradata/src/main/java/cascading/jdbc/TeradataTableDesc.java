@@ -60,6 +60,15 @@ public class TeradataTableDesc extends TableDesc implements Serializable
     this.primaryKeys = primaryKeys;
     }
 
+  /**
+   * Teradata copies the columns of a query with WITH NO DATA.
+   */
+  @Override
+  protected String getCreateTableAsFormat()
+    {
+    return "CREATE TABLE %s AS ( SELECT * FROM %s ) WITH NO DATA";
+    }
+
   /**
    * {@inheritDoc}
    */
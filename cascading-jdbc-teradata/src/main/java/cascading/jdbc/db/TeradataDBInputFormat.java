@@ -22,35 +22,202 @@ package cascading.jdbc.db;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
-import cascading.CascadingException;
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Teradata specific sub-class of DBInputFormat that provides a special select query for getting the data from a
  * Teradata instance.
+ * <p/>
+ * Teradata has no LIMIT and OFFSET, so concurrent reads are split by the AMP owning the rows instead. Every split
+ * selects a range of AMPs by <code>HASHAMP(HASHBUCKET(HASHROW(columns)))</code> of the primary index, or of the
+ * columns set with {@link DBInputFormat#setSplitByHash(JobConf, String...)}, and reads a disjoint subset of the
+ * table in parallel.
  */
 @SuppressWarnings("rawtypes")
 public class TeradataDBInputFormat extends DBInputFormat<DBWritable>
   {
+  private static final Logger LOG = LoggerFactory.getLogger( TeradataDBInputFormat.class );
+
   @Override
   protected RecordReader<LongWritable, DBWritable> getRecordReaderInternal( cascading.jdbc.db.DBInputFormat.DBInputSplit split, Class inputClass, JobConf job ) throws SQLException, IOException
     {
     return new TeradataDBRecordReader( split, inputClass, job );
     }
 
+  @Override
+  protected InputSplit[] computeSplits( int chunks ) throws IOException
+    {
+    chunks = maxConcurrentReads == 0 ? chunks : maxConcurrentReads;
+
+    if( splitPredicates != null && limit == -1 )
+      return getPredicateSplits();
+
+    if( splitBy != null && limit == -1 )
+      return dbConf.getInputSplitSampleSize() > 0 ? getQuantileSplits( chunks ) : getKeysetSplits( chunks );
+
+    if( chunks <= 1 || limit != -1 )
+      return new InputSplit[]{new DBInputSplit( 0, 0, 1 )};
+
+    Connection connection = openConnection();
+
+    try
+      {
+      String[] columns = splitByHash != null ? splitByHash : readPrimaryIndex( connection );
+
+      if( columns == null )
+        {
+        LOG.warn( "no primary index found for {}, reading it in one split, set the columns to split by hash", tableName );
+        return new InputSplit[]{new DBInputSplit( 0, 0, 1 )};
+        }
+
+      return createAmpSplits( columns, readAmpCount( connection ), chunks );
+      }
+    catch( SQLException exception )
+      {
+      throw new IOException( "unable to split input by AMP", exception );
+      }
+    finally
+      {
+      closeConnection( connection );
+      }
+    }
+
+  /**
+   * Assigns the given number of AMPs to at most the given number of splits, every split selects a contiguous
+   * range of AMPs by the hash of the columns.
+   */
+  protected DBInputSplit[] createAmpSplits( String[] columns, int amps, int chunks )
+    {
+    chunks = Math.max( 1, Math.min( chunks, amps ) );
+
+    String hash = getHashExpression( columns );
+    DBInputSplit[] splits = new DBInputSplit[ chunks ];
+
+    for( int i = 0; i < chunks; i++ )
+      {
+      long start = (long) amps * i / chunks;
+      long end = (long) amps * ( i + 1 ) / chunks;
+
+      splits[ i ] = new DBInputSplit( start, end, chunks, hash + " BETWEEN " + start + " AND " + ( end - 1 ) );
+      }
+
+    return splits;
+    }
+
+  /** Returns the AMP a row of the given columns is stored on, if the columns are the primary index. */
+  @Override
+  protected String getHashExpression( String[] columns )
+    {
+    return "HASHAMP(HASHBUCKET(HASHROW(" + StringUtils.join( columns, ", " ) + ")))";
+    }
+
+  /** Samples the split by column with the SAMPLE clause, which picks the rows on every AMP in parallel. */
+  @Override
+  protected String getSampleQuery( int sampleSize, long estimatedRows )
+    {
+    StringBuilder query = new StringBuilder();
+
+    query.append( "SELECT " ).append( splitBy ).append( " FROM " );
+
+    if( dbConf.getInputQuery() == null )
+      query.append( tableName );
+    else
+      query.append( "( " ).append( dbConf.getInputQuery() ).append( " ) dbif_split" );
+
+    appendConditions( query, dbConf.getInputQuery() == null ? conditions : null, splitBy + " IS NOT NULL" );
+
+    return query.append( " SAMPLE " ).append( sampleSize ).toString();
+    }
+
+  /** Returns the query for getting the number of AMPs of the system. */
+  protected String getAmpCountQuery()
+    {
+    return "SELECT HASHAMP() + 1";
+    }
+
+  /** Returns the query for getting the primary index columns of the input table in order, or null for an input query. */
+  protected String getPrimaryIndexQuery()
+    {
+    if( dbConf.getInputQuery() != null )
+      return null;
+
+    int dot = tableName.indexOf( '.' );
+    String database = dot == -1 ? "DATABASE" : toLiteral( tableName.substring( 0, dot ) );
+
+    return String.format( "SELECT ColumnName FROM DBC.IndicesV WHERE DatabaseName = %s AND TableName = %s "
+      + "AND IndexType IN ('P', 'Q') ORDER BY ColumnPosition", database, toLiteral( tableName.substring( dot + 1 ) ) );
+    }
+
+  private String[] readPrimaryIndex( Connection connection ) throws SQLException
+    {
+    String query = getPrimaryIndexQuery();
+
+    if( query == null )
+      return null;
+
+    Statement statement = connection.createStatement();
+
+    try
+      {
+      LOG.info( query );
+      ResultSet results = statement.executeQuery( query );
+      List<String> columns = new ArrayList<String>();
+
+      while( results.next() )
+        columns.add( results.getString( 1 ).trim() );
+
+      results.close();
+
+      return columns.isEmpty() ? null : columns.toArray( new String[ columns.size() ] );
+      }
+    finally
+      {
+      statement.close();
+      }
+    }
+
+  private int readAmpCount( Connection connection ) throws SQLException
+    {
+    Statement statement = connection.createStatement();
+
+    try
+      {
+      ResultSet results = statement.executeQuery( getAmpCountQuery() );
+      results.next();
+      int amps = results.getInt( 1 );
+      results.close();
+
+      LOG.info( "splitting {} over {} AMPs", tableName, amps );
+
+      return amps;
+      }
+    finally
+      {
+      statement.close();
+      }
+    }
+
   class TeradataDBRecordReader extends DBInputFormat.DBRecordReader
     {
     protected TeradataDBRecordReader( cascading.jdbc.db.DBInputFormat.DBInputSplit split, Class inputClass, JobConf job ) throws SQLException, IOException
       {
-      super( new cascading.jdbc.db.DBInputFormat.DBInputSplit(), inputClass, job );
+      super( split, inputClass, job );
       }
 
     /** Returns the query for selecting the records from an Teradata DB.
-     * omits the LIMIT and OFFSET for FASTEXPORT
+     * omits the LIMIT and OFFSET for FASTEXPORT, a split is selected by the predicate on its AMPs
      */
     public String getSelectQuery()
       {
@@ -69,8 +236,7 @@ public class TeradataDBInputFormat extends DBInputFormat<DBWritable>
           }
         query.append( " FROM " ).append( tableName );
 
-        if( conditions != null && conditions.length() > 0 )
-          query.append( " WHERE (" ).append( conditions ).append( ")" );
+        appendConditions( query, conditions, split.getPredicate() );
 
         String orderBy = dbConf.getInputOrderBy();
 
@@ -78,7 +244,7 @@ public class TeradataDBInputFormat extends DBInputFormat<DBWritable>
           query.append( " ORDER BY " ).append( orderBy );
         }
       else
-        query.append( dbConf.getInputQuery() );
+        query.append( getInputQuery() );
 
       return query.toString();
       }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.jdbc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+import cascading.jdbc.TupleRecord;
+
+public class TeradataDBInputFormatTest
+  {
+  private static final String PRIMARY_INDEX_QUERY = "SELECT ColumnName FROM DBC.IndicesV WHERE DatabaseName = 'sales' "
+    + "AND TableName = 'orders' AND IndexType IN ('P', 'Q') ORDER BY ColumnPosition";
+
+  private JobConf createTableInput( int concurrentReads )
+    {
+    JobConf job = new JobConf();
+    DBInputFormat.setInput( job, TupleRecord.class, "sales.orders", null, null, -1, concurrentReads, false, "id", "amount" );
+    return job;
+    }
+
+  @Test
+  public void testAmpSplits()
+    {
+    TeradataDBInputFormat inputFormat = new TeradataDBInputFormat();
+    inputFormat.configure( createTableInput( 4 ) );
+
+    DBInputFormat.DBInputSplit[] splits = inputFormat.createAmpSplits( new String[]{"id"}, 10, 4 );
+
+    assertEquals( 4, splits.length );
+    assertEquals( "HASHAMP(HASHBUCKET(HASHROW(id))) BETWEEN 0 AND 1", splits[ 0 ].getPredicate() );
+    assertEquals( "HASHAMP(HASHBUCKET(HASHROW(id))) BETWEEN 2 AND 4", splits[ 1 ].getPredicate() );
+    assertEquals( "HASHAMP(HASHBUCKET(HASHROW(id))) BETWEEN 5 AND 6", splits[ 2 ].getPredicate() );
+    assertEquals( "HASHAMP(HASHBUCKET(HASHROW(id))) BETWEEN 7 AND 9", splits[ 3 ].getPredicate() );
+
+    assertEquals( 2, inputFormat.createAmpSplits( new String[]{"id"}, 2, 4 ).length );
+    }
+
+  @Test
+  public void testSplitsByPrimaryIndex() throws Exception
+    {
+    JobConf job = createTableInput( 2 );
+
+    TeradataDBInputFormat inputFormat = new TeradataDBInputFormat();
+    inputFormat.configure( job );
+
+    ResultSet index = mock( ResultSet.class );
+    when( index.next() ).thenReturn( true, true, false );
+    when( index.getString( 1 ) ).thenReturn( "id   ", "region" );
+
+    ResultSet amps = mock( ResultSet.class );
+    when( amps.next() ).thenReturn( true );
+    when( amps.getInt( 1 ) ).thenReturn( 8 );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( PRIMARY_INDEX_QUERY ) ).thenReturn( index );
+    when( statement.executeQuery( "SELECT HASHAMP() + 1" ) ).thenReturn( amps );
+
+    Connection connection = mock( Connection.class );
+    when( connection.createStatement() ).thenReturn( statement );
+    inputFormat = spy( inputFormat );
+    doReturn( connection ).when( inputFormat ).openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    assertEquals( 2, splits.length );
+    assertEquals( "HASHAMP(HASHBUCKET(HASHROW(id, region))) BETWEEN 4 AND 7", ( (DBInputFormat.DBInputSplit) splits[ 1 ] ).getPredicate() );
+
+    Statement select = mock( Statement.class );
+    when( select.executeQuery( anyString() ) ).thenReturn( mock( ResultSet.class ) );
+    when( connection.createStatement( anyInt(), anyInt() ) ).thenReturn( select );
+
+    DBInputFormat.DBRecordReader reader = inputFormat.new TeradataDBRecordReader( (DBInputFormat.DBInputSplit) splits[ 0 ], DBWritable.class, job );
+
+    assertEquals( "SELECT id, amount FROM sales.orders WHERE (HASHAMP(HASHBUCKET(HASHROW(id, region))) BETWEEN 0 AND 3)", reader.getSelectQuery() );
+    }
+
+  @Test
+  public void testSplitsByHashColumns() throws Exception
+    {
+    JobConf job = createTableInput( 3 );
+    DBInputFormat.setSplitByHash( job, "code" );
+
+    TeradataDBInputFormat inputFormat = new TeradataDBInputFormat();
+    inputFormat.configure( job );
+
+    ResultSet amps = mock( ResultSet.class );
+    when( amps.next() ).thenReturn( true );
+    when( amps.getInt( 1 ) ).thenReturn( 6 );
+
+    Statement statement = mock( Statement.class );
+    when( statement.executeQuery( "SELECT HASHAMP() + 1" ) ).thenReturn( amps );
+
+    Connection connection = mock( Connection.class );
+    when( connection.createStatement() ).thenReturn( statement );
+    inputFormat = spy( inputFormat );
+    doReturn( connection ).when( inputFormat ).openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verify( statement, never() ).executeQuery( PRIMARY_INDEX_QUERY );
+    assertEquals( 3, splits.length );
+    assertEquals( "HASHAMP(HASHBUCKET(HASHROW(code))) BETWEEN 2 AND 3", ( (DBInputFormat.DBInputSplit) splits[ 1 ] ).getPredicate() );
+    }
+
+  @Test
+  public void testSingleSplit() throws Exception
+    {
+    JobConf job = createTableInput( 1 );
+
+    TeradataDBInputFormat inputFormat = new TeradataDBInputFormat();
+    inputFormat.configure( job );
+    Connection connection = mock( Connection.class );
+    inputFormat = spy( inputFormat );
+    doReturn( connection ).when( inputFormat ).openConnection();
+
+    InputSplit[] splits = inputFormat.getSplits( job, 1 );
+
+    verifyZeroInteractions( connection );
+    assertEquals( 1, splits.length );
+    assertNull( ( (DBInputFormat.DBInputSplit) splits[ 0 ] ).getPredicate() );
+    }
+  }